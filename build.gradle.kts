@@ -2,6 +2,7 @@ plugins {
     java
     id("io.freefair.lombok") version "8.4"
     id("com.gradleup.shadow") version "8.3.3"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 version = "1.2.0"
@@ -19,6 +20,41 @@ dependencies {
     // TODO remove
     implementation("org.spongepowered:configurate-hocon:4.1.2")
     implementation("org.spongepowered:configurate-yaml:4.2.0-GeyserMC-SNAPSHOT")
+
+    // Benchmarks run without a Geyser server, so the API has to be on their classpath
+    jmh("org.geysermc.geyser:api:2.4.1-SNAPSHOT")
+
+    // Same for tests
+    testImplementation("org.geysermc.geyser:api:2.4.1-SNAPSHOT")
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+jmh {
+    // Run with e.g. "./gradlew jmh -PjmhIncludes=RoutingBenchmark"
+    project.findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    benchmarkMode.add("thrpt")
+    timeUnit.set("us")
+    // Reports allocation rate (gc.alloc.rate.norm = bytes per operation) next to throughput
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
+
+// Soak test of event handling during reloads, e.g. "./gradlew reloadStress -PstressArgs='--seconds=600'".
+// Virtual threads are used when running on Java 21+, e.g. with "-PstressJava=21".
+tasks.register<JavaExec>("reloadStress") {
+    group = "verification"
+    description = "Fires transfer events, commands and menus from many threads while reloading the config in a loop."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("dev.onechris.extension.transfertool.benchmark.ReloadStressHarness")
+    project.findProperty("stressArgs")?.let { args(it.toString().split(" ").filter(String::isNotBlank)) }
+    project.findProperty("stressJava")?.let { version ->
+        javaLauncher.set(javaToolchains.launcherFor { languageVersion.set(JavaLanguageVersion.of(version.toString())) })
+    }
 }
 
 java {
@@ -32,6 +68,10 @@ tasks {
         dependsOn(shadowJar)
     }
 
+    test {
+        useJUnitPlatform()
+    }
+
     jar {
         archiveBaseName.set("DEV-TransferTool")
         archiveClassifier.set("unshaded")
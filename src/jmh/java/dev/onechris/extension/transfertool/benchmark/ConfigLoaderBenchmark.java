@@ -0,0 +1,59 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import dev.onechris.extension.transfertool.Config;
+import dev.onechris.extension.transfertool.ConfigLoader;
+import org.geysermc.geyser.api.extension.Extension;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading (and re-saving) config.yml, as done on startup and on every reload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConfigLoaderBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int mappings;
+
+    private Path dataFolder;
+    private Extension extension;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataFolder = Files.createTempDirectory("transfertool-bench");
+        extension = Stubs.extension(dataFolder, Stubs.logger());
+
+        Map<String, String> shortcuts = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(mappings, 100); i++) {
+            shortcuts.put("server" + i, "bedrock" + i + ".example.com:19132");
+        }
+        SyntheticConfig.writeConfig(dataFolder, SyntheticConfig.mappings(mappings), shortcuts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticConfig.deleteRecursively(dataFolder);
+    }
+
+    @Benchmark
+    public Config load() throws IOException {
+        return ConfigLoader.loadConfig(extension);
+    }
+}
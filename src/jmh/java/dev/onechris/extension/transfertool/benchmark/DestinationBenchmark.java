@@ -0,0 +1,33 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import dev.onechris.extension.transfertool.Destination;
+import dev.onechris.extension.transfertool.DestinationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of "host:port" destinations as typed into the transfer command or custom form.
+ */
+@State(Scope.Thread)
+public class DestinationBenchmark {
+    private static final int INPUTS = 4096;
+
+    private String[] inputs;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        inputs = SyntheticConfig.destinationInputs(INPUTS).toArray(String[]::new);
+    }
+
+    /**
+     * Includes the error path; invalid inputs return a {@link dev.onechris.extension.transfertool.DestinationError}.
+     */
+    @Benchmark
+    public DestinationResult parse() {
+        return Destination.parse(inputs[cursor++ & (INPUTS - 1)], 19132);
+    }
+}
@@ -0,0 +1,92 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import dev.onechris.extension.transfertool.Config;
+import dev.onechris.extension.transfertool.LanguageManager;
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Translation lookups for players with many different locales, including locales that only resolve via fallbacks.
+ */
+@State(Scope.Thread)
+public class LocalizationBenchmark {
+    private static final int CONNECTIONS = 1024;
+
+    private Path folder;
+    private LanguageManager languageManager;
+    private GeyserConnection[] connections;
+    private String[] locales;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        folder = Files.createTempDirectory("transfertool-bench");
+        List<String> written = SyntheticConfig.writeTranslations(folder);
+
+        List<String> locales = new ArrayList<>(written);
+        // Unknown regions of known languages, and unknown languages
+        locales.add("de_CH");
+        locales.add("pt_BR");
+        locales.add("xx_ZZ");
+        locales.add("en-gb");
+
+        Random random = new Random(3);
+        this.connections = new GeyserConnection[CONNECTIONS];
+        this.locales = new String[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            this.locales[i] = locales.get(random.nextInt(locales.size()));
+            this.connections[i] = Stubs.connection("Player" + i, this.locales[i]);
+        }
+
+        languageManager = new LanguageManager(folder, config(), Stubs.logger());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticConfig.deleteRecursively(folder);
+    }
+
+    @Benchmark
+    public String withoutArgs() {
+        return languageManager.getLocaleString(connections[cursor++ & (CONNECTIONS - 1)], "menu.transfer.title");
+    }
+
+    @Benchmark
+    public String withArgs() {
+        return languageManager.getLocaleString(connections[cursor++ & (CONNECTIONS - 1)], "commands.stats.events", 1024L, 12L, 3L);
+    }
+
+    /**
+     * Resolution by locale string, as for sources that are not a Bedrock connection.
+     */
+    @Benchmark
+    public String byLocale() {
+        return languageManager.getLocaleString(locales[cursor++ & (CONNECTIONS - 1)], "menu.transfer.title");
+    }
+
+    @Benchmark
+    public LanguageManager load() throws Exception {
+        return new LanguageManager(folder, config(), Stubs.logger());
+    }
+
+    private static Config config() throws ReflectiveOperationException {
+        Config config = new Config();
+        Field defaultLocale = Config.class.getDeclaredField("defaultLocale");
+        defaultLocale.setAccessible(true);
+        defaultLocale.set(config, "de_DE");
+        return config;
+    }
+}
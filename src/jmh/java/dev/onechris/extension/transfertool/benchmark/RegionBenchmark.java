@@ -0,0 +1,79 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import dev.onechris.extension.transfertool.InetLiterals;
+import dev.onechris.extension.transfertool.RegionIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+
+/**
+ * Longest-prefix-match lookups of client addresses against GeoIP-sized CIDR tables.
+ */
+@State(Scope.Thread)
+public class RegionBenchmark {
+    private static final int INPUTS = 4096;
+    private static final String[] REGIONS = {"eu", "na", "sa", "as", "oc", "af"};
+
+    @Param({"1000", "100000", "2000000"})
+    public int ranges;
+
+    private RegionIndex index;
+    private long[] ipv4;
+    private long[] ipv6Hi;
+    private long[] ipv6Lo;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        index = build(ranges);
+
+        SplittableRandom random = new SplittableRandom(7);
+        ipv4 = new long[INPUTS];
+        ipv6Hi = new long[INPUTS];
+        ipv6Lo = new long[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            ipv4[i] = InetLiterals.IPV4_MAPPED_PREFIX | (random.nextInt() & 0xFFFF_FFFFL);
+            ipv6Hi[i] = 0x2000_0000_0000_0000L | (random.nextLong() >>> 4);
+            ipv6Lo[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Roughly the shape of a GeoIP export: mostly IPv4 ranges of /16 to /24, and some IPv6 ranges of /32 to /48.
+     */
+    private static RegionIndex build(int ranges) {
+        SplittableRandom random = new SplittableRandom(42);
+        RegionIndex.Builder builder = new RegionIndex.Builder();
+        for (int i = 0; i < ranges; i++) {
+            String region = REGIONS[random.nextInt(REGIONS.length)];
+            if (i % 8 == 0) {
+                builder.insert(0x2000_0000_0000_0000L | (random.nextLong() >>> 4), 0, 32 + random.nextInt(17), region);
+            } else {
+                builder.insert(0, InetLiterals.IPV4_MAPPED_PREFIX | (random.nextInt() & 0xFFFF_FFFFL),
+                        96 + 16 + random.nextInt(9), region);
+            }
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public String lookupIpv4() {
+        return index.lookup(0, ipv4[cursor++ & (INPUTS - 1)]);
+    }
+
+    @Benchmark
+    public String lookupIpv6() {
+        int i = cursor++ & (INPUTS - 1);
+        return index.lookup(ipv6Hi[i], ipv6Lo[i]);
+    }
+
+    @Benchmark
+    public RegionIndex build() {
+        return build(Math.min(ranges, 100000));
+    }
+}
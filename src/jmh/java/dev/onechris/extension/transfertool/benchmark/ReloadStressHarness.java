@@ -0,0 +1,560 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import dev.onechris.extension.transfertool.TransferMetrics;
+import dev.onechris.extension.transfertool.TransferTool;
+import org.geysermc.cumulus.component.ButtonComponent;
+import org.geysermc.cumulus.form.Form;
+import org.geysermc.cumulus.form.SimpleForm;
+import org.geysermc.cumulus.form.util.FormBuilder;
+import org.geysermc.geyser.api.command.Command;
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.geysermc.geyser.api.event.java.ServerTransferEvent;
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Soak test for the extension's handlers while the config is reloaded in a loop: Java transfer events, the
+ * '/transfertool transfer' command and the transfer menu run on many platform (and, on Java 21+, virtual) threads,
+ * while a reloader keeps writing and loading new config generations.
+ * <p>
+ * Every target, shortcut and translation written for generation N contains "gN", and the generations differ in
+ * their number of mappings, shortcuts and routing rule scope. Each decision is checked to come from a single
+ * generation that is consistent with what the thread saw before (snapshots never go backwards), and every
+ * exception is counted. Reports throughput, tail latency per operation and reload latency; exits with 1 on failures.
+ * <p>
+ * Run with {@code ./gradlew reloadStress}, options as {@code -PstressArgs="--seconds=600 --virtual-threads=10000"}:
+ * --seconds, --platform-threads, --virtual-threads, --players, --reload-interval-millis, --menus
+ */
+public final class ReloadStressHarness {
+    private static final int MAPPED_HOSTS = 50;
+    private static final int SHORTCUTS = 5;
+    private static final int MAX_REPORTED = 10;
+    private static final long RELOAD_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Path dataFolder;
+    private final TransferTool extension;
+    private final Method handleArgs;
+    private final Properties bundled = new Properties();
+    private final GeyserConnection[] players;
+    private final boolean menus;
+
+    // The newest generation written to disk; no decision may come from a later one
+    private final AtomicLong written = new AtomicLong();
+    private final LongAdder reloads = new LongAdder();
+    // Only written by the reloader
+    private final long[] reloadLatency = new long[TransferMetrics.LatencyHistogram.BUCKETS];
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final List<String> reported = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private static final ThreadLocal<Outcome> OUTCOME = ThreadLocal.withInitial(Outcome::new);
+
+    private ReloadStressHarness(Path dataFolder, int players, boolean menus) throws Exception {
+        this.dataFolder = dataFolder;
+        this.menus = menus;
+        try (InputStream input = ReloadStressHarness.class.getClassLoader().getResourceAsStream("en_US.properties")) {
+            if (input == null) {
+                throw new IllegalStateException("en_US.properties is missing from the classpath!");
+            }
+            bundled.load(new InputStreamReader(input, StandardCharsets.UTF_8));
+        }
+        writeGeneration(1);
+
+        ExtensionLogger logger = Stubs.logger();
+        extension = new TransferTool() {
+            @Override
+            public Path dataFolder() {
+                return dataFolder;
+            }
+
+            @Override
+            public ExtensionLogger logger() {
+                return logger;
+            }
+        };
+        // The command executor is only reachable through Geyser's command manager otherwise
+        handleArgs = TransferTool.class.getDeclaredMethod("handleArgs", GeyserConnection.class, Command.class, String[].class);
+        handleArgs.setAccessible(true);
+
+        this.players = new GeyserConnection[players];
+        for (int i = 0; i < players; i++) {
+            this.players[i] = Stubs.connection("Player" + i, i % 2 == 0 ? "de_DE" : "en_US",
+                    (method, args) -> OUTCOME.get().record(method, args));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "60"));
+        int platformThreads = Integer.parseInt(options.getOrDefault("platform-threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int virtualThreads = Integer.parseInt(options.getOrDefault("virtual-threads", "1000"));
+        int players = Integer.parseInt(options.getOrDefault("players", "256"));
+        long reloadIntervalMillis = Long.parseLong(options.getOrDefault("reload-interval-millis", "0"));
+        boolean menus = Boolean.parseBoolean(options.getOrDefault("menus", "true"));
+
+        Path dataFolder = Files.createTempDirectory("transfertool-stress");
+        boolean passed;
+        try {
+            passed = new ReloadStressHarness(dataFolder, players, menus)
+                    .run(seconds, platformThreads, virtualThreads, reloadIntervalMillis);
+        } finally {
+            SyntheticConfig.deleteRecursively(dataFolder);
+        }
+        // Geyser API stubs may leave non-daemon threads behind
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run(int seconds, int platformThreads, int virtualThreads, long reloadIntervalMillis) throws Exception {
+        extension.onEnable(null);
+
+        ExecutorService virtual = virtualThreadExecutor();
+        if (virtual == null && virtualThreads > 0) {
+            System.out.println("Virtual threads are not available on Java " + Runtime.version().feature()
+                    + ", only using platform threads.");
+            virtualThreads = 0;
+        }
+
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < platformThreads; i++) {
+            Worker worker = new Worker(i);
+            workers.add(worker);
+            threads.add(new Thread(worker, "Stress-" + i));
+        }
+        for (int i = 0; i < virtualThreads; i++) {
+            workers.add(new Worker(platformThreads + i));
+        }
+        Thread reloader = new Thread(() -> reloadLoop(reloadIntervalMillis), "Stress-Reloader");
+
+        System.out.printf("Running for %s s with %s platform and %s virtual threads, %s players%n",
+                seconds, platformThreads, virtualThreads, players.length);
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (int i = platformThreads; i < workers.size(); i++) {
+            virtual.execute(workers.get(i));
+        }
+        reloader.start();
+
+        long reportedOperations = 0;
+        int reportedSecond = 0;
+        for (int second = 1; second <= seconds; second++) {
+            Thread.sleep(Math.max(0, start + TimeUnit.SECONDS.toNanos(second) - System.nanoTime()) / 1_000_000);
+            if (second % 10 == 0 || second == seconds) {
+                long operations = operations(workers);
+                System.out.printf("%4d s: %,d ops/s, %s reloads, %s failures%n", second,
+                        (operations - reportedOperations) / (second - reportedSecond), reloads.sum(), failureCount());
+                reportedOperations = operations;
+                reportedSecond = second;
+            }
+        }
+
+        running = false;
+        reloader.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (virtual != null) {
+            virtual.shutdown();
+            virtual.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        extension.onShutdown(null);
+
+        report(workers, elapsedNanos);
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or null before Java 21
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private void reloadLoop(long intervalMillis) {
+        GeyserConnection probe = Stubs.connection("Probe", "en_US");
+        long generation = 1;
+        while (running) {
+            generation++;
+            try {
+                writeGeneration(generation);
+            } catch (IOException e) {
+                fail("reload: " + e, null);
+                return;
+            }
+
+            long start = System.nanoTime();
+            extension.onReload(null);
+            // Applied once a transfer is decided by the new generation
+            long applied;
+            do {
+                ServerTransferEvent event = Stubs.transferEvent(probe, "java1.example.com", 25565);
+                extension.onTransferEvent(event);
+                applied = generation(event.bedrockHost());
+                if (applied != generation) {
+                    Thread.onSpinWait();
+                }
+            } while (applied != generation && running && System.nanoTime() - start < RELOAD_TIMEOUT_NANOS);
+            if (applied != generation) {
+                if (running) {
+                    fail("reload: generation " + generation + " was not applied within 30 s", null);
+                }
+                return;
+            }
+            record(reloadLatency, System.nanoTime() - start);
+            reloads.increment();
+
+            if (intervalMillis > 0) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Generation N has 50 + 10 * (N % 7) mappings, 5 + N % 5 shortcuts, and a routing rule for German players
+     * covering the first 5 + N % 9 mappings. Mapping "javaI.example.com" goes to "gN-mI.example.com".
+     */
+    private void writeGeneration(long generation) throws IOException {
+        written.set(generation);
+        Files.createDirectories(dataFolder.resolve("translations"));
+
+        StringBuilder yaml = new StringBuilder();
+        yaml.append("forward-original-target: false\n");
+        yaml.append("add-transfer-command: true\n");
+        yaml.append("auto-reload: false\n");
+        yaml.append("transfer-mappings:\n");
+        for (int i = 0; i < mappings(generation); i++) {
+            yaml.append("  \"java").append(i).append(".example.com\": \"g").append(generation).append("-m").append(i)
+                    .append(".example.com:19132\"\n");
+        }
+        yaml.append("transfer-shortcuts:\n");
+        for (int i = 0; i < shortcuts(generation); i++) {
+            yaml.append("  \"s").append(i).append("\": \"g").append(generation).append("-s").append(i).append(".example.com\"\n");
+        }
+        yaml.append("routing-rules:\n");
+        yaml.append("  - name: german\n");
+        yaml.append("    locales: [de]\n");
+        yaml.append("    mappings: [");
+        for (int i = 0; i < ruleMappings(generation); i++) {
+            yaml.append(i == 0 ? "" : ", ").append("java").append(i).append(".example.com");
+        }
+        yaml.append("]\n");
+        yaml.append("    target: \"g").append(generation).append("-rule.example.com\"\n");
+        yaml.append("rate-limits:\n  enabled: false\n");
+        yaml.append("affinity:\n  enabled: false\n");
+        yaml.append("default-locale: en_US\n");
+        yaml.append("version: 1\n");
+        Files.writeString(dataFolder.resolve("config.yml"), yaml, StandardCharsets.UTF_8);
+
+        Properties translations = new Properties();
+        for (String key : bundled.stringPropertyNames()) {
+            translations.setProperty(key, "g" + generation + " " + bundled.getProperty(key));
+        }
+        try (Writer writer = Files.newBufferedWriter(dataFolder.resolve("translations").resolve("en_US.properties"),
+                StandardCharsets.UTF_8)) {
+            translations.store(writer, null);
+        }
+    }
+
+    private static int mappings(long generation) {
+        return MAPPED_HOSTS + 10 * (int) (generation % 7);
+    }
+
+    private static int shortcuts(long generation) {
+        return SHORTCUTS + (int) (generation % 5);
+    }
+
+    private static int ruleMappings(long generation) {
+        return 5 + (int) (generation % 9);
+    }
+
+    /**
+     * @return N of a "gN-..." target or "gN ..." message, or -1
+     */
+    private static long generation(String text) {
+        if (text == null || text.length() < 2 || text.charAt(0) != 'g') {
+            return -1;
+        }
+        long generation = 0;
+        int i = 1;
+        for (; i < text.length() && Character.isDigit(text.charAt(i)); i++) {
+            generation = generation * 10 + (text.charAt(i) - '0');
+        }
+        return i == 1 ? -1 : generation;
+    }
+
+    private void fail(String failure, Throwable cause) {
+        String kind = cause == null ? failure.substring(0, failure.indexOf(':')) : cause.getClass().getName();
+        failures.computeIfAbsent(kind, $ -> new LongAdder()).increment();
+        synchronized (reported) {
+            if (reported.size() < MAX_REPORTED) {
+                reported.add(failure);
+                if (cause != null) {
+                    cause.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private long failureCount() {
+        long count = 0;
+        for (LongAdder adder : failures.values()) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    private static long operations(List<Worker> workers) {
+        long operations = 0;
+        for (Worker worker : workers) {
+            operations += worker.operations;
+        }
+        return operations;
+    }
+
+    private static void record(long[] histogram, long nanos) {
+        histogram[Math.min(histogram.length - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)))]++;
+    }
+
+    private void report(List<Worker> workers, long elapsedNanos) {
+        long operations = operations(workers);
+        System.out.printf("%n%,d operations in %.1f s: %,.0f ops/s sustained%n", operations, elapsedNanos / 1e9,
+                operations / (elapsedNanos / 1e9));
+        for (Operation operation : Operation.values()) {
+            long[] merged = new long[TransferMetrics.LatencyHistogram.BUCKETS];
+            for (Worker worker : workers) {
+                long[] counts = worker.latency[operation.ordinal()];
+                for (int i = 0; i < merged.length; i++) {
+                    merged[i] += counts[i];
+                }
+            }
+            printLatency(operation.name().toLowerCase(Locale.ROOT), merged);
+        }
+        System.out.printf("%s reloads%n", reloads.sum());
+        printLatency("reload", reloadLatency);
+
+        if (failures.isEmpty()) {
+            System.out.println("No failures.");
+            return;
+        }
+        System.out.println("FAILURES:");
+        failures.forEach((kind, count) -> System.out.printf("  %s: %s%n", kind, count.sum()));
+        System.out.println("First failures:");
+        synchronized (reported) {
+            reported.forEach(failure -> System.out.println("  " + failure));
+        }
+    }
+
+    /**
+     * Quantiles are bucket upper bounds, i.e. accurate to a factor of two.
+     */
+    private static void printLatency(String name, long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        System.out.printf("  %-10s %,12d   p50 <= %s   p99 <= %s   p99.9 <= %s   p99.99 <= %s%n", name, total,
+                micros(TransferMetrics.LatencyHistogram.quantile(counts, 0.5)),
+                micros(TransferMetrics.LatencyHistogram.quantile(counts, 0.99)),
+                micros(TransferMetrics.LatencyHistogram.quantile(counts, 0.999)),
+                micros(TransferMetrics.LatencyHistogram.quantile(counts, 0.9999)));
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f us", nanos / 1000.0);
+    }
+
+    private enum Operation {
+        MAPPED_EVENT, UNMAPPED_EVENT, SHORTCUT, MENU
+    }
+
+    /**
+     * What the handler did to a stub connection on the current thread.
+     */
+    private static final class Outcome {
+        String transferHost;
+        int transferPort;
+        String message;
+        Form form;
+
+        void reset() {
+            transferHost = null;
+            transferPort = 0;
+            message = null;
+            form = null;
+        }
+
+        void record(String method, Object[] args) {
+            switch (method) {
+                case "transfer" -> {
+                    transferHost = (String) args[0];
+                    transferPort = (Integer) args[1];
+                }
+                case "sendMessage" -> message = args[0] instanceof String text ? text : message;
+                case "sendForm" -> form = args[0] instanceof FormBuilder<?, ?, ?> builder ? builder.build() : (Form) args[0];
+                default -> {
+                }
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final SplittableRandom random;
+        // Per operation, latency histogram in TransferMetrics.LatencyHistogram buckets; only written by this worker
+        private final long[][] latency = new long[Operation.values().length][TransferMetrics.LatencyHistogram.BUCKETS];
+        private volatile long operations;
+        // The newest generation this worker has seen a decision of
+        private long seen;
+
+        Worker(int seed) {
+            this.random = new SplittableRandom(seed);
+        }
+
+        @Override
+        public void run() {
+            long operations = 0;
+            while (running) {
+                int roll = random.nextInt(100);
+                Operation operation = roll < 70 ? Operation.MAPPED_EVENT : roll < 80 ? Operation.UNMAPPED_EVENT
+                        : roll < 95 || !menus ? Operation.SHORTCUT : Operation.MENU;
+                GeyserConnection player = players[random.nextInt(players.length)];
+                long start = System.nanoTime();
+                try {
+                    switch (operation) {
+                        case MAPPED_EVENT -> mappedEvent(player, random.nextInt(MAPPED_HOSTS));
+                        case UNMAPPED_EVENT -> unmappedEvent(player, random.nextInt(1000));
+                        case SHORTCUT -> shortcut(player, random.nextInt(SHORTCUTS));
+                        case MENU -> menu(player);
+                    }
+                } catch (Throwable t) {
+                    Throwable cause = t instanceof InvocationTargetException e ? e.getCause() : t;
+                    fail(operation + ": " + cause, cause);
+                }
+                record(latency[operation.ordinal()], System.nanoTime() - start);
+                this.operations = ++operations;
+            }
+        }
+
+        private void mappedEvent(GeyserConnection player, int mapping) {
+            ServerTransferEvent event = Stubs.transferEvent(player, "java" + mapping + ".example.com", 25565);
+            extension.onTransferEvent(event);
+
+            String host = event.bedrockHost();
+            long generation = check(Operation.MAPPED_EVENT, host);
+            if (generation < 0) {
+                return;
+            }
+            boolean german = "de_DE".equals(player.locale());
+            boolean rule = german && mapping < ruleMappings(generation);
+            String expected = rule ? "g" + generation + "-rule.example.com" : "g" + generation + "-m" + mapping + ".example.com";
+            if (!expected.equals(host) || event.bedrockPort() != 19132) {
+                fail("mixed snapshot: java" + mapping + ".example.com for " + player.locale() + " went to " + host
+                        + ":" + event.bedrockPort() + ", expected " + expected + ":19132", null);
+            }
+        }
+
+        private void unmappedEvent(GeyserConnection player, int host) {
+            ServerTransferEvent event = Stubs.transferEvent(player, "unmapped" + host + ".example.org", 25565);
+            extension.onTransferEvent(event);
+            if (event.bedrockHost() != null) {
+                fail("wrong decision: unmapped" + host + ".example.org went to " + event.bedrockHost(), null);
+            }
+        }
+
+        private void shortcut(GeyserConnection player, int shortcut) throws ReflectiveOperationException {
+            Outcome outcome = OUTCOME.get();
+            outcome.reset();
+            handleArgs.invoke(extension, player, null, new String[]{"s" + shortcut});
+
+            long generation = check(Operation.SHORTCUT, outcome.transferHost);
+            if (generation >= 0 && !outcome.transferHost.equals("g" + generation + "-s" + shortcut + ".example.com")) {
+                fail("mixed snapshot: shortcut s" + shortcut + " went to " + outcome.transferHost
+                        + (outcome.message == null ? "" : " (" + outcome.message + ")"), null);
+            }
+        }
+
+        private void menu(GeyserConnection player) throws ReflectiveOperationException {
+            Outcome outcome = OUTCOME.get();
+            outcome.reset();
+            handleArgs.invoke(extension, player, null, new String[0]);
+
+            if (!(outcome.form instanceof SimpleForm form)) {
+                fail("wrong decision: no menu was sent" + (outcome.message == null ? "" : " (" + outcome.message + ")"), null);
+                return;
+            }
+            long generation = check(Operation.MENU, form.title());
+            if (generation < 0) {
+                return;
+            }
+            // The shortcuts of the generation, plus the "custom" button
+            List<? extends ButtonComponent> buttons = form.buttons();
+            int shortcuts = shortcuts(generation);
+            boolean consistent = buttons.size() == shortcuts + 1
+                    && generation(buttons.get(shortcuts).text()) == generation;
+            for (int i = 0; consistent && i < shortcuts; i++) {
+                consistent = buttons.get(i).text().equals("s" + i);
+            }
+            if (!consistent) {
+                List<String> labels = new ArrayList<>();
+                buttons.forEach(button -> labels.add(button.text()));
+                fail("mixed snapshot: menu \"" + form.title() + "\" has buttons " + labels, null);
+            }
+        }
+
+        /**
+         * @return the generation of the decision, or -1 if it is invalid (which is recorded as failure)
+         */
+        private long check(Operation operation, String decision) {
+            long generation = generation(decision);
+            if (generation < 0) {
+                fail("wrong decision: " + operation + " resulted in " + decision, null);
+            } else if (generation < seen) {
+                fail("stale snapshot: " + operation + " used generation " + generation + " after " + seen, null);
+            } else if (generation > written.get()) {
+                fail("wrong decision: " + operation + " used unwritten generation " + generation, null);
+            } else {
+                seen = generation;
+                return generation;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import dev.onechris.extension.transfertool.Destination;
+import dev.onechris.extension.transfertool.Route;
+import dev.onechris.extension.transfertool.RoutingTable;
+import dev.onechris.extension.transfertool.TargetPool;
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.geysermc.geyser.api.event.java.ServerTransferEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Mapping lookups for a ServerTransferEvent, against tables mixing hostnames, wildcards, literals and CIDR ranges.
+ */
+@State(Scope.Thread)
+public class RoutingBenchmark {
+    private static final int INPUTS = 4096;
+
+    @Param({"10", "1000", "100000"})
+    public int mappings;
+
+    private RoutingTable table;
+    private String[] hosts;
+    private int[] ports;
+    private ServerTransferEvent[] events;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        table = RoutingTable.compile(SyntheticConfig.mappings(mappings), RoutingBenchmark::pool, warning -> {
+            throw new IllegalStateException(warning);
+        });
+
+        List<String[]> inputs = SyntheticConfig.transferInputs(mappings, INPUTS);
+        hosts = new String[INPUTS];
+        ports = new int[INPUTS];
+        events = new ServerTransferEvent[INPUTS];
+        GeyserConnection connection = Stubs.connection("Benchmark", "en_US");
+        for (int i = 0; i < INPUTS; i++) {
+            hosts[i] = inputs.get(i)[0];
+            ports[i] = Integer.parseInt(inputs.get(i)[1]);
+            events[i] = Stubs.transferEvent(connection, hosts[i], ports[i]);
+        }
+    }
+
+    @Benchmark
+    public Route lookup() {
+        int i = cursor++ & (INPUTS - 1);
+        return table.lookup(hosts[i], ports[i]);
+    }
+
+    /**
+     * Lookup plus target selection, applied to the event the way the extension does it.
+     */
+    @Benchmark
+    public void applyToEvent(Blackhole blackhole) {
+        ServerTransferEvent event = events[cursor++ & (INPUTS - 1)];
+        Route route = table.lookup(event.host(), event.port());
+        if (route != null) {
+            Destination target = route.targets().select();
+            event.bedrockPort(route.targetPort(target, event.port()));
+            event.bedrockHost(target.ip());
+        }
+        blackhole.consume(event);
+    }
+
+    private static TargetPool pool(List<Destination> targets) {
+        return TargetPool.of(targets, null, TargetPool.Selection.LEAST_LOADED);
+    }
+
+    @Benchmark
+    public RoutingTable compile() {
+        return RoutingTable.compile(SyntheticConfig.mappings(Math.min(mappings, 1000)), RoutingBenchmark::pool, warning -> {});
+    }
+}
@@ -0,0 +1,102 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import dev.onechris.extension.transfertool.TransferTool;
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enabling and shutting down the extension with an existing config, in fresh JVMs: the first measurement of each
+ * fork is a cold start. With "pristine", the stored config fingerprint is removed first, so config.yml is
+ * re-serialized as on a first start (or before fingerprints existed).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 10)
+@Fork(5)
+public class StartupBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int mappings;
+
+    @Param({"false", "true"})
+    public boolean pristine;
+
+    private Path dataFolder;
+    private TransferTool extension;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataFolder = Files.createTempDirectory("transfertool-bench");
+        Map<String, String> shortcuts = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(mappings, 100); i++) {
+            shortcuts.put("server" + i, "bedrock" + i + ".example.com:19132");
+        }
+        SyntheticConfig.writeConfig(dataFolder, SyntheticConfig.mappings(mappings), shortcuts);
+        SyntheticConfig.writeTranslations(dataFolder.resolve("translations"));
+
+        // Let a first start normalize config.yml, as it would be on a server that ran before
+        TransferTool first = extension(dataFolder);
+        first.onEnable(null);
+        first.onShutdown(null);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        if (pristine) {
+            Files.deleteIfExists(dataFolder.resolve("state").resolve("config.fingerprint"));
+        }
+        extension = extension(dataFolder);
+    }
+
+    @TearDown(Level.Invocation)
+    public void shutdown() {
+        extension.onShutdown(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticConfig.deleteRecursively(dataFolder);
+    }
+
+    @Benchmark
+    public TransferTool enable() {
+        extension.onEnable(null);
+        return extension;
+    }
+
+    private static TransferTool extension(Path dataFolder) {
+        ExtensionLogger logger = Stubs.logger();
+        return new TransferTool() {
+            @Override
+            public Path dataFolder() {
+                return dataFolder;
+            }
+
+            @Override
+            public ExtensionLogger logger() {
+                return logger;
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.geysermc.geyser.api.event.java.ServerTransferEvent;
+import org.geysermc.geyser.api.extension.Extension;
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Minimal stand-ins for the Geyser API, so benchmarks run without a Geyser server.
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    public static ExtensionLogger logger() {
+        return (ExtensionLogger) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{ExtensionLogger.class},
+                (proxy, method, args) -> defaultValue(method.getReturnType()));
+    }
+
+    /**
+     * A Bedrock connection that has all permissions, accepts every transfer and discards messages and forms.
+     */
+    public static GeyserConnection connection(String name, String locale) {
+        return connection(name, locale, (method, args) -> {});
+    }
+
+    /**
+     * Like {@link #connection(String, String)}, but reports calls of "transfer", "sendMessage" and "sendForm"
+     * (with their arguments) to the given listener, on the calling thread.
+     */
+    public static GeyserConnection connection(String name, String locale, BiConsumer<String, Object[]> listener) {
+        return (GeyserConnection) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{GeyserConnection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "name", "bedrockUsername", "javaUsername" -> name;
+                    case "xuid" -> Long.toString(name.hashCode() & 0xFFFFFFFFL);
+                    case "locale", "languageCode" -> locale;
+                    case "hasPermission" -> true;
+                    case "transfer", "sendForm" -> {
+                        listener.accept(method.getName(), args);
+                        yield true;
+                    }
+                    case "sendMessage" -> {
+                        listener.accept(method.getName(), args);
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "StubConnection(" + name + ")";
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    public static ServerTransferEvent transferEvent(GeyserConnection connection, String host, int port) {
+        return new ServerTransferEvent(connection, host, port, Map.of());
+    }
+
+    /**
+     * An extension whose data folder is the given directory; everything else is left to the API defaults.
+     */
+    public static Extension extension(Path dataFolder, ExtensionLogger logger) {
+        return new Extension() {
+            @Override
+            public Path dataFolder() {
+                return dataFolder;
+            }
+
+            @Override
+            public ExtensionLogger logger() {
+                return logger;
+            }
+        };
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,179 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Generates configs, inputs and translation folders for the benchmarks. All output is deterministic.
+ */
+public final class SyntheticConfig {
+
+    public static final String[] LANGUAGES = {
+            "en", "de", "fr", "es", "it", "pt", "nl", "pl", "ru", "ja", "ko", "zh", "sv", "da", "fi", "nb",
+            "cs", "hu", "tr", "uk", "el", "bg", "sk", "id"
+    };
+    public static final String[] COUNTRIES = {"US", "GB", "DE", "AT", "FR", "CA"};
+
+    private SyntheticConfig() {
+    }
+
+    /**
+     * A mix of exact hostnames, wildcards, IPv4 literals, IPv4 CIDR ranges and IPv6 literals.
+     */
+    public static Map<String, String> mappings(int count) {
+        Map<String, String> mappings = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String target = "bedrock" + i + ".example.com:" + (19132 + (i % 100));
+            switch (i % 5) {
+                case 0 -> mappings.put("host" + i + ".example.com:25565", target);
+                case 1 -> mappings.put("*.zone" + i + ".example.com", target);
+                case 2 -> mappings.put(ipv4(i), target);
+                case 3 -> mappings.put(ipv4Block(i, 0) + "/30:*", target);
+                default -> mappings.put("[2001:db8::" + ipv6Groups(i) + "]:25565", target);
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Java hosts as a server would send them: about half of them match a mapping (in various spellings).
+     */
+    public static List<String[]> transferInputs(int mappings, int count) {
+        Random random = new Random(42);
+        List<String[]> inputs = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            int i = random.nextInt(Math.max(1, mappings));
+            boolean hit = random.nextBoolean();
+            String host = switch (i % 5) {
+                case 0 -> hit ? (n % 2 == 0 ? "HOST" + i + ".Example.com." : "host" + i + ".example.com") : "host" + i + ".example.net";
+                case 1 -> hit ? "play.zone" + i + ".example.com" : "zone" + i + ".example.com";
+                case 2 -> hit ? ipv4(i) : "192.0.2." + (i & 255);
+                case 3 -> hit ? ipv4Block(i, 1) : "198.51.100." + (i & 255);
+                default -> hit ? "2001:db8:0:0:0:0:" + ipv6Groups(i) : "[2001:db8:1::" + ipv6Groups(i) + "]";
+            };
+            inputs.add(new String[]{host, "25565"});
+        }
+        return inputs;
+    }
+
+    /**
+     * Inputs for the destination parser: hostnames, IPv4, bracketed IPv6, with and without ports, and some garbage.
+     */
+    public static List<String> destinationInputs(int count) {
+        Random random = new Random(7);
+        List<String> inputs = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            int i = random.nextInt(10_000);
+            inputs.add(switch (n % 8) {
+                case 0 -> "play" + i + ".example.com";
+                case 1 -> "play" + i + ".example.com:19133";
+                case 2 -> ipv4(i);
+                case 3 -> ipv4(i) + ":19132";
+                case 4 -> "[2001:db8::" + Integer.toHexString(i) + "]:19132";
+                case 5 -> "[::1]";
+                case 6 -> "example.com:notaport";
+                default -> "b\u00fccher" + i + ".example:19132";
+            });
+        }
+        return inputs;
+    }
+
+    public static void writeConfig(Path dataFolder, Map<String, String> mappings, Map<String, String> shortcuts) throws IOException {
+        Files.createDirectories(dataFolder);
+        try (Writer writer = Files.newBufferedWriter(dataFolder.resolve("config.yml"), StandardCharsets.UTF_8)) {
+            writer.write("forward-original-target: false\n");
+            writer.write("add-transfer-command: " + !shortcuts.isEmpty() + "\n");
+            writer.write("auto-reload: false\n");
+            writeMap(writer, "transfer-mappings", mappings);
+            writeMap(writer, "transfer-shortcuts", shortcuts);
+            writer.write("default-locale: en_US\n");
+            writer.write("version: 1\n");
+        }
+    }
+
+    private static void writeMap(Writer writer, String name, Map<String, String> map) throws IOException {
+        writer.write(name + ":" + (map.isEmpty() ? " {}" : "") + "\n");
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writer.write("  \"" + entry.getKey() + "\": \"" + entry.getValue() + "\"\n");
+        }
+    }
+
+    /**
+     * Writes one translation file per language/country combination, based on the bundled en_US strings.
+     *
+     * @return the locales written
+     */
+    public static List<String> writeTranslations(Path folder) throws IOException {
+        Files.createDirectories(folder);
+        Properties bundled = new Properties();
+        try (InputStream input = SyntheticConfig.class.getClassLoader().getResourceAsStream("en_US.properties")) {
+            if (input == null) {
+                throw new IllegalStateException("en_US.properties is missing from the classpath!");
+            }
+            bundled.load(new InputStreamReader(input, StandardCharsets.UTF_8));
+        }
+
+        List<String> locales = new ArrayList<>();
+        for (String language : LANGUAGES) {
+            for (int c = 0; c < 3; c++) {
+                String locale = language + "_" + COUNTRIES[Math.floorMod(language.hashCode() + c, COUNTRIES.length)];
+                if (locales.contains(locale)) {
+                    continue;
+                }
+                locales.add(locale);
+
+                Properties translated = new Properties();
+                for (String key : bundled.stringPropertyNames()) {
+                    // Leave some keys out, so the fallback chain is exercised
+                    if ((key.hashCode() + c) % 4 != 0) {
+                        translated.setProperty(key, "[" + locale + "] " + bundled.getProperty(key));
+                    }
+                }
+                try (Writer writer = Files.newBufferedWriter(folder.resolve(locale + ".properties"), StandardCharsets.UTF_8)) {
+                    translated.store(writer, null);
+                }
+            }
+        }
+        Collections.sort(locales);
+        return locales;
+    }
+
+    public static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (var files = Files.walk(path)) {
+            for (Path file : files.sorted(Collections.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static String ipv4(int i) {
+        return "10." + ((i >>> 16) & 255) + "." + ((i >>> 8) & 255) + "." + (i & 255);
+    }
+
+    /**
+     * The last two IPv6 groups, as a single group would only hold 65536 different values.
+     */
+    private static String ipv6Groups(int i) {
+        return Integer.toHexString(i >>> 16) + ":" + Integer.toHexString(i & 0xFFFF);
+    }
+
+    private static String ipv4Block(int i, int offset) {
+        int base = i * 4 + offset;
+        return "100." + (64 + ((base >>> 16) & 63)) + "." + ((base >>> 8) & 255) + "." + (base & 255);
+    }
+}
@@ -0,0 +1,79 @@
+package dev.onechris.extension.transfertool.benchmark;
+
+import dev.onechris.extension.transfertool.TransferTool;
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.geysermc.geyser.api.event.java.ServerTransferEvent;
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The whole ServerTransferEvent handler of an enabled extension, including metrics.
+ */
+@State(Scope.Benchmark)
+public class TransferEventBenchmark {
+    private static final int INPUTS = 4096;
+
+    @Param({"10", "1000", "100000"})
+    public int mappings;
+
+    private Path dataFolder;
+    private TransferTool extension;
+    private ServerTransferEvent[] events;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataFolder = Files.createTempDirectory("transfertool-bench");
+        SyntheticConfig.writeConfig(dataFolder, SyntheticConfig.mappings(mappings), Map.of());
+
+        ExtensionLogger logger = Stubs.logger();
+        extension = new TransferTool() {
+            @Override
+            public Path dataFolder() {
+                return dataFolder;
+            }
+
+            @Override
+            public ExtensionLogger logger() {
+                return logger;
+            }
+        };
+        extension.onEnable(null);
+
+        List<String[]> inputs = SyntheticConfig.transferInputs(mappings, INPUTS);
+        events = new ServerTransferEvent[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            GeyserConnection connection = Stubs.connection("Player" + (i & 127), "en_US");
+            events[i] = Stubs.transferEvent(connection, inputs.get(i)[0], Integer.parseInt(inputs.get(i)[1]));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        extension.onShutdown(null);
+        SyntheticConfig.deleteRecursively(dataFolder);
+    }
+
+    @Benchmark
+    public ServerTransferEvent handle(Cursor cursor) {
+        ServerTransferEvent event = events[cursor.next++ & (INPUTS - 1)];
+        extension.onTransferEvent(event);
+        return event;
+    }
+}
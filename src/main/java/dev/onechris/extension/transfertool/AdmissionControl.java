@@ -0,0 +1,383 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Per-destination admission limits: at most a number of transfers per second, and of transfers in flight
+ * (transferred, but still connected to this Geyser instance), to each Bedrock server. Players over a limit are
+ * sent to the server's overflow target if there is one, or otherwise wait in a first-come, first-served queue
+ * that is released as the limits allow.
+ * <p>
+ * Only players that stay connected can wait: a Java server's transfer ends the player's Java session, and Geyser
+ * ends their Bedrock session as well unless the transfer event names a Bedrock server. Such players are therefore
+ * never queued, see {@link #admitNow(GeyserConnection, Destination)}.
+ */
+public final class AdmissionControl {
+    private static final long TICK_MILLIS = 50;
+
+    public enum Decision {
+        QUEUED,
+        OVERFLOWED,
+        TURNED_AWAY;
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private record Limit(int transfersPerSecond, int maxInFlight, Destination overflow) {
+
+        boolean unlimited() {
+            return transfersPerSecond <= 0 && maxInFlight <= 0;
+        }
+    }
+
+    private record Waiting(GeyserConnection connection, Destination destination, Gate gate) {
+    }
+
+    private record InFlight(Gate gate, long deadline) {
+    }
+
+    /**
+     * The limits and queue of one destination. All fields are guarded by the gate itself.
+     */
+    private static final class Gate {
+        private final Destination destination;
+        private final ArrayDeque<Waiting> queue = new ArrayDeque<>();
+        private Limit limit;
+        private int inFlight;
+        // Set once the gate was dropped from the map because it was idle; requests then have to use a new one
+        private boolean removed;
+        // GCRA: the earliest nanoTime at which the bucket is empty again
+        private long nextFree;
+
+        Gate(Destination destination, Limit limit) {
+            this.destination = destination;
+            this.limit = limit;
+        }
+
+        /**
+         * Takes a transfer slot if the limits allow it.
+         */
+        boolean tryAcquire(long now) {
+            Limit limit = this.limit;
+            if (limit.maxInFlight() > 0 && inFlight >= limit.maxInFlight()) {
+                return false;
+            }
+            if (limit.transfersPerSecond() > 0) {
+                long interval = 1_000_000_000L / limit.transfersPerSecond();
+                long next = Math.max(nextFree, now) + interval;
+                // Allows a burst of one second's worth of transfers
+                if (next - now > 1_000_000_000L) {
+                    return false;
+                }
+                nextFree = next;
+            }
+            inFlight++;
+            return true;
+        }
+
+        boolean idle() {
+            return queue.isEmpty() && inFlight == 0;
+        }
+    }
+
+    private final Supplier<TransferState> state;
+    private final TransferMetrics metrics;
+    private final BiConsumer<GeyserConnection, Destination> release;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TransferTool-Admission");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Destination, Gate> gates = new ConcurrentHashMap<>();
+    private final Map<GeyserConnection, Waiting> waiting = new ConcurrentHashMap<>();
+    private final Map<GeyserConnection, InFlight> inFlight = new ConcurrentHashMap<>();
+    private volatile Map<Destination, Limit> limits = Map.of();
+    private volatile Limit defaultLimit = new Limit(0, 0, null);
+    private volatile long timeoutNanos;
+    private volatile long positionUpdateNanos;
+    private volatile int maxQueueLength;
+    private long lastPositionUpdate;
+
+    /**
+     * @param release transfers a player that waited in a queue once it is their turn
+     */
+    public AdmissionControl(Supplier<TransferState> state, TransferMetrics metrics,
+                            BiConsumer<GeyserConnection, Destination> release) {
+        this(state, metrics, release, System::nanoTime);
+    }
+
+    /**
+     * @param clock the nanoTime source; {@link #tick()} has to be called by the caller unless {@link #start()} is
+     */
+    AdmissionControl(Supplier<TransferState> state, TransferMetrics metrics,
+                     BiConsumer<GeyserConnection, Destination> release, LongSupplier clock) {
+        this.state = state;
+        this.metrics = metrics;
+        this.release = release;
+        this.clock = clock;
+        this.lastPositionUpdate = clock.getAsLong();
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the scheduler. Players still waiting are transferred right away, as there is no one left to release them.
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+        for (Waiting entry : List.copyOf(waiting.values())) {
+            if (waiting.remove(entry.connection(), entry)) {
+                release.accept(entry.connection(), entry.destination());
+            }
+        }
+        waiting.clear();
+        inFlight.clear();
+        gates.clear();
+    }
+
+    /**
+     * Applies new limits; waiting players keep their place.
+     */
+    public void configure(Config.Admission settings) {
+        Map<Destination, Limit> limits = new HashMap<>();
+        for (Map.Entry<String, Config.Admission.Target> entry : settings.targets().entrySet()) {
+            if (!(Destination.parse(entry.getKey(), RoutingTable.DEFAULT_BEDROCK_PORT) instanceof Destination destination)) {
+                TransferTool.logger.warning("Ignoring admission limits for invalid server " + entry.getKey());
+                continue;
+            }
+            Config.Admission.Target target = entry.getValue();
+            limits.put(destination, new Limit(target.transfersPerSecond(), target.maxInFlight(),
+                    overflow(target.overflow(), entry.getKey())));
+        }
+        this.limits = Map.copyOf(limits);
+        this.defaultLimit = new Limit(settings.transfersPerSecond(), settings.maxInFlight(),
+                overflow(settings.overflow(), "all servers"));
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.transferTimeoutMillis());
+        this.positionUpdateNanos = TimeUnit.MILLISECONDS.toNanos(settings.positionUpdateMillis());
+        this.maxQueueLength = settings.maxQueueLength();
+
+        for (Gate gate : gates.values()) {
+            synchronized (gate) {
+                gate.limit = limit(gate.destination);
+            }
+        }
+    }
+
+    private static Destination overflow(String spec, String server) {
+        if (spec == null || spec.isBlank()) {
+            return null;
+        }
+        if (Destination.parse(spec, RoutingTable.DEFAULT_BEDROCK_PORT) instanceof Destination destination) {
+            return destination;
+        }
+        TransferTool.logger.warning("Ignoring invalid overflow server " + spec + " for " + server);
+        return null;
+    }
+
+    private Limit limit(Destination destination) {
+        Limit limit = limits.get(destination);
+        return limit == null ? defaultLimit : limit;
+    }
+
+    /**
+     * Asks to transfer the player to the destination. If they have to wait, they are told their position.
+     *
+     * @return where to transfer the player now (the destination or its overflow server), or null if they were
+     * queued or turned away
+     */
+    public Destination admit(GeyserConnection connection, Destination destination) {
+        return admit(connection, destination, true);
+    }
+
+    /**
+     * Like {@link #admit(GeyserConnection, Destination)}, for players that cannot wait because their session ends
+     * unless they are transferred right away: instead of being queued, they are turned away.
+     *
+     * @return where to transfer the player now (the destination or its overflow server), or null if they were
+     * turned away
+     */
+    public Destination admitNow(GeyserConnection connection, Destination destination) {
+        return admit(connection, destination, false);
+    }
+
+    private Destination admit(GeyserConnection connection, Destination destination, boolean mayWait) {
+        // A new request replaces the player's place in any queue
+        Waiting previous = waiting.remove(connection);
+        if (previous != null) {
+            synchronized (previous.gate()) {
+                previous.gate().queue.remove(previous);
+            }
+        }
+
+        Limit limit = limit(destination);
+        int position;
+        Destination overflow = null;
+        Gate gate;
+        while (true) {
+            gate = gates.get(destination);
+            if (gate == null) {
+                if (limit.unlimited()) {
+                    return destination;
+                }
+                gate = gates.computeIfAbsent(destination, $ -> new Gate(destination, limit));
+            }
+
+            synchronized (gate) {
+                if (gate.removed) {
+                    continue;
+                }
+                if (gate.limit.unlimited()) {
+                    return destination;
+                }
+                if (gate.queue.isEmpty() && gate.tryAcquire(clock.getAsLong())) {
+                    position = 0;
+                } else if ((overflow = gate.limit.overflow()) != null || !mayWait || gate.queue.size() >= maxQueueLength) {
+                    position = -1;
+                } else {
+                    Waiting entry = new Waiting(connection, destination, gate);
+                    gate.queue.add(entry);
+                    waiting.put(connection, entry);
+                    position = gate.queue.size();
+                }
+            }
+            break;
+        }
+
+        if (position == 0) {
+            track(connection, gate);
+            return destination;
+        }
+        if (overflow != null) {
+            metrics.admission(Decision.OVERFLOWED);
+            return overflow;
+        }
+        LanguageManager languageManager = state.get().languageManager();
+        if (position < 0) {
+            metrics.admission(Decision.TURNED_AWAY);
+            connection.sendMessage(languageManager.getLocaleString(connection, "admission.full", destination));
+        } else {
+            metrics.admission(Decision.QUEUED);
+            connection.sendMessage(languageManager.getLocaleString(connection, "admission.queued", destination, position));
+        }
+        return null;
+    }
+
+    /**
+     * Called for every disconnecting player: frees their transfer slot, or their place in a queue.
+     */
+    public void disconnected(GeyserConnection connection) {
+        InFlight transfer = inFlight.remove(connection);
+        if (transfer != null) {
+            release(transfer.gate());
+        }
+        Waiting entry = waiting.remove(connection);
+        if (entry != null) {
+            synchronized (entry.gate()) {
+                entry.gate().queue.remove(entry);
+            }
+        }
+    }
+
+    private void track(GeyserConnection connection, Gate gate) {
+        InFlight previous = inFlight.put(connection, new InFlight(gate, clock.getAsLong() + timeoutNanos));
+        if (previous != null) {
+            release(previous.gate());
+        }
+    }
+
+    private static void release(Gate gate) {
+        synchronized (gate) {
+            if (gate.inFlight > 0) {
+                gate.inFlight--;
+            }
+        }
+    }
+
+    void tick() {
+        try {
+            long now = clock.getAsLong();
+            inFlight.entrySet().removeIf(entry -> {
+                if (entry.getValue().deadline() - now < 0) {
+                    release(entry.getValue().gate());
+                    return true;
+                }
+                return false;
+            });
+
+            boolean updatePositions = positionUpdateNanos > 0 && now - lastPositionUpdate >= positionUpdateNanos;
+            if (updatePositions) {
+                lastPositionUpdate = now;
+            }
+
+            List<Waiting> released = new ArrayList<>();
+            List<Waiting> positions = updatePositions ? new ArrayList<>() : List.of();
+            Iterator<Gate> iterator = gates.values().iterator();
+            while (iterator.hasNext()) {
+                Gate gate = iterator.next();
+                synchronized (gate) {
+                    while (!gate.queue.isEmpty() && gate.tryAcquire(now)) {
+                        released.add(gate.queue.poll());
+                    }
+                    if (updatePositions) {
+                        positions.addAll(gate.queue);
+                    }
+                    if (gate.idle()) {
+                        // Recreated on the next request
+                        gate.removed = true;
+                        iterator.remove();
+                    }
+                }
+            }
+
+            for (Waiting entry : released) {
+                if (!waiting.remove(entry.connection(), entry)) {
+                    // Disconnected or asked for something else meanwhile
+                    release(entry.gate());
+                    continue;
+                }
+                track(entry.connection(), entry.gate());
+                release.accept(entry.connection(), entry.destination());
+            }
+            sendPositions(positions);
+        } catch (RuntimeException e) {
+            TransferTool.logger.error("Error while releasing queued TransferTool transfers! " + e.getMessage());
+        }
+    }
+
+    private void sendPositions(List<Waiting> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        LanguageManager languageManager = state.get().languageManager();
+        Destination current = null;
+        int position = 0;
+        for (Waiting entry : entries) {
+            // Entries are grouped by gate, in queue order
+            position = entry.destination().equals(current) ? position + 1 : 1;
+            current = entry.destination();
+            entry.connection().sendMessage(languageManager.getLocaleString(entry.connection(), "admission.position",
+                    position, entry.destination()));
+        }
+    }
+}
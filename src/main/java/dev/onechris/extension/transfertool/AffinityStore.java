@@ -0,0 +1,239 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers which member of a pool each player (by XUID) was last sent to, so they land on the same server again.
+ * <p>
+ * Entries live in a fixed-size hash table inside a memory-mapped file, so they survive restarts and are paged in
+ * on demand instead of being loaded into the heap. Each key hashes to a bucket of {@link #BUCKET_SLOTS} slots;
+ * expired entries are reused, and a full bucket evicts its least recently used entry.
+ * Layout of a slot: XUID (0 = empty), pool key hash, target hash, last use (epoch millis).
+ */
+public final class AffinityStore {
+    private static final int MAGIC = 0x54544146; // "TTAF"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int BUCKET_SLOTS = 8;
+    private static final int LOCK_STRIPES = 256;
+    private static final int MAX_ENTRIES = 1 << 24;
+
+    private final int capacity;
+    private final int bucketMask;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final LongSupplier clock;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private volatile long ttlMillis;
+
+    private AffinityStore(int capacity, FileChannel channel, MappedByteBuffer buffer, long ttlMillis, LongSupplier clock) {
+        this.capacity = capacity;
+        this.bucketMask = capacity / BUCKET_SLOTS - 1;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Opens the store, keeping the existing entries if the file was created with the same capacity, and starting
+     * over otherwise. Resizing truncates the file, so it must not be mapped by another store of this process:
+     * a mapping outlives {@link #close()}, and touching a truncated mapping crashes the thread.
+     *
+     * @param capacity the number of slots, as returned by {@link #capacity(int)}
+     */
+    public static AffinityStore open(Path file, int capacity, int ttlHours) throws IOException {
+        return open(file, capacity, ttlHours, System::currentTimeMillis);
+    }
+
+    static AffinityStore open(Path file, int capacity, int ttlHours, LongSupplier clock) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+
+        Files.createDirectories(file.getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean reuse = channel.size() == size;
+            if (!reuse) {
+                channel.truncate(0);
+            }
+            // Mapping beyond the end extends the file with zeroes, i.e. empty slots
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != capacity) {
+                if (reuse) {
+                    // Same size, but not a store of this version: start over
+                    for (int position = 0; position < size; position += 8) {
+                        buffer.putLong(position, 0);
+                    }
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, capacity);
+            }
+            return new AffinityStore(capacity, channel, buffer, TimeUnit.HOURS.toMillis(ttlHours), clock);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of slots a store for the given number of entries has
+     */
+    static int capacity(int maxEntries) {
+        int entries = Math.max(BUCKET_SLOTS * 8, Math.min(MAX_ENTRIES, maxEntries));
+        return Integer.highestOneBit(entries - 1) << 1;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void ttlHours(int hours) {
+        this.ttlMillis = TimeUnit.HOURS.toMillis(hours);
+    }
+
+    public Destination selectForMapping(GeyserConnection connection, String source, TargetPool pool) {
+        return select(connection, hash(source), pool);
+    }
+
+    public Destination selectForShortcut(GeyserConnection connection, String name, TargetPool pool) {
+        return select(connection, ~hash(name), pool);
+    }
+
+    public Destination selectForRule(GeyserConnection connection, String name, TargetPool pool) {
+        return select(connection, hash(name) * 31 + 1, pool);
+    }
+
+    /**
+     * Selects a pool member for the player, preferring the one they were last sent to for the same pool key
+     * (as long as it is available), and remembers the choice. Single-server pools and players without a XUID
+     * are not tracked.
+     */
+    private Destination select(GeyserConnection connection, long key, TargetPool pool) {
+        long xuid;
+        if (pool.size() == 1 || (xuid = parseXuid(connection.xuid())) == 0) {
+            return pool.select();
+        }
+
+        long now = clock.getAsLong();
+        int bucket = bucket(xuid, key);
+        synchronized (locks[bucket & (LOCK_STRIPES - 1)]) {
+            int slot = find(bucket, xuid, key, now);
+            int preferred = -1;
+            if (slot >= 0) {
+                long target = buffer.getLong(slot + 16);
+                for (int i = 0; i < pool.size(); i++) {
+                    if (hash(pool.member(i)) == target) {
+                        preferred = i;
+                        break;
+                    }
+                }
+            }
+
+            Destination selected = pool.select(preferred);
+            if (slot < 0) {
+                slot = claim(bucket, now);
+                buffer.putLong(slot, xuid);
+                buffer.putLong(slot + 8, key);
+            }
+            buffer.putLong(slot + 16, hash(selected));
+            buffer.putLong(slot + 24, now);
+            return selected;
+        }
+    }
+
+    /**
+     * Writes pending changes to disk and releases the file. The mapping stays valid until it is garbage collected,
+     * so concurrent selections still complete.
+     */
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private int find(int bucket, long xuid, long key, long now) {
+        int base = HEADER_SIZE + bucket * BUCKET_SLOTS * SLOT_SIZE;
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            int slot = base + i * SLOT_SIZE;
+            if (buffer.getLong(slot) == xuid && buffer.getLong(slot + 8) == key && !expired(slot, now)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return an empty or expired slot of the bucket, or else its least recently used one
+     */
+    private int claim(int bucket, long now) {
+        int base = HEADER_SIZE + bucket * BUCKET_SLOTS * SLOT_SIZE;
+        int oldest = base;
+        long oldestUse = Long.MAX_VALUE;
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            int slot = base + i * SLOT_SIZE;
+            if (buffer.getLong(slot) == 0 || expired(slot, now)) {
+                return slot;
+            }
+            long lastUse = buffer.getLong(slot + 24);
+            if (lastUse < oldestUse) {
+                oldest = slot;
+                oldestUse = lastUse;
+            }
+        }
+        return oldest;
+    }
+
+    private boolean expired(int slot, long now) {
+        long ttl = ttlMillis;
+        return ttl > 0 && now - buffer.getLong(slot + 24) > ttl;
+    }
+
+    int bucket(long xuid, long key) {
+        long mixed = (xuid ^ key) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & bucketMask;
+    }
+
+    private static long parseXuid(String xuid) {
+        if (xuid == null || xuid.isEmpty() || xuid.length() > 19) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < xuid.length(); i++) {
+            char c = xuid.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value < 0 ? 0 : value;
+    }
+
+    private static long hash(Destination destination) {
+        return hash(destination.ip()) * 31 + destination.port();
+    }
+
+    /**
+     * 64-bit FNV-1a over the chars, stored in the file, so it must not change between versions.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,403 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only JSON-lines log of every transfer.
+ * <p>
+ * Producers (Netty threads, command handlers) only put an immutable record into a bounded lock-free ring buffer;
+ * if it is full, the record is dropped and counted instead of blocking. A single writer thread drains the buffer
+ * in batches, flushes at least every "flush-interval-millis", and rotates the file by size and age.
+ * Rotated files are gzip-compressed, and only the newest "max-archives" are kept.
+ */
+public final class AuditLog implements Runnable {
+    private static final DateTimeFormatter ARCHIVE_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT)
+            .withZone(ZoneOffset.UTC);
+    private static final String FILE_NAME = "transfers.log";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int MAX_BATCH = 512;
+    private static final long DROP_WARNING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long ROTATE_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    public enum Kind {
+        /** A Java server transfer that matched a transfer mapping. */
+        MAPPING,
+        /** A Java server transfer forwarded as is ("forward-original-target"). */
+        FORWARD,
+        /** A Java server transfer matching a routing rule. */
+        RULE,
+        /** A Java server transfer without any Bedrock target. */
+        UNMAPPED,
+        SHORTCUT,
+        CUSTOM,
+        DRAIN,
+        /** A player released from an admission queue. */
+        QUEUED
+    }
+
+    /**
+     * @param requestedPort the requested port, or -1 if the request was not a host (e.g. a shortcut name)
+     * @param targetHost the chosen Bedrock target, or null if there was none
+     */
+    public record Entry(long timeMillis, Kind kind, String player, String xuid, String requested, int requestedPort,
+                        String targetHost, int targetPort, String reason) {
+    }
+
+    private final Path folder;
+    private final Config.Audit settings;
+    private final TransferMetrics metrics;
+    private final ExtensionLogger logger;
+
+    // Bounded multi-producer queue (Vyukov): a slot may be written once its sequence equals the producer position,
+    // and read once it equals position + 1
+    private final int mask;
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private FileChannel channel;
+    private Writer writer;
+    // In bytes, as written to the file
+    private long fileSize;
+    private long fileOpenedMillis;
+    private long rotateRetryMillis;
+    private long reportedDrops;
+    private long lastDropWarning;
+
+    public AuditLog(Path folder, Config.Audit settings, TransferMetrics metrics, ExtensionLogger logger) {
+        this.folder = folder;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.logger = logger;
+
+        int capacity = Integer.highestOneBit(Math.max(2, settings.bufferSize() - 1)) << 1;
+        this.mask = capacity - 1;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+
+        this.reportedDrops = metrics.auditDroppedCount();
+        this.thread = new Thread(this, "TransferTool-Audit");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(folder);
+        open();
+        thread.start();
+    }
+
+    /**
+     * Writes everything still buffered and closes the file.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return whether this log writes to the given folder with the given settings, i.e. need not be restarted
+     */
+    public boolean configuredAs(Path folder, Config.Audit settings) {
+        Config.Audit current = this.settings;
+        return this.folder.equals(folder)
+                && current.bufferSize() == settings.bufferSize()
+                && current.flushIntervalMillis() == settings.flushIntervalMillis()
+                && current.sync() == settings.sync()
+                && current.maxFileSizeMb() == settings.maxFileSizeMb()
+                && current.rotateAfterHours() == settings.rotateAfterHours()
+                && current.compress() == settings.compress()
+                && current.maxArchives() == settings.maxArchives();
+    }
+
+    public void record(Kind kind, GeyserConnection connection, String requested, int requestedPort,
+                       String targetHost, int targetPort, String reason) {
+        offer(new Entry(System.currentTimeMillis(), kind, connection.name(), connection.xuid(),
+                requested, requestedPort, targetHost, targetPort, reason));
+    }
+
+    /**
+     * @return whether the entry was queued; false if the buffer is full (the entry is then counted as dropped)
+     */
+    public boolean offer(Entry entry) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries.lazySet(index, entry);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                metrics.auditDropped();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private Entry poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        Entry entry = entries.get(index);
+        entries.lazySet(index, null);
+        sequences.lazySet(index, head + mask + 1);
+        head++;
+        return entry;
+    }
+
+    @Override
+    public void run() {
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.flushIntervalMillis());
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        StringBuilder line = new StringBuilder(256);
+
+        while (true) {
+            boolean stopping = !running;
+            int written = 0;
+            try {
+                if (!channel.isOpen()) {
+                    // A previous rotation could not reopen the file
+                    open();
+                }
+                Entry entry;
+                while (written < MAX_BATCH && (entry = poll()) != null) {
+                    line.setLength(0);
+                    format(entry, line);
+                    writer.append(line);
+                    fileSize += utf8Length(line);
+                    written++;
+                }
+                dirty |= written > 0;
+
+                long now = System.nanoTime();
+                if (dirty && (stopping || now - lastFlush >= flushIntervalNanos)) {
+                    flush();
+                    lastFlush = now;
+                    dirty = false;
+                }
+                if (shouldRotate()) {
+                    flush();
+                    dirty = false;
+                    rotate();
+                }
+            } catch (IOException e) {
+                logger.error("Unable to write the TransferTool audit log! " + e.getMessage());
+                // Avoid spinning on a broken disk
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+
+            reportDrops(stopping);
+            if (stopping && written == 0) {
+                break;
+            }
+            if (written < MAX_BATCH && !stopping) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.error("Unable to close the TransferTool audit log! " + e.getMessage());
+        }
+    }
+
+    private void flush() throws IOException {
+        writer.flush();
+        if (settings.sync()) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Warns about dropped records at most once a minute, and once more when stopping.
+     */
+    private void reportDrops(boolean stopping) {
+        long dropped = metrics.auditDroppedCount();
+        long now = System.nanoTime();
+        if (dropped != reportedDrops && (stopping || now - lastDropWarning >= DROP_WARNING_INTERVAL_NANOS)) {
+            logger.warning("TransferTool audit log buffer is full; dropped " + (dropped - reportedDrops) + " records!");
+            reportedDrops = dropped;
+            lastDropWarning = now;
+        }
+    }
+
+    private void open() throws IOException {
+        Path file = folder.resolve(FILE_NAME);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+        fileSize = channel.size();
+        // An existing file is treated as opened now, so a restart does not rotate it right away
+        fileOpenedMillis = System.currentTimeMillis();
+    }
+
+    private boolean shouldRotate() {
+        if (fileSize == 0) {
+            return false;
+        }
+        long maxBytes = settings.maxFileSizeMb() * 1024L * 1024L;
+        long maxAge = TimeUnit.HOURS.toMillis(settings.rotateAfterHours());
+        long now = System.currentTimeMillis();
+        return now >= rotateRetryMillis
+                && ((maxBytes > 0 && fileSize >= maxBytes) || (maxAge > 0 && now - fileOpenedMillis >= maxAge));
+    }
+
+    private void rotate() throws IOException {
+        Path current = folder.resolve(FILE_NAME);
+        Path archive = archivePath();
+        writer.close();
+        try {
+            Files.move(current, archive);
+        } catch (IOException e) {
+            // Keep appending to the current file, and only try again a bit later
+            rotateRetryMillis = System.currentTimeMillis() + ROTATE_RETRY_MILLIS;
+            throw e;
+        } finally {
+            open();
+        }
+
+        if (settings.compress()) {
+            Path compressed = folder.resolve(archive.getFileName() + ".gz");
+            try (InputStream input = Files.newInputStream(archive);
+                 OutputStream output = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+                input.transferTo(output);
+            }
+            Files.delete(archive);
+        }
+        deleteOldArchives();
+    }
+
+    /**
+     * @return an archive name that is neither taken by an uncompressed nor by a compressed archive
+     */
+    private Path archivePath() {
+        String name = "transfers-" + ARCHIVE_SUFFIX.format(Instant.now());
+        Path archive = folder.resolve(name + ".log");
+        // Rotations within the same second get a counter; "_" sorts after ".", so archives stay in order
+        for (int i = 1; Files.exists(archive) || Files.exists(folder.resolve(archive.getFileName() + ".gz")); i++) {
+            archive = folder.resolve(name + "_" + i + ".log");
+        }
+        return archive;
+    }
+
+    private void deleteOldArchives() throws IOException {
+        if (settings.maxArchives() <= 0) {
+            return;
+        }
+        List<Path> archives = new ArrayList<>();
+        try (Stream<Path> files = Files.list(folder)) {
+            files.filter(file -> file.getFileName().toString().startsWith("transfers-")).forEach(archives::add);
+        }
+        // The timestamp suffix sorts chronologically
+        archives.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        for (int i = 0; i < archives.size() - settings.maxArchives(); i++) {
+            Files.deleteIfExists(archives.get(i));
+        }
+    }
+
+    static void format(Entry entry, StringBuilder out) {
+        out.append("{\"time\":\"").append(Instant.ofEpochMilli(entry.timeMillis())).append('"');
+        out.append(",\"kind\":\"").append(entry.kind().name().toLowerCase(Locale.ROOT)).append('"');
+        field(out, "player", entry.player());
+        field(out, "xuid", entry.xuid());
+        field(out, "requested", entry.requested());
+        if (entry.requestedPort() >= 0) {
+            out.append(",\"requested_port\":").append(entry.requestedPort());
+        }
+        if (entry.targetHost() != null) {
+            field(out, "target", entry.targetHost());
+            out.append(",\"target_port\":").append(entry.targetPort());
+        }
+        field(out, "reason", entry.reason());
+        out.append("}\n");
+    }
+
+    /**
+     * @return the number of bytes the text takes in UTF-8
+     */
+    static int utf8Length(CharSequence text) {
+        int length = text.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                // A surrogate pair is 4 bytes for 2 chars; a lone surrogate is written as "?"
+                bytes += Character.isSurrogate(c) ? (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(text.charAt(i + 1)) ? 2 : 0) : 2;
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    private static void field(StringBuilder out, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        out.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,252 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically sends RakNet unconnected pings to all pooled Bedrock targets over a single non-blocking
+ * {@link DatagramChannel}, and caches the results in {@link TargetHealth} objects.
+ */
+public final class BedrockProber implements Runnable {
+
+    private static final byte UNCONNECTED_PING = 0x01;
+    private static final byte UNCONNECTED_PONG = 0x1c;
+    private static final byte[] OFFLINE_MESSAGE_ID = {
+            0x00, (byte) 0xff, (byte) 0xff, 0x00, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe,
+            (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, 0x12, 0x34, 0x56, 0x78
+    };
+    // How often (in rounds) target hostnames are resolved again
+    private static final int RESOLVE_EVERY_ROUNDS = 60;
+
+    private final Map<Destination, TargetHealth> targets = new ConcurrentHashMap<>();
+    private final ExtensionLogger logger;
+    private final long clientGuid = ThreadLocalRandom.current().nextLong();
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(33);
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(1500);
+
+    // Only touched by the probe thread
+    private final Map<SocketAddress, TargetHealth> byAddress = new HashMap<>();
+    private final Map<TargetHealth, InetSocketAddress> resolved = new HashMap<>();
+
+    private volatile long intervalNanos;
+    private volatile long timeoutNanos;
+    private volatile int unhealthyAfter;
+    private volatile boolean running;
+    private Thread thread;
+    private Selector selector;
+    private DatagramChannel channel;
+
+    public BedrockProber(ExtensionLogger logger, Config.HealthChecks settings) {
+        this.logger = logger;
+        configure(settings);
+    }
+
+    public void configure(Config.HealthChecks settings) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(100, settings.intervalMillis()));
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10, settings.timeoutMillis()));
+        this.unhealthyAfter = Math.max(1, settings.unhealthyAfter());
+    }
+
+    /**
+     * Starts probing the given target (if not done already), and returns its shared health object.
+     */
+    public TargetHealth track(Destination destination) {
+        return targets.computeIfAbsent(destination, TargetHealth::new);
+    }
+
+    /**
+     * Stops probing targets that are no longer part of any pool.
+     */
+    public void retainOnly(Collection<Destination> destinations) {
+        targets.keySet().retainAll(destinations);
+    }
+
+    public Collection<TargetHealth> targets() {
+        return targets.values();
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(null);
+        channel.register(selector, SelectionKey.OP_READ);
+
+        running = true;
+        thread = new Thread(this, "TransferTool-Prober");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close prober channel: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void run() {
+        int round = 0;
+        while (running) {
+            long roundStart = System.nanoTime();
+            try {
+                if (round++ % RESOLVE_EVERY_ROUNDS == 0) {
+                    byAddress.clear();
+                    resolved.clear();
+                }
+                pingAll(roundStart);
+                receiveUntil(roundStart + intervalNanos);
+            } catch (IOException e) {
+                logger.error("TransferTool health prober failed: " + e.getMessage());
+                sleepQuietly(intervalNanos);
+            }
+        }
+    }
+
+    private void pingAll(long now) throws IOException {
+        for (TargetHealth health : targets.values()) {
+            // A ping that was not answered since the previous round counts as a failure
+            if (health.lastPingNanos != 0 && health.lastPongNanos < health.lastPingNanos) {
+                countFailure(health, "stopped answering pings");
+            }
+
+            InetSocketAddress address = resolve(health);
+            if (address == null) {
+                // A target that cannot be resolved cannot answer either; count it right away
+                health.lastPingNanos = 0;
+                countFailure(health, "cannot be resolved");
+                continue;
+            }
+
+            sendBuffer.clear();
+            sendBuffer.put(UNCONNECTED_PING);
+            sendBuffer.putLong(now);
+            sendBuffer.put(OFFLINE_MESSAGE_ID);
+            sendBuffer.putLong(clientGuid);
+            sendBuffer.flip();
+            channel.send(sendBuffer, address);
+            health.lastPingNanos = now;
+        }
+    }
+
+    private void countFailure(TargetHealth health, String reason) {
+        int failures = health.consecutiveFailures + 1;
+        health.consecutiveFailures = failures;
+        if (failures >= unhealthyAfter && health.healthy) {
+            health.healthy = false;
+            logger.warning("Bedrock target " + health.destination() + " " + reason + ", marking it unhealthy.");
+        }
+    }
+
+    private InetSocketAddress resolve(TargetHealth health) {
+        InetSocketAddress address = resolved.get(health);
+        if (address != null) {
+            return address;
+        }
+
+        Destination destination = health.destination();
+        address = new InetSocketAddress(destination.ip(), destination.port());
+        if (address.isUnresolved()) {
+            logger.debug("Unable to resolve Bedrock target " + destination);
+            return null;
+        }
+        resolved.put(health, address);
+        byAddress.put(address, health);
+        return address;
+    }
+
+    private void receiveUntil(long deadline) throws IOException {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            selector.selectedKeys().clear();
+
+            SocketAddress sender;
+            while ((sender = channel.receive(receiveBuffer.clear())) != null) {
+                receiveBuffer.flip();
+                TargetHealth health = byAddress.get(sender);
+                if (health != null) {
+                    handlePong(health, receiveBuffer);
+                }
+            }
+        }
+    }
+
+    private void handlePong(TargetHealth health, ByteBuffer buffer) {
+        // id (1) + ping time (8) + server guid (8) + magic (16) + string length (2)
+        if (buffer.remaining() < 35 || buffer.get() != UNCONNECTED_PONG) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long sentAt = buffer.getLong();
+        if (sentAt != health.lastPingNanos || now - sentAt > timeoutNanos) {
+            // Stale or late answer
+            return;
+        }
+        buffer.position(buffer.position() + 8 + OFFLINE_MESSAGE_ID.length);
+
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            return;
+        }
+        String motd = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+
+        // MCPE;motd;protocol;version;online;max;server id;sub motd;gamemode;...
+        String[] fields = motd.split(";");
+        if (fields.length > 5) {
+            try {
+                health.onlinePlayers = Integer.parseInt(fields[4]);
+                health.maxPlayers = Integer.parseInt(fields[5]);
+            } catch (NumberFormatException ignored) {
+                // Some server software sends garbage here; only use it for latency then
+            }
+        }
+
+        health.latencyMillis = (int) TimeUnit.NANOSECONDS.toMillis(now - sentAt);
+        health.lastPongNanos = now;
+        health.consecutiveFailures = 0;
+        if (!health.healthy) {
+            health.healthy = true;
+            logger.info("Bedrock target " + health.destination() + " is answering pings again.");
+        }
+    }
+
+    private static void sleepQuietly(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
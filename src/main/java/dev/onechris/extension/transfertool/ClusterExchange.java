@@ -0,0 +1,32 @@
+package dev.onechris.extension.transfertool;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Transport used by {@link ClusterState} to share transfer counts with other TransferTool instances.
+ * The default is {@link UdpGossipExchange}; other implementations (e.g. using an existing message bus)
+ * only need to deliver the updates, losing or duplicating some is fine.
+ */
+public interface ClusterExchange {
+
+    /**
+     * How many players an instance ({@code origin}) sent to a target in total since it started, and how many of
+     * them recently as seen by the sender. Counts only grow, so receivers can simply keep the highest one.
+     */
+    record Update(long origin, Destination target, long transfers, float recent) {
+    }
+
+    /**
+     * @param receiver called with updates received from other instances, on any thread
+     */
+    void start(Consumer<List<Update>> receiver) throws IOException;
+
+    /**
+     * @param full whether these are all known counts (sent to every peer), rather than only the changed ones
+     */
+    void send(List<Update> updates, boolean full);
+
+    void stop();
+}
@@ -0,0 +1,204 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shares how many players each TransferTool instance recently sent to each Bedrock target, so pool selection
+ * can account for players that other instances (and this one) sent there since the last health check ping.
+ * <p>
+ * Each instance only publishes its own cumulative per-target transfer counts (and relays those of others).
+ * Every round, the changes since the previous round are sent through the {@link ClusterExchange}, and every
+ * {@link #FULL_SYNC_ROUNDS} rounds all counts, so lost datagrams and new instances catch up.
+ * Count increases feed an exponentially decaying "recent transfers" value per origin and target (counts seen
+ * for the first time use the sender's value), whose sum per target is
+ * written into the targets' {@link TargetHealth} and added to their player counts when selecting.
+ */
+public final class ClusterState {
+    private static final int FULL_SYNC_ROUNDS = 10;
+    private static final long ORIGIN_EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * Latest known count of one origin for one target. Guarded by the ClusterState.
+     */
+    private static final class Entry {
+        long transfers;
+        double recent;
+        long updatedNanos;
+        long version;
+    }
+
+    private record Key(long origin, Destination target) {
+    }
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final Config.Cluster settings;
+    private final ClusterExchange exchange;
+    private final Supplier<Collection<TargetHealth>> targets;
+    private final ExtensionLogger logger;
+    private final double decayNanos;
+
+    private final Map<Destination, LongAdder> localTransfers = new ConcurrentHashMap<>();
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private long version;
+    private long sentVersion;
+    private int round;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param targets the health objects to write the recent transfers to
+     */
+    public ClusterState(Config.Cluster settings, ClusterExchange exchange, Supplier<Collection<TargetHealth>> targets,
+                        ExtensionLogger logger) {
+        this.settings = settings;
+        this.exchange = exchange;
+        this.targets = targets;
+        this.logger = logger;
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, settings.loadWindowMillis()));
+    }
+
+    /**
+     * @return whether this was started with the given settings, i.e. need not be restarted
+     */
+    public boolean configuredAs(Config.Cluster settings) {
+        Config.Cluster current = this.settings;
+        return current.bindAddress().equals(settings.bindAddress())
+                && current.port() == settings.port()
+                && current.peers().equals(settings.peers())
+                && current.gossipIntervalMillis() == settings.gossipIntervalMillis()
+                && current.fanout() == settings.fanout()
+                && current.loadWindowMillis() == settings.loadWindowMillis();
+    }
+
+    public long nodeId() {
+        return nodeId;
+    }
+
+    public void start() throws IOException {
+        exchange.start(this::receive);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TransferTool-Cluster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(50, settings.gossipIntervalMillis());
+        executor.scheduleAtFixedRate(this::round, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        exchange.stop();
+        for (TargetHealth health : targets.get()) {
+            health.recentTransfers = 0;
+        }
+    }
+
+    /**
+     * Counts a transfer by this instance. Called on transfer handlers; only increments a counter.
+     */
+    public void recordTransfer(Destination target) {
+        localTransfers.computeIfAbsent(target, $ -> new LongAdder()).increment();
+    }
+
+    void round() {
+        try {
+            List<ClusterExchange.Update> updates;
+            boolean full = round++ % FULL_SYNC_ROUNDS == 0;
+            synchronized (this) {
+                long now = System.nanoTime();
+                for (Map.Entry<Destination, LongAdder> local : localTransfers.entrySet()) {
+                    long transfers = local.getValue().sum();
+                    update(nodeId, local.getKey(), transfers, transfers, now);
+                }
+                updates = changes(full, now);
+                expire(now);
+                publishLoads(now);
+            }
+            exchange.send(updates, full);
+        } catch (RuntimeException e) {
+            logger.error("TransferTool cluster round failed: " + e.getMessage());
+        }
+    }
+
+    private void receive(List<ClusterExchange.Update> updates) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (ClusterExchange.Update update : updates) {
+                // Our own counts relayed back by others are at most as new as ours
+                if (update.origin() != nodeId) {
+                    update(update.origin(), update.target(), update.transfers(), update.recent(), now);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param recent how many of the transfers were recent, only used if this count was not known yet
+     */
+    private void update(long origin, Destination target, long transfers, double recent, long now) {
+        Key key = new Key(origin, target);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entry.transfers = transfers;
+            entry.recent = Math.max(0, Math.min(transfers, recent));
+            entry.updatedNanos = now;
+            entry.version = ++version;
+            entries.put(key, entry);
+            return;
+        }
+        if (transfers <= entry.transfers) {
+            return;
+        }
+        entry.recent = decayed(entry, now) + (transfers - entry.transfers);
+        entry.transfers = transfers;
+        entry.updatedNanos = now;
+        entry.version = ++version;
+    }
+
+    private List<ClusterExchange.Update> changes(boolean full, long now) {
+        List<ClusterExchange.Update> updates = new ArrayList<>();
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (full || entry.getValue().version > sentVersion) {
+                updates.add(new ClusterExchange.Update(entry.getKey().origin(), entry.getKey().target(),
+                        entry.getValue().transfers, (float) decayed(entry.getValue(), now)));
+            }
+        }
+        sentVersion = version;
+        return updates;
+    }
+
+    private void expire(long now) {
+        entries.entrySet().removeIf(entry -> entry.getKey().origin() != nodeId
+                && now - entry.getValue().updatedNanos > ORIGIN_EXPIRY_NANOS);
+    }
+
+    private void publishLoads(long now) {
+        Map<Destination, Double> recent = new HashMap<>();
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            recent.merge(entry.getKey().target(), decayed(entry.getValue(), now), Double::sum);
+        }
+        for (TargetHealth health : targets.get()) {
+            health.recentTransfers = (int) Math.round(recent.getOrDefault(health.destination(), 0d));
+        }
+    }
+
+    private double decayed(Entry entry, long now) {
+        return entry.recent * Math.exp(-(now - entry.updatedNanos) / decayNanos);
+    }
+}
@@ -5,6 +5,7 @@ import lombok.experimental.Accessors;
 import org.spongepowered.configurate.objectmapping.ConfigSerializable;
 import org.spongepowered.configurate.objectmapping.meta.Comment;
 
+import java.util.List;
 import java.util.Map;
 
 @Getter
@@ -23,11 +24,45 @@ public class Config {
             A map of Java IP/Port combinations to Geyser IP/Port combinations.
             If you do not specify a port with a ":<port>" addition,
             it will use the default ports for Bedrock/Java respectively.
+            
+            Java hosts may also be wildcards ("*.lobby.example.com"), CIDR ranges ("10.0.0.0/8", "[2001:db8::/32]")
+            or "*" to match anything. Ports may be ranges ("25565-25600") or "*" for any port.
+            A port range can be mapped onto an equally sized Bedrock port range, e.g. "19132-19167".
+            If multiple mappings match, the most specific host wins, then the most specific port.
+            
+            To spread players over equivalent Bedrock servers, list them comma separated:
+            "lobby.javaip.com": "lobby1.bedrockip.com, lobby2.bedrockip.com:19133"
             """)
     private Map<String, String> transferMappings = Map.of(
             "127.0.0.1:25565", "127.0.0.1:19132",
             "javaip.com", "bedrockip.com");
 
+    @Comment("""
+            Rules that send Java transfers elsewhere depending on the player. They are checked in order before
+            "transfer-mappings"; the first rule matching the player wins. Every condition is optional:
+            
+            mappings: only apply to Java transfers matching these "transfer-mappings" keys (default: all Java transfers)
+            device-os: e.g. [GOOGLE, IOS, UWP, WIN32, XBOX, PS4, NX]
+            input-mode: e.g. [KEYBOARD_MOUSE, TOUCH, CONTROLLER, VR]
+            min-version / max-version: Bedrock client version range (inclusive), e.g. "1.21.0" to "1.21.50".
+                Parts left out of max-version match any value, i.e. "1.21" includes 1.21.50
+                (in min-version, they count as 0)
+            locales: locales or languages, e.g. [de_DE, fr]
+            xuid-percent: only a stable share of players (by XUID), e.g. 5.0 for a 5% canary
+            target: the Bedrock server(s), like the values of "transfer-mappings"
+            
+            Example:
+            routing-rules:
+              - name: canary
+                xuid-percent: 5.0
+                target: canary.bedrockip.com
+              - name: mobile
+                mappings: [javaip.com]
+                input-mode: [TOUCH]
+                target: mobile.bedrockip.com:19133
+            """)
+    private List<RoutingRule> routingRules = List.of();
+
     @Comment("""
             Whether to add a '/transfertool transfer <server>' command to the server that can only be used by Bedrock players.
             This uses the "server-names" below. Command permission: "transfertool.command.transfer".
@@ -40,6 +75,11 @@ public class Config {
             """)
     private boolean addTransferCommand = false;
 
+    @Comment("""
+            How many servers the transfer menu shows per page. Further servers are reachable with "next page" buttons.
+            """)
+    private int menuPageSize = 20;
+
     @Comment("""
             Allows configuring shortcuts for servers to use in the optional '/transfertool transfer <server>' command.
             Has no use while "add-transfer-command" is false.
@@ -50,19 +90,461 @@ public class Config {
             "transfertool.shortcuts.<server>"
             
             For example, for the shortcut "lobby", it would be "transfertool.shortcuts.lobby".
+            
+            Like transfer mappings, a shortcut may list multiple comma separated Bedrock servers.
             """)
     private Map<String, String> transferShortcuts = Map.of(
             "vanilla", "127.0.0.1:19132",
             "lobby", "bedrockip.com"
     );
 
+    @Comment("""
+            Files with additional transfer mappings, e.g. generated by your orchestration. Paths are relative to this folder.
+            Supported formats, one mapping per line:
+            .csv: <java host>,<bedrock target>[,<more bedrock targets>]   (lines starting with # are ignored)
+            .jsonl: {"source": "<java host>", "target": "<bedrock target>"}   (target may also be a list)
+            Entries in these files override "transfer-mappings" with the same key. They are re-read only when they change,
+            and only changed mappings are recompiled.
+            """)
+    private List<String> transferMappingFiles = List.of();
+
+    @Comment("""
+            Files with additional transfer shortcuts, in the same formats as "transfer-mapping-files".
+            In .jsonl files, the shortcut name is set with "name" instead of "source".
+            """)
+    private List<String> transferShortcutFiles = List.of();
+
     @Comment("""
             The default locale. For example, TransferTool's transfer shortcuts menu can be localized.
             """)
     private String defaultLocale = "en_US";
 
+    @Comment("""
+            Whether to automatically reload the config and translations when they are changed on disk.
+            """)
+    private boolean autoReload = true;
+
+    @Comment("""
+            How long to wait (in milliseconds) after the last detected change before reloading.
+            """)
+    private int autoReloadDelayMillis = 1000;
+
+    @Comment("""
+            Health checks for transfer mappings and shortcuts that list multiple Bedrock servers.
+            Each server is pinged in the background; players are sent to a healthy server that is not full.
+            """)
+    private HealthChecks healthChecks = new HealthChecks();
+
+    @Comment("""
+            Transfer statistics are always available through '/transfertool stats' (permission: "transfertool.command.stats").
+            Optionally, they can also be served in the Prometheus text format on http://<address>:<port>/metrics.
+            """)
+    private Metrics metrics = new Metrics();
+
+    @Comment("""
+            Pacing of '/transfertool drain', which transfers all (or a filtered set of) online Bedrock players elsewhere,
+            e.g. before restarting this Geyser instance. Permission: "transfertool.command.drain".
+            """)
+    private Drain drain = new Drain();
+
+    @Comment("""
+            Limits how often each player can open the transfer menu, use shortcuts and transfer to custom destinations.
+            Every player has "capacity" uses of each, and regains one every "refill-millis" milliseconds.
+            A capacity of 0 disables the limit for that action.
+            """)
+    private RateLimits rateLimits = new RateLimits();
+
+    @Comment("""
+            Sends players back to the server they were last sent to when a mapping or shortcut lists multiple Bedrock servers,
+            unless that server is down or full. Remembered per player (XUID) in "state/affinity.dat", so this survives restarts.
+            """)
+    private Affinity affinity = new Affinity();
+
+    @Comment("""
+            Shares how many players each TransferTool instance recently sent to each Bedrock server with other instances
+            (e.g. multiple Geyser proxies behind one address), so servers in a pool are balanced across all of them.
+            Requires "health-checks" to be enabled.
+            """)
+    private Cluster cluster = new Cluster();
+
+    @Comment("""
+            Writes every transfer (player, requested server, chosen Bedrock server and why) to "<folder>/transfers.log",
+            one JSON object per line. Writing happens on a background thread; if it falls behind, records are dropped
+            (and counted) rather than slowing down transfers.
+            """)
+    private Audit audit = new Audit();
+
+    @Comment("""
+            Sends players to a server near them: transfer mappings and shortcuts can have a different target per region,
+            with the player's region looked up from their IP address in a CSV file of CIDR ranges (e.g. a GeoIP export).
+            Players whose region is unknown, or whose region does not override a mapping or shortcut, use the usual target.
+            """)
+    private Regions regions = new Regions();
+
+    @Comment("""
+            Keeps recent transfer decisions in memory, shown by '/transfertool trace [player|count]'
+            (permission: "transfertool.command.trace").
+            """)
+    private Tracing tracing = new Tracing();
+
+    @Comment("""
+            Limits how fast players are transferred to each Bedrock server, so bursts (e.g. when a minigame ends) do not
+            overwhelm it. Players over a limit are sent to the overflow server, if one is set, or otherwise wait in a queue
+            and are transferred automatically once it is their turn. Applies to transfer mappings, routing rules, shortcuts
+            and custom destinations, but not to '/transfertool drain', which is paced on its own.
+            """)
+    private Admission admission = new Admission();
+
+    @Comment("""
+            Resolves the hostnames of Bedrock targets in the background and sends players the IP address instead, so
+            clients do not have to look it up themselves. Note that hostnames are resolved from this server's location;
+            do not enable this for geo-DNS hostnames that should resolve differently depending on where the player is.
+            """)
+    private Dns dns = new Dns();
+
     @Comment("""
             The config version. DO NOT CHANGE!
             """)
     private int version = 1;
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class RoutingRule {
+
+        @Comment("The name shown in '/transfertool stats', traces and the audit log.")
+        private String name = "";
+
+        @Comment("Only apply to Java transfers matching these \"transfer-mappings\" keys. Empty: all Java transfers.")
+        private List<String> mappings = List.of();
+
+        @Comment("Only apply to these devices, e.g. [GOOGLE, IOS]. Empty: all devices.")
+        private List<String> deviceOs = List.of();
+
+        @Comment("Only apply to these input modes, e.g. [TOUCH]. Empty: all input modes.")
+        private List<String> inputMode = List.of();
+
+        @Comment("The lowest Bedrock client version to apply to, e.g. \"1.21.0\". Empty: no lower bound.")
+        private String minVersion = "";
+
+        @Comment("The highest Bedrock client version to apply to; \"1.21\" includes all 1.21.x versions. Empty: no upper bound.")
+        private String maxVersion = "";
+
+        @Comment("Only apply to these locales or languages, e.g. [de_DE, fr]. Empty: all locales.")
+        private List<String> locales = List.of();
+
+        @Comment("Only apply to this stable share of players (by XUID), in percent.")
+        private double xuidPercent = 100;
+
+        @Comment("The Bedrock server(s) to send matching players to, like the values of \"transfer-mappings\".")
+        private String target = "";
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class HealthChecks {
+
+        @Comment("Whether to ping Bedrock servers that are part of a pool.")
+        private boolean enabled = true;
+
+        @Comment("How often to ping each server, in milliseconds.")
+        private int intervalMillis = 5000;
+
+        @Comment("Pings answered later than this (in milliseconds) count as unanswered.")
+        private int timeoutMillis = 1000;
+
+        @Comment("After how many unanswered pings in a row a server is considered down.")
+        private int unhealthyAfter = 3;
+
+        @Comment("""
+                How to pick a server from a pool. Possible values:
+                LEAST_LOADED: the server with the lowest player count relative to its player limit
+                LOWEST_LATENCY: the server that answered pings the fastest
+                """)
+        private TargetPool.Selection selection = TargetPool.Selection.LEAST_LOADED;
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Metrics {
+
+        @Comment("Whether to start the HTTP metrics endpoint.")
+        private boolean httpEnabled = false;
+
+        @Comment("The address to bind the metrics endpoint to. Keep this local unless it is firewalled!")
+        private String httpAddress = "127.0.0.1";
+
+        @Comment("The port of the metrics endpoint.")
+        private int httpPort = 9465;
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Drain {
+
+        @Comment("How many players to transfer per wave. Must be at least 1.")
+        private int waveSize = 20;
+
+        @Comment("The delay between two waves, in milliseconds.")
+        private int waveIntervalMillis = 2000;
+
+        @Comment("A random extra delay of up to this many milliseconds between waves, so targets see no fixed rhythm.")
+        private int jitterMillis = 1000;
+
+        @Comment("""
+                How many transferred players may still be connected to this Geyser instance at once.
+                Waves are held back (or made smaller) while this many transfers are in progress. Must be at least 1.
+                """)
+        private int maxInFlight = 50;
+
+        @Comment("After how many milliseconds a transferred player that is still connected no longer counts as in progress.")
+        private int transferTimeoutMillis = 10000;
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class RateLimits {
+
+        @Comment("Whether to rate limit the transfer command at all.")
+        private boolean enabled = true;
+
+        @Comment("Opening the transfer menu or the custom destination form.")
+        private Bucket menu = new Bucket(5, 2000);
+
+        @Comment("Transfers to a shortcut.")
+        private Bucket shortcut = new Bucket(3, 5000);
+
+        @Comment("Transfers to an IP/port entered by the player.")
+        private Bucket custom = new Bucket(3, 10000);
+
+        @Getter
+        @Accessors(fluent = true)
+        @ConfigSerializable
+        public static class Bucket {
+            private int capacity;
+            private int refillMillis;
+
+            public Bucket() {
+            }
+
+            public Bucket(int capacity, int refillMillis) {
+                this.capacity = capacity;
+                this.refillMillis = refillMillis;
+            }
+        }
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Affinity {
+
+        @Comment("""
+                Whether to remember which server of a pool each player was sent to. Only useful with pools of
+                several servers; stores its entries in state/affinity.dat.
+                """)
+        private boolean enabled = false;
+
+        @Comment("""
+                How many player/server pairs to remember; the least recently used ones are forgotten first.
+                Uses 32 bytes of disk (and, when used, memory) per entry. Changes take effect after a restart,
+                and forget all stored entries.
+                """)
+        private int maxEntries = 65536;
+
+        @Comment("After how many hours without a transfer a remembered server is forgotten. 0 keeps them until evicted.")
+        private int ttlHours = 168;
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Cluster {
+
+        @Comment("Whether to exchange transfer counts with other instances. Requires health-checks to be enabled.")
+        private boolean enabled = false;
+
+        @Comment("The address to receive updates from other instances on.")
+        private String bindAddress = "0.0.0.0";
+
+        @Comment("The UDP port to receive updates from other instances on.")
+        private int port = 19140;
+
+        @Comment("""
+                The other instances, as "<ip>[:<port>]". Updates from other addresses are ignored.
+                """)
+        private List<String> peers = List.of();
+
+        @Comment("How often to send updates, in milliseconds.")
+        private int gossipIntervalMillis = 500;
+
+        @Comment("""
+                To how many random peers changes are sent each time; they pass them on. 0 sends them to all peers.
+                All counts are sent to all peers every 10 updates regardless.
+                """)
+        private int fanout = 0;
+
+        @Comment("""
+                How long (in milliseconds) a transfer still counts towards a server's load. Should be about as long
+                as it takes until the server's player count (see "health-checks") includes the player.
+                """)
+        private int loadWindowMillis = 10000;
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Audit {
+
+        @Comment("Whether to write the audit log.")
+        private boolean enabled = false;
+
+        @Comment("The folder to write the audit log to, relative to this folder.")
+        private String folder = "audit";
+
+        @Comment("How many records can wait to be written. Records beyond that are dropped.")
+        private int bufferSize = 8192;
+
+        @Comment("How often buffered records are written to the file, in milliseconds.")
+        private int flushIntervalMillis = 1000;
+
+        @Comment("Whether to also force each write to the disk. Safer on crashes, but slower.")
+        private boolean sync = false;
+
+        @Comment("Start a new file once the current one is this large, in megabytes. 0 disables this.")
+        private int maxFileSizeMb = 64;
+
+        @Comment("Start a new file once the current one is this old, in hours. 0 disables this.")
+        private int rotateAfterHours = 24;
+
+        @Comment("Whether to gzip old files.")
+        private boolean compress = true;
+
+        @Comment("How many old files to keep. 0 keeps all of them.")
+        private int maxArchives = 30;
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Regions {
+
+        @Comment("Whether to use regional targets.")
+        private boolean enabled = false;
+
+        @Comment("""
+                The CSV file with one "<cidr range>,<region>" per line, relative to this folder, e.g. "203.0.113.0/24,eu".
+                Headers and lines starting with # are ignored. The most specific range containing the player's address wins.
+                The file is read in the background, and only re-read when it changes.
+                """)
+        private String file = "regions.csv";
+
+        @Comment("The zero-based column of the CSV file that contains the region. The range is always the first column.")
+        private int regionColumn = 1;
+
+        @Comment("""
+                Per region, targets for "transfer-mappings" keys, e.g.
+                mappings:
+                  eu:
+                    javaip.com: eu.bedrockip.com
+                """)
+        private Map<String, Map<String, String>> mappings = Map.of();
+
+        @Comment("""
+                Per region, targets for "transfer-shortcuts", e.g.
+                shortcuts:
+                  eu:
+                    lobby: eu-lobby1.bedrockip.com, eu-lobby2.bedrockip.com
+                """)
+        private Map<String, Map<String, String>> shortcuts = Map.of();
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Tracing {
+
+        @Comment("Whether to trace transfer decisions.")
+        private boolean enabled = true;
+
+        @Comment("How many recent decisions to keep (rounded up to a power of two).")
+        private int bufferSize = 1024;
+
+        @Comment("Which share of decisions to keep, in percent. Lower this on busy servers to keep a longer history.")
+        private double samplePercent = 100;
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Admission {
+
+        @Comment("Whether to limit transfers per server.")
+        private boolean enabled = false;
+
+        @Comment("How many players may be transferred to each server per second. 0 disables this limit.")
+        private int transfersPerSecond = 0;
+
+        @Comment("""
+                How many transferred players may still be connected to this Geyser instance per server at once.
+                0 disables this limit.
+                """)
+        private int maxInFlight = 0;
+
+        @Comment("""
+                Where to send players instead of queueing them, e.g. "overflow.bedrockip.com". Empty to queue them;
+                players sent away by a Java server cannot wait, and are turned away instead.
+                """)
+        private String overflow = "";
+
+        @Comment("""
+                Limits for specific servers, replacing the ones above, e.g.
+                targets:
+                  "lobby.bedrockip.com:19132":
+                    transfers-per-second: 5
+                    max-in-flight: 20
+                    overflow: lobby2.bedrockip.com
+                """)
+        private Map<String, Target> targets = Map.of();
+
+        @Comment("How many players may wait for each server. Further players are told to try again later.")
+        private int maxQueueLength = 500;
+
+        @Comment("How often waiting players are told their position, in milliseconds. 0 only tells them when they join the queue.")
+        private int positionUpdateMillis = 5000;
+
+        @Comment("After how many milliseconds a transferred player that is still connected no longer counts as in flight.")
+        private int transferTimeoutMillis = 10000;
+
+        @Getter
+        @Accessors(fluent = true)
+        @ConfigSerializable
+        public static class Target {
+            private int transfersPerSecond = 0;
+            private int maxInFlight = 0;
+            private String overflow = "";
+        }
+    }
+
+    @Getter
+    @Accessors(fluent = true)
+    @ConfigSerializable
+    public static class Dns {
+
+        @Comment("Whether to pre-resolve Bedrock target hostnames.")
+        private boolean enabled = false;
+
+        @Comment("For how many seconds a resolved address is used. It is refreshed shortly before it expires.")
+        private int ttlSeconds = 60;
+
+        @Comment("After how many seconds a failed lookup is retried. Until then, players are sent the hostname.")
+        private int negativeTtlSeconds = 10;
+
+        @Comment("Whether to send IPv4 addresses when a hostname has both IPv4 and IPv6 addresses.")
+        private boolean preferIpv4 = true;
+    }
 }
@@ -7,9 +7,21 @@ import org.spongepowered.configurate.hocon.HoconConfigurationLoader;
 import org.spongepowered.configurate.yaml.NodeStyle;
 import org.spongepowered.configurate.yaml.YamlConfigurationLoader;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
 
 public class ConfigLoader {
 
@@ -20,7 +32,23 @@ public class ConfigLoader {
         Source: https://github.com/onebeastchris/TransferTool/
         """;
 
+    // Changes whenever options are added or changed, so an otherwise unchanged config.yml is rewritten with them
+    private static final String SCHEMA = schema(Config.class);
+
+    /**
+     * A loaded config, and the fingerprint of the config.yml it was loaded from.
+     */
+    public record Loaded(Config config, String fingerprint) {
+    }
+
     public static Config loadConfig(Extension extension) throws IOException {
+        return loadConfig(extension, null).config();
+    }
+
+    /**
+     * @param previous the result of a previous load, reused as is (without parsing) if config.yml did not change since
+     */
+    public static Loaded loadConfig(Extension extension, Loaded previous) throws IOException {
         Files.createDirectories(extension.dataFolder());
 
         Path oldPath = extension.dataFolder().resolve("transfertool.conf");
@@ -48,8 +76,15 @@ public class ConfigLoader {
             oldPath.toFile().deleteOnExit();
         }
 
+        Path configPath = extension.dataFolder().resolve("config.yml");
+        String content = Files.exists(configPath) ? Files.readString(configPath, StandardCharsets.UTF_8) : "";
+        String fingerprint = fingerprint(content);
+        if (!mustMigrate && previous != null && previous.fingerprint().equals(fingerprint)) {
+            return previous;
+        }
+
         final YamlConfigurationLoader loader = YamlConfigurationLoader.builder()
-                .path(extension.dataFolder().resolve("config.yml"))
+                .source(() -> new BufferedReader(new StringReader(content)))
                 .nodeStyle(NodeStyle.BLOCK)
                 .defaultOptions(configurationOptions -> configurationOptions.header(HEADER))
                 .build();
@@ -68,11 +103,73 @@ public class ConfigLoader {
             throw new IllegalStateException("config is null!");
         }
 
+        // Skip rewriting a config.yml that is exactly what a previous load wrote: it is already complete and formatted
+        Path fingerprintPath = extension.dataFolder().resolve("state").resolve("config.fingerprint");
+        if (!mustMigrate && fingerprint.equals(readFingerprint(fingerprintPath))) {
+            return new Loaded(config, fingerprint);
+        }
+
         CommentedConfigurationNode newNode = CommentedConfigurationNode.root(loader.defaultOptions());
         newNode.set(Config.class, config);
 
-        loader.save(newNode);
-        return config;
+        StringWriter output = new StringWriter();
+        YamlConfigurationLoader.builder()
+                .sink(() -> new BufferedWriter(output))
+                .nodeStyle(NodeStyle.BLOCK)
+                .defaultOptions(configurationOptions -> configurationOptions.header(HEADER))
+                .build()
+                .save(newNode);
+
+        String rewritten = output.toString();
+        if (!rewritten.equals(content)) {
+            Files.writeString(configPath, rewritten, StandardCharsets.UTF_8);
+        }
+        String rewrittenFingerprint = fingerprint(rewritten);
+        Files.createDirectories(fingerprintPath.getParent());
+        Files.writeString(fingerprintPath, rewrittenFingerprint, StandardCharsets.UTF_8);
+        return new Loaded(config, rewrittenFingerprint);
+    }
+
+    private static String readFingerprint(Path path) {
+        try {
+            return Files.exists(path) ? Files.readString(path, StandardCharsets.UTF_8).trim() : "";
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String fingerprint(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(SCHEMA.getBytes(StandardCharsets.UTF_8));
+            digest.update(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the names and types of all config options, including nested sections
+     */
+    private static String schema(Class<?> type) {
+        StringBuilder schema = new StringBuilder(type.getSimpleName()).append('{');
+        Field[] fields = type.getDeclaredFields();
+        Arrays.sort(fields, Comparator.comparing(Field::getName));
+        for (Field field : fields) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            schema.append(field.getName()).append(':');
+            Class<?> fieldType = field.getType();
+            if (fieldType.getDeclaringClass() == Config.class && !fieldType.isEnum()) {
+                schema.append(schema(fieldType));
+            } else {
+                schema.append(field.getGenericType().getTypeName());
+            }
+            schema.append(';');
+        }
+        return schema.append('}').toString();
     }
 }
 
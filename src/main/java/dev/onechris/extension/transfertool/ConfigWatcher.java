@@ -0,0 +1,152 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the extension's data folders and requests a reload once changes have settled for the debounce period.
+ * Changes are compared against the files as they were after the last load, so the config rewrite done
+ * by {@link ConfigLoader} does not trigger another reload.
+ */
+public final class ConfigWatcher implements Runnable {
+
+    private final List<Path> folders;
+    private final long debounceMillis;
+    private final ScheduledExecutorService executor;
+    private final Runnable reload;
+    private final ExtensionLogger logger;
+
+    private volatile Map<Path, String> loadedFingerprints = Map.of();
+    private ScheduledFuture<?> pending;
+    private boolean closed;
+    private WatchService watchService;
+    private Thread thread;
+
+    public ConfigWatcher(List<Path> folders, long debounceMillis, ScheduledExecutorService executor,
+                         Runnable reload, ExtensionLogger logger) {
+        this.folders = folders;
+        this.debounceMillis = debounceMillis;
+        this.executor = executor;
+        this.reload = reload;
+        this.logger = logger;
+    }
+
+    public List<Path> folders() {
+        return folders;
+    }
+
+    public long debounceMillis() {
+        return debounceMillis;
+    }
+
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        for (Path folder : folders) {
+            if (Files.isDirectory(folder)) {
+                folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+
+        thread = new Thread(this, "TransferTool-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching, and cancels a reload that is still waiting for changes to settle.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close config watcher: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the current state of all watched files. Called after each (attempted) load.
+     */
+    public void markLoaded() {
+        loadedFingerprints = fingerprints();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                key.pollEvents();
+                key.reset();
+                scheduleReload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Shutting down
+        }
+    }
+
+    private synchronized void scheduleReload() {
+        if (closed) {
+            return;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(() -> {
+            if (!fingerprints().equals(loadedFingerprints)) {
+                logger.info("Detected changes to the TransferTool config, reloading!");
+                reload.run();
+            }
+        }, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private Map<Path, String> fingerprints() {
+        Map<Path, String> fingerprints = new HashMap<>();
+        for (Path folder : folders) {
+            if (!Files.isDirectory(folder)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.list(folder)) {
+                files.forEach(file -> {
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                        if (attributes.isRegularFile()) {
+                            fingerprints.put(file, attributes.lastModifiedTime().toMillis() + ":" + attributes.size());
+                        }
+                    } catch (IOException ignored) {
+                        // Deleted while listing; simply not part of the fingerprint
+                    }
+                });
+            } catch (IOException e) {
+                logger.debug("Unable to list " + folder + ": " + e.getMessage());
+            }
+        }
+        return fingerprints;
+    }
+}
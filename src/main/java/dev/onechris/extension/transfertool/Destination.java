@@ -1,54 +1,41 @@
 package dev.onechris.extension.transfertool;
 
-import java.util.function.Consumer;
-
-import static dev.onechris.extension.transfertool.TransferTool.logger;
-
-public record Destination(String ip, int port) {
-
-    public boolean invalidIp() {
-        return this.ip == null || ip.isBlank();
+/**
+ * A validated Bedrock endpoint. {@link #ip()} is canonical: a lowercase ASCII hostname without trailing dot,
+ * a dotted-quad IPv4 address, or an RFC 5952 IPv6 address (without brackets).
+ */
+public record Destination(String ip, int port) implements DestinationResult {
+
+    /**
+     * Parses "host", "host:port", "[ipv6]", "[ipv6]:port" or a bare IPv6 literal in a single pass.
+     * Surrounding whitespace is ignored. Does not allocate for errors or recently parsed inputs.
+     *
+     * @param fallbackPort the port to use if the input does not contain one
+     */
+    public static DestinationResult parse(CharSequence input, int fallbackPort) {
+        return DestinationParser.parse(input, 0, input.length(), fallbackPort);
     }
 
-    public boolean invalidPort() {
-        return port < 0 || port > 65535;
+    public static DestinationResult parse(CharSequence input, int from, int to, int fallbackPort) {
+        return DestinationParser.parse(input, from, to, fallbackPort);
     }
 
-    public static Destination fromCombined(String input, int fallbackPort) {
-        return fromCombined(input, fallbackPort, logger::error);
+    /**
+     * @return the port (1-65535), or -1 if the input is not a valid port
+     */
+    public static int parsePort(CharSequence input) {
+        return DestinationParser.parsePort(input, 0, input.length());
     }
 
-    public static Destination fromCombined(String input, int fallbackPort, Consumer<String> caller) {
-        String ip = input;
-        int port = fallbackPort;
-
-        if (input.contains(":")) {
-            String parsePort;
-            if (input.startsWith("[")) {
-                // Handle IPv6 addresses... since Bedrock technically supports these?
-                int closingBracketIndex = input.indexOf("]");
-                ip = input.substring(1, closingBracketIndex);
-                parsePort = input.substring(closingBracketIndex + 2);
-            } else {
-                // Handle IPv4 addresses or domain names
-                int colonIndex = input.lastIndexOf(":");
-                ip = input.substring(0, colonIndex);
-                parsePort = input.substring(colonIndex + 1);
-            }
-
-            try {
-                port = Integer.parseInt(parsePort);
-            } catch (NumberFormatException e) {
-                caller.accept("Invalid port found: " + parsePort + " in input: " + input + "! " +
-                        "Defaulting to default port (" + fallbackPort + ").");
-            }
-        }
-
-        return new Destination(ip, port);
+    /**
+     * Returns a shared instance for an already canonical host and port.
+     */
+    public static Destination of(String ip, int port) {
+        return DestinationParser.intern(new Destination(ip, port));
     }
 
     @Override
     public String toString() {
-        return ip + ":" + port;
+        return ip.indexOf(':') >= 0 ? "[" + ip + "]:" + port : ip + ":" + port;
     }
-}
\ No newline at end of file
+}
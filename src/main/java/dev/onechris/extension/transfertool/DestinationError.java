@@ -0,0 +1,37 @@
+package dev.onechris.extension.transfertool;
+
+/**
+ * Why {@link Destination#parse} rejected an input. Each error has a translation key taking the input as argument.
+ */
+public enum DestinationError implements DestinationResult {
+    EMPTY_HOST("destination.ip.invalid", "empty host", TransferMetrics.Rejection.INVALID_IP),
+    INVALID_HOST("destination.host.invalid", "invalid hostname", TransferMetrics.Rejection.INVALID_IP),
+    INVALID_IPV4("destination.ipv4.invalid", "invalid IPv4 address", TransferMetrics.Rejection.INVALID_IP),
+    INVALID_IPV6("destination.ipv6.invalid", "invalid IPv6 address", TransferMetrics.Rejection.INVALID_IP),
+    INVALID_PORT("destination.port.invalid", "invalid port", TransferMetrics.Rejection.INVALID_PORT);
+
+    private final String translationKey;
+    private final String description;
+    private final TransferMetrics.Rejection rejection;
+
+    DestinationError(String translationKey, String description, TransferMetrics.Rejection rejection) {
+        this.translationKey = translationKey;
+        this.description = description;
+        this.rejection = rejection;
+    }
+
+    public String translationKey() {
+        return translationKey;
+    }
+
+    /**
+     * English description for log messages.
+     */
+    public String description() {
+        return description;
+    }
+
+    public TransferMetrics.Rejection rejection() {
+        return rejection;
+    }
+}
@@ -0,0 +1,267 @@
+package dev.onechris.extension.transfertool;
+
+import java.net.IDN;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-pass destination parsing over a {@link CharSequence} range; see {@link Destination#parse}.
+ * <p>
+ * Recently parsed inputs are remembered in a small direct-mapped cache, so repeating an input
+ * (e.g. the same "/transfertool transfer" argument) neither re-validates nor allocates.
+ * Parsed destinations are interned, so equal endpoints from commands and the config share one instance.
+ */
+final class DestinationParser {
+    private static final int MAX_HOSTNAME_LENGTH = 253;
+    private static final int MAX_LABEL_LENGTH = 63;
+    private static final int RECENT_SIZE = 1024;
+    private static final int MAX_INTERNED = 4096;
+
+    private static final ThreadLocal<long[]> ADDRESS_SCRATCH = ThreadLocal.withInitial(() -> new long[2]);
+    // Benign races: entries are immutable, a lost write only costs a cache miss
+    private static final Recent[] RECENT = new Recent[RECENT_SIZE];
+    private static final Map<Destination, Destination> INTERNED = new ConcurrentHashMap<>();
+
+    private record Recent(String input, int fallbackPort, Destination destination) {
+    }
+
+    private DestinationParser() {
+    }
+
+    static DestinationResult parse(CharSequence input, int from, int to, int fallbackPort) {
+        while (from < to && input.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && input.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            return DestinationError.EMPTY_HOST;
+        }
+
+        int hash = hash(input, from, to, fallbackPort);
+        int slot = hash & (RECENT_SIZE - 1);
+        Recent recent = RECENT[slot];
+        if (recent != null && recent.fallbackPort() == fallbackPort && contentEquals(recent.input(), input, from, to)) {
+            return recent.destination();
+        }
+
+        DestinationResult result = parseUncached(input, from, to, fallbackPort);
+        if (result instanceof Destination destination) {
+            RECENT[slot] = new Recent(input.subSequence(from, to).toString(), fallbackPort, destination);
+        }
+        return result;
+    }
+
+    private static DestinationResult parseUncached(CharSequence input, int from, int to, int fallbackPort) {
+        int hostFrom;
+        int hostTo;
+        int port = fallbackPort;
+        boolean bracketed = input.charAt(from) == '[';
+
+        if (bracketed) {
+            hostFrom = from + 1;
+            hostTo = indexOf(input, ']', hostFrom, to);
+            if (hostTo < 0) {
+                return DestinationError.INVALID_IPV6;
+            }
+            int rest = hostTo + 1;
+            if (rest < to) {
+                if (input.charAt(rest) != ':') {
+                    return DestinationError.INVALID_IPV6;
+                }
+                port = parsePort(input, rest + 1, to);
+            }
+        } else {
+            hostFrom = from;
+            hostTo = to;
+            int first = indexOf(input, ':', from, to);
+            // A single colon separates the port; more than one means a bare IPv6 literal without port
+            if (first >= 0 && indexOf(input, ':', first + 1, to) < 0) {
+                hostTo = first;
+                port = parsePort(input, first + 1, to);
+            }
+        }
+
+        if (port < 0) {
+            return DestinationError.INVALID_PORT;
+        }
+        if (hostFrom == hostTo) {
+            return DestinationError.EMPTY_HOST;
+        }
+
+        if (bracketed || indexOf(input, ':', hostFrom, hostTo) >= 0) {
+            long[] address = ADDRESS_SCRATCH.get();
+            if (!InetLiterals.parseIpv6(input, hostFrom, hostTo, address)) {
+                return DestinationError.INVALID_IPV6;
+            }
+            return intern(new Destination(InetLiterals.format(address[0], address[1]), port));
+        }
+
+        if (looksLikeIpv4(input, hostFrom, hostTo)) {
+            long address = InetLiterals.parseIpv4(input, hostFrom, hostTo);
+            if (address < 0) {
+                return DestinationError.INVALID_IPV4;
+            }
+            return intern(new Destination(InetLiterals.formatIpv4(address), port));
+        }
+
+        String hostname = canonicalHostname(input, hostFrom, hostTo);
+        if (hostname == null) {
+            return DestinationError.INVALID_HOST;
+        }
+        return intern(new Destination(hostname, port));
+    }
+
+    /**
+     * @return the port (1-65535), or -1 if the range is not a valid port
+     */
+    static int parsePort(CharSequence input, int from, int to) {
+        if (from == to || to - from > 5) {
+            return -1;
+        }
+        int port = 0;
+        for (int i = from; i < to; i++) {
+            char c = input.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            port = port * 10 + (c - '0');
+        }
+        return port >= 1 && port <= 65535 ? port : -1;
+    }
+
+    static Destination intern(Destination destination) {
+        Destination existing = INTERNED.get(destination);
+        if (existing != null) {
+            return existing;
+        }
+        if (INTERNED.size() >= MAX_INTERNED) {
+            return destination;
+        }
+        existing = INTERNED.putIfAbsent(destination, destination);
+        return existing == null ? destination : existing;
+    }
+
+    /**
+     * Like URL hosts: if the last label is numeric, the host can only be an IPv4 address.
+     */
+    private static boolean looksLikeIpv4(CharSequence input, int from, int to) {
+        int end = input.charAt(to - 1) == '.' ? to - 1 : to;
+        int i = end;
+        while (i > from && input.charAt(i - 1) != '.') {
+            char c = input.charAt(i - 1);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            i--;
+        }
+        return i < end;
+    }
+
+    /**
+     * Validates letter-digit-hyphen labels, lowercases and strips a trailing dot.
+     * Internationalized names are converted to their ASCII form first.
+     *
+     * @return the canonical hostname, or null if the range is not a valid hostname
+     */
+    static String canonicalHostname(CharSequence input, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        if (input.charAt(to - 1) == '.') {
+            to--;
+        }
+        if (from == to) {
+            return null;
+        }
+
+        boolean canonical = true;
+        for (int i = from; i < to; i++) {
+            char c = input.charAt(i);
+            if (c > 0x7F) {
+                return idnHostname(input.subSequence(from, to).toString());
+            }
+            if (c >= 'A' && c <= 'Z') {
+                canonical = false;
+            }
+        }
+
+        if (!validAsciiHostname(input, from, to)) {
+            return null;
+        }
+        if (canonical && input instanceof String string && from == 0 && to == string.length()) {
+            return string;
+        }
+
+        char[] chars = new char[to - from];
+        for (int i = from; i < to; i++) {
+            char c = input.charAt(i);
+            chars[i - from] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return new String(chars);
+    }
+
+    private static String idnHostname(String host) {
+        String ascii;
+        try {
+            ascii = IDN.toASCII(host, IDN.ALLOW_UNASSIGNED | IDN.USE_STD3_ASCII_RULES);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (ascii.isEmpty() || !validAsciiHostname(ascii, 0, ascii.length())) {
+            return null;
+        }
+        return canonicalHostname(ascii, 0, ascii.length());
+    }
+
+    private static boolean validAsciiHostname(CharSequence input, int from, int to) {
+        if (to - from > MAX_HOSTNAME_LENGTH) {
+            return false;
+        }
+        int labelStart = from;
+        for (int i = from; i <= to; i++) {
+            char c = i == to ? '.' : input.charAt(i);
+            if (c == '.') {
+                int length = i - labelStart;
+                if (length == 0 || length > MAX_LABEL_LENGTH
+                        || input.charAt(labelStart) == '-' || input.charAt(i - 1) == '-') {
+                    return false;
+                }
+                labelStart = i + 1;
+            } else if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence input, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (input.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(CharSequence input, int from, int to, int fallbackPort) {
+        int h = fallbackPort;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + input.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean contentEquals(String cached, CharSequence input, int from, int to) {
+        if (cached.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < cached.length(); i++) {
+            if (cached.charAt(i) != input.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,7 @@
+package dev.onechris.extension.transfertool;
+
+/**
+ * Either a {@link Destination} or the {@link DestinationError} explaining why an input was rejected.
+ */
+public sealed interface DestinationResult permits Destination, DestinationError {
+}
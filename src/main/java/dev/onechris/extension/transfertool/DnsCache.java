@@ -0,0 +1,207 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the hostnames of Bedrock targets in the background, so players can be sent an IP address instead of
+ * every client looking up the hostname itself. Each hostname is refreshed before its answer expires; failed
+ * lookups are retried after a shorter delay, while a previous answer that has not expired yet stays in use.
+ * <p>
+ * {@link #resolved(String)} never blocks: it only returns what is already cached and fresh.
+ */
+public final class DnsCache {
+    private static final int THREADS = 2;
+    private static final long MIN_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * @param literal the address to send players to, or null if the last lookup failed
+     * @param expires the nanoTime after which the literal must no longer be used
+     */
+    private record Entry(String literal, long expires) {
+    }
+
+    /**
+     * The next scheduled lookup of one hostname. Once cancelled, a lookup that is still running does not schedule
+     * another one, so there is at most one chain of lookups per tracked hostname.
+     */
+    private static final class Refresh {
+        private ScheduledFuture<?> next;
+        private boolean cancelled;
+
+        synchronized void schedule(ScheduledExecutorService executor, Runnable lookup, long delayNanos) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                next = executor.schedule(lookup, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // Stopped
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+    }
+
+    private final HostResolver resolver;
+    private final ExtensionLogger logger;
+    private final ScheduledExecutorService executor;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // The refresh chain of each tracked hostname
+    private final Map<String, Refresh> refreshes = new ConcurrentHashMap<>();
+    private volatile long ttlNanos;
+    private volatile long negativeTtlNanos;
+    private volatile boolean preferIpv4;
+
+    public DnsCache(HostResolver resolver, Config.Dns settings, ExtensionLogger logger) {
+        this.resolver = resolver;
+        this.logger = logger;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "TransferTool-DNS-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        configure(settings);
+    }
+
+    public void configure(Config.Dns settings) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(1, settings.ttlSeconds()));
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(Math.max(1, settings.negativeTtlSeconds()));
+        this.preferIpv4 = settings.preferIpv4();
+    }
+
+    /**
+     * Starts resolving hostnames that are new, and forgets the ones that are no longer used. Called on the reload
+     * executor only.
+     */
+    public void track(Set<String> hosts) {
+        for (String host : hosts) {
+            if (!refreshes.containsKey(host)) {
+                Refresh refresh = new Refresh();
+                refreshes.put(host, refresh);
+                refresh.schedule(executor, () -> refresh(host, refresh), 0);
+            }
+        }
+        refreshes.entrySet().removeIf(entry -> {
+            if (hosts.contains(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().cancel();
+            entries.remove(entry.getKey());
+            return true;
+        });
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+        refreshes.clear();
+        entries.clear();
+    }
+
+    /**
+     * @return a fresh IP address for the hostname, or the hostname itself if there is none (yet)
+     */
+    public String resolved(String host) {
+        Entry entry = entries.get(host);
+        if (entry == null || entry.literal() == null || entry.expires() - System.nanoTime() < 0) {
+            return host;
+        }
+        return entry.literal();
+    }
+
+    /**
+     * @return how many tracked hostnames currently have a fresh address
+     */
+    public int fresh() {
+        long now = System.nanoTime();
+        int fresh = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.literal() != null && entry.expires() - now >= 0) {
+                fresh++;
+            }
+        }
+        return fresh;
+    }
+
+    private void refresh(String host, Refresh refresh) {
+        if (refreshes.get(host) != refresh) {
+            return;
+        }
+
+        long delay;
+        Entry written = null;
+        try {
+            HostResolver.Result result = resolver.resolve(host);
+            String literal = select(result);
+            if (literal == null) {
+                throw new IOException("No addresses");
+            }
+            long ttl = result.ttlMillis() > 0 ? TimeUnit.MILLISECONDS.toNanos(result.ttlMillis()) : ttlNanos;
+            written = new Entry(literal, System.nanoTime() + ttl);
+            entries.put(host, written);
+            // Refresh early, so the answer does not expire while a slow lookup is still running
+            delay = Math.max(MIN_REFRESH_NANOS, ttl - ttl / 4);
+        } catch (IOException | RuntimeException e) {
+            Entry previous = entries.get(host);
+            long now = System.nanoTime();
+            if (previous == null || previous.literal() == null || previous.expires() - now < 0) {
+                written = new Entry(null, now + negativeTtlNanos);
+                entries.put(host, written);
+            }
+            logger.debug("Unable to resolve Bedrock target " + host + ": " + e.getMessage());
+            delay = negativeTtlNanos;
+        }
+
+        // Does nothing if the hostname was untracked meanwhile; if it was tracked again, that started another chain
+        refresh.schedule(executor, () -> refresh(host, refresh), delay);
+        if (refreshes.get(host) != refresh && written != null) {
+            entries.remove(host, written);
+        }
+    }
+
+    private String select(HostResolver.Result result) {
+        InetAddress fallback = null;
+        for (InetAddress address : result.addresses()) {
+            if (address instanceof Inet4Address == preferIpv4) {
+                return literal(address);
+            }
+            if (fallback == null) {
+                fallback = address;
+            }
+        }
+        return fallback == null ? null : literal(fallback);
+    }
+
+    private static String literal(InetAddress address) {
+        if (address instanceof Inet6Address) {
+            byte[] bytes = address.getAddress();
+            long hi = 0;
+            long lo = 0;
+            for (int i = 0; i < 8; i++) {
+                hi = hi << 8 | (bytes[i] & 0xFF);
+                lo = lo << 8 | (bytes[i + 8] & 0xFF);
+            }
+            return InetLiterals.format(hi, lo);
+        }
+        return address.getHostAddress();
+    }
+}
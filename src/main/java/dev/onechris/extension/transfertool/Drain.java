@@ -0,0 +1,158 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A running mass transfer. Players are transferred in waves; a wave is only as large as the in-flight cap allows,
+ * where "in flight" means transferred but not yet disconnected from this Geyser instance.
+ * All state except the in-flight map is only touched by the scheduler thread.
+ */
+public final class Drain {
+
+    public record Progress(int total, int completed, int inFlight, int remaining, int timedOut, int skipped) {
+    }
+
+    private final Queue<GeyserConnection> queue;
+    private final int total;
+    private final TargetPool target;
+    private final Config.Drain settings;
+    private final ScheduledExecutorService scheduler;
+    private final Supplier<? extends Collection<? extends GeyserConnection>> onlineConnections;
+    private final BiConsumer<GeyserConnection, Destination> transfer;
+    private final Consumer<Progress> progress;
+    private final Consumer<Progress> finished;
+
+    // Connection -> nanoTime deadline after which it no longer counts as in flight
+    private final Map<GeyserConnection, Long> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private int timedOut;
+    private int skipped;
+    private volatile boolean done;
+    private ScheduledFuture<?> next;
+    private Progress reported;
+
+    /**
+     * @param progress called after each wave that changed anything
+     * @param finished called once when all players were handled, but not when cancelled
+     */
+    public Drain(List<GeyserConnection> connections, TargetPool target, Config.Drain settings,
+                 ScheduledExecutorService scheduler, Supplier<? extends Collection<? extends GeyserConnection>> onlineConnections,
+                 BiConsumer<GeyserConnection, Destination> transfer, Consumer<Progress> progress, Consumer<Progress> finished) {
+        this.queue = new ArrayDeque<>(connections);
+        this.total = connections.size();
+        this.target = target;
+        this.settings = settings;
+        this.scheduler = scheduler;
+        this.onlineConnections = onlineConnections;
+        this.transfer = transfer;
+        this.progress = progress;
+        this.finished = finished;
+    }
+
+    public synchronized void start() {
+        next = scheduler.schedule(this::wave, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sending further waves. Players already transferred are not affected.
+     *
+     * @return the progress at the time of cancelling
+     */
+    public synchronized Progress cancel() {
+        done = true;
+        if (next != null) {
+            next.cancel(false);
+        }
+        return progress();
+    }
+
+    public boolean done() {
+        return done;
+    }
+
+    /**
+     * Called for every disconnecting player; completes the transfer if it was one of ours.
+     */
+    public void disconnected(GeyserConnection connection) {
+        if (inFlight.remove(connection) != null) {
+            completed.incrementAndGet();
+        }
+    }
+
+    public Progress progress() {
+        return new Progress(total, completed.get(), inFlight.size(), queue.size(), timedOut, skipped);
+    }
+
+    private void wave() {
+        if (done) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        inFlight.entrySet().removeIf(entry -> {
+            if (entry.getValue() - now < 0) {
+                timedOut++;
+                return true;
+            }
+            return false;
+        });
+
+        int budget = Math.min(settings.waveSize(), settings.maxInFlight() - inFlight.size());
+        if (budget > 0 && !queue.isEmpty()) {
+            Set<GeyserConnection> online = Collections.newSetFromMap(new IdentityHashMap<>());
+            online.addAll(onlineConnections.get());
+
+            long deadline = now + TimeUnit.MILLISECONDS.toNanos(settings.transferTimeoutMillis());
+            while (budget > 0 && !queue.isEmpty()) {
+                GeyserConnection connection = queue.poll();
+                if (!online.contains(connection)) {
+                    skipped++;
+                    continue;
+                }
+                inFlight.put(connection, deadline);
+                transfer.accept(connection, target.select());
+                budget--;
+            }
+        }
+
+        Progress current = progress();
+        if (queue.isEmpty() && inFlight.isEmpty()) {
+            synchronized (this) {
+                if (!done) {
+                    done = true;
+                    finished.accept(current);
+                }
+            }
+            return;
+        }
+        if (!current.equals(reported)) {
+            reported = current;
+            progress.accept(current);
+        }
+
+        synchronized (this) {
+            if (!done) {
+                long jitter = settings.jitterMillis() > 0 ? ThreadLocalRandom.current().nextLong(settings.jitterMillis() + 1L) : 0;
+                next = scheduler.schedule(this::wave, settings.waveIntervalMillis() + jitter, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.command.Command;
+import org.geysermc.geyser.api.command.CommandExecutor;
+import org.geysermc.geyser.api.command.CommandSource;
+import org.geysermc.geyser.api.connection.GeyserConnection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * '/transfertool drain &lt;server|ip[:port]&gt; [filters...]', '/transfertool drain status' and '/transfertool drain cancel'.
+ * <p>
+ * Filters: "permission:&lt;node&gt;", "locale:&lt;locale or language&gt;" and "via:&lt;shortcut&gt;"
+ * (players who joined this Geyser instance through one of the shortcut's addresses). All filters must match.
+ * The player running the command is never drained, so they can follow the progress and cancel.
+ */
+public class DrainCommand implements CommandExecutor<CommandSource> {
+    private final Supplier<TransferState> state;
+    private final Supplier<? extends Collection<? extends GeyserConnection>> onlineConnections;
+    private final BiConsumer<GeyserConnection, Destination> transfer;
+    private ScheduledExecutorService scheduler;
+    private volatile Drain drain;
+
+    public DrainCommand(Supplier<TransferState> state, Supplier<? extends Collection<? extends GeyserConnection>> onlineConnections,
+                        BiConsumer<GeyserConnection, Destination> transfer) {
+        this.state = state;
+        this.onlineConnections = onlineConnections;
+        this.transfer = transfer;
+    }
+
+    @Override
+    public synchronized void execute(CommandSource source, Command command, String[] args) {
+        TransferState state = this.state.get();
+        LanguageManager languageManager = state.languageManager();
+
+        if (args.length == 0) {
+            source.sendMessage(languageManager.getLocaleString(source, "commands.drain.usage"));
+            return;
+        }
+
+        Drain running = this.drain;
+        if (args.length == 1 && (args[0].equalsIgnoreCase("status") || args[0].equalsIgnoreCase("cancel"))) {
+            if (running == null || running.done()) {
+                source.sendMessage(languageManager.getLocaleString(source, "commands.drain.not_running"));
+            } else if (args[0].equalsIgnoreCase("status")) {
+                sendProgress(source, running.progress());
+            } else {
+                Drain.Progress progress = running.cancel();
+                source.sendMessage(languageManager.getLocaleString(source, "commands.drain.cancelled", progress.remaining()));
+            }
+            return;
+        }
+
+        if (running != null && !running.done()) {
+            source.sendMessage(languageManager.getLocaleString(source, "commands.drain.already_running"));
+            return;
+        }
+
+        TargetPool target = state.shortcuts().get(args[0]);
+        if (target == null) {
+            DestinationResult result = Destination.parse(args[0], RoutingTable.DEFAULT_BEDROCK_PORT);
+            if (result instanceof DestinationError error) {
+                source.sendMessage(languageManager.getLocaleString(source, error.translationKey(), args[0]));
+                return;
+            }
+            target = TargetPool.of((Destination) result);
+        }
+
+        Predicate<GeyserConnection> filter = connection -> connection != source;
+        for (int i = 1; i < args.length; i++) {
+            Predicate<GeyserConnection> parsed = parseFilter(state, args[i]);
+            if (parsed == null) {
+                source.sendMessage(languageManager.getLocaleString(source, "commands.drain.unknown_filter", args[i]));
+                return;
+            }
+            filter = filter.and(parsed);
+        }
+
+        List<GeyserConnection> connections = new ArrayList<>();
+        for (GeyserConnection connection : onlineConnections.get()) {
+            if (filter.test(connection)) {
+                connections.add(connection);
+            }
+        }
+        if (connections.isEmpty()) {
+            source.sendMessage(languageManager.getLocaleString(source, "commands.drain.no_players"));
+            return;
+        }
+
+        Config.Drain settings = state.config().drain();
+        // Checked here only: a bad drain setting should not take routing down with it, but no wave could ever move anyone
+        if (settings.waveSize() < 1 || settings.maxInFlight() < 1) {
+            source.sendMessage(languageManager.getLocaleString(source, "commands.drain.invalid_settings"));
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TransferTool-Drain");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        source.sendMessage(languageManager.getLocaleString(source, "commands.drain.started",
+                connections.size(), args[0], settings.waveSize()));
+        drain = new Drain(connections, target, settings, scheduler, onlineConnections, transfer,
+                progress -> sendProgress(source, progress),
+                progress -> source.sendMessage(this.state.get().languageManager().getLocaleString(source, "commands.drain.finished",
+                        progress.completed(), progress.timedOut(), progress.skipped())));
+        drain.start();
+    }
+
+    /**
+     * Completes in-flight transfers of a running drain.
+     */
+    public void disconnected(GeyserConnection connection) {
+        Drain drain = this.drain;
+        if (drain != null && !drain.done()) {
+            drain.disconnected(connection);
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (drain != null) {
+            drain.cancel();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void sendProgress(CommandSource source, Drain.Progress progress) {
+        source.sendMessage(state.get().languageManager().getLocaleString(source, "commands.drain.progress",
+                progress.completed(), progress.total(), progress.inFlight(), progress.remaining(), progress.timedOut()));
+    }
+
+    /**
+     * @return the filter, or null if the argument is not a known filter
+     */
+    private static Predicate<GeyserConnection> parseFilter(TransferState state, String arg) {
+        int separator = arg.indexOf(':');
+        if (separator <= 0 || separator == arg.length() - 1) {
+            return null;
+        }
+        String value = arg.substring(separator + 1);
+        switch (arg.substring(0, separator).toLowerCase(Locale.ROOT)) {
+            case "permission" -> {
+                return connection -> connection.hasPermission(value);
+            }
+            case "locale" -> {
+                // "de" matches all German locales, "de_DE" only that one
+                String locale = value.toLowerCase(Locale.ROOT).replace('-', '_');
+                return connection -> {
+                    String connectionLocale = connection.locale();
+                    if (connectionLocale == null) {
+                        return false;
+                    }
+                    connectionLocale = connectionLocale.toLowerCase(Locale.ROOT).replace('-', '_');
+                    return connectionLocale.equals(locale) || connectionLocale.startsWith(locale + "_");
+                };
+            }
+            case "via" -> {
+                TargetPool shortcut = state.shortcuts().get(value);
+                if (shortcut == null) {
+                    return null;
+                }
+                List<Destination> members = shortcut.members();
+                return connection -> {
+                    String joinAddress = connection.joinAddress();
+                    return joinAddress != null
+                            && Destination.parse(joinAddress, connection.joinPort()) instanceof Destination joined
+                            && members.contains(joined);
+                };
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+}
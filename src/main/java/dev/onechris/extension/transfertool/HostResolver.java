@@ -0,0 +1,29 @@
+package dev.onechris.extension.transfertool;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * Looks up the addresses of Bedrock target hostnames for {@link DnsCache}. Lookups run on the cache's own threads
+ * and may block. The default is {@link #SYSTEM}; other implementations (e.g. a DNS client that knows record TTLs,
+ * or a fixed table for tests) only need to return the addresses.
+ */
+public interface HostResolver {
+
+    /**
+     * @param ttlMillis how long the addresses may be used, or 0 to use the configured time
+     */
+    record Result(List<InetAddress> addresses, long ttlMillis) {
+    }
+
+    /**
+     * Resolves through the JVM (and therefore the operating system), which does not expose record TTLs.
+     */
+    HostResolver SYSTEM = host -> new Result(List.of(InetAddress.getAllByName(host)), 0);
+
+    /**
+     * @throws IOException if the host could not be resolved, e.g. {@link java.net.UnknownHostException}
+     */
+    Result resolve(String host) throws IOException;
+}
@@ -0,0 +1,254 @@
+package dev.onechris.extension.transfertool;
+
+/**
+ * Allocation-free parsing of IPv4 / IPv6 literals.
+ * IPv4 addresses are represented as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d) whenever
+ * both families need to share a key space.
+ */
+public final class InetLiterals {
+
+    public static final long IPV4_MAPPED_PREFIX = 0xFFFF_0000_0000L;
+
+    private InetLiterals() {
+    }
+
+    /**
+     * @return the address as an unsigned 32-bit value, or -1 if the range is not a dotted-quad IPv4 literal
+     */
+    public static long parseIpv4(CharSequence s, int from, int to) {
+        if (to - from < 7 || to - from > 15) {
+            return -1;
+        }
+
+        long address = 0;
+        int octets = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // No leading zeros; they are ambiguous (octal) in some resolvers
+                if (digits == 1 && value == 0) {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return -1;
+                }
+            } else if (c == '.') {
+                if (digits == 0 || octets == 3) {
+                    return -1;
+                }
+                address = (address << 8) | value;
+                octets++;
+                value = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+
+        if (digits == 0 || octets != 3) {
+            return -1;
+        }
+        return (address << 8) | value;
+    }
+
+    /**
+     * Parses an IPv6 literal (without brackets or zone id) into {@code out[0]} (high bits) and {@code out[1]} (low bits).
+     *
+     * @return whether the range was a valid IPv6 literal
+     */
+    public static boolean parseIpv6(CharSequence s, int from, int to, long[] out) {
+        if (to - from < 2 || to - from > 45) {
+            return false;
+        }
+
+        // Groups before "::" are shifted into head, groups after it into tail
+        long headHi = 0, headLo = 0, tailHi = 0, tailLo = 0;
+        int headGroups = 0, tailGroups = 0;
+        boolean compressed = false;
+
+        int i = from;
+        if (s.charAt(i) == ':') {
+            if (s.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressed = true;
+            i += 2;
+        }
+
+        while (i < to) {
+            int start = i;
+            int group = 0;
+            while (i < to && i - start < 5) {
+                int digit = hexDigit(s.charAt(i));
+                if (digit < 0) {
+                    break;
+                }
+                group = (group << 4) | digit;
+                i++;
+            }
+
+            if (i < to && s.charAt(i) == '.') {
+                // Embedded IPv4 suffix, e.g. ::ffff:192.168.0.1
+                long ipv4 = parseIpv4(s, start, to);
+                if (ipv4 < 0) {
+                    return false;
+                }
+                for (int shift = 16; shift >= 0; shift -= 16) {
+                    int part = (int) (ipv4 >>> shift) & 0xFFFF;
+                    if (compressed) {
+                        tailHi = (tailHi << 16) | (tailLo >>> 48);
+                        tailLo = (tailLo << 16) | part;
+                        tailGroups++;
+                    } else {
+                        headHi = (headHi << 16) | (headLo >>> 48);
+                        headLo = (headLo << 16) | part;
+                        headGroups++;
+                    }
+                }
+                i = to;
+                break;
+            }
+
+            int length = i - start;
+            if (length == 0 || length > 4) {
+                return false;
+            }
+
+            if (compressed) {
+                tailHi = (tailHi << 16) | (tailLo >>> 48);
+                tailLo = (tailLo << 16) | group;
+                tailGroups++;
+            } else {
+                headHi = (headHi << 16) | (headLo >>> 48);
+                headLo = (headLo << 16) | group;
+                headGroups++;
+            }
+
+            if (i == to) {
+                break;
+            }
+            if (s.charAt(i) != ':') {
+                return false;
+            }
+            i++;
+            if (i < to && s.charAt(i) == ':') {
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                i++;
+            } else if (i == to) {
+                // Trailing single colon
+                return false;
+            }
+        }
+
+        int groups = headGroups + tailGroups;
+        if (groups > 8 || (!compressed && groups != 8) || (compressed && groups == 8)) {
+            return false;
+        }
+
+        // Move the head groups to the top of the 128 bits, tail stays at the bottom
+        int shift = (8 - headGroups) * 16;
+        long hi, lo;
+        if (shift == 0) {
+            hi = headHi;
+            lo = headLo;
+        } else if (shift >= 128) {
+            hi = 0;
+            lo = 0;
+        } else if (shift >= 64) {
+            hi = headLo << (shift - 64);
+            lo = 0;
+        } else {
+            hi = (headHi << shift) | (headLo >>> (64 - shift));
+            lo = headLo << shift;
+        }
+
+        out[0] = hi | tailHi;
+        out[1] = lo | tailLo;
+        return true;
+    }
+
+    /**
+     * Parses either literal family into IPv6 form, mapping IPv4 into ::ffff:0:0/96.
+     */
+    public static boolean parseAny(CharSequence s, int from, int to, long[] out) {
+        long ipv4 = parseIpv4(s, from, to);
+        if (ipv4 >= 0) {
+            out[0] = 0;
+            out[1] = IPV4_MAPPED_PREFIX | ipv4;
+            return true;
+        }
+        return parseIpv6(s, from, to, out);
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    public static boolean isIpv4Mapped(long hi, long lo) {
+        return hi == 0 && (lo & 0xFFFF_FFFF_0000_0000L) == IPV4_MAPPED_PREFIX;
+    }
+
+    public static String formatIpv4(long address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." +
+                ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    /**
+     * Formats an address in RFC 5952 canonical form. IPv4-mapped addresses are formatted as plain IPv4.
+     */
+    public static String format(long hi, long lo) {
+        if (isIpv4Mapped(hi, lo)) {
+            return formatIpv4(lo & 0xFFFF_FFFFL);
+        }
+
+        int[] groups = new int[8];
+        for (int i = 0; i < 4; i++) {
+            groups[i] = (int) (hi >>> (48 - i * 16)) & 0xFFFF;
+            groups[i + 4] = (int) (lo >>> (48 - i * 16)) & 0xFFFF;
+        }
+
+        // Find the longest run (>= 2) of zero groups to compress
+        int bestStart = -1, bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (groups[i] != 0) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < 8 && groups[i] == 0) {
+                i++;
+            }
+            if (i - start > bestLength) {
+                bestStart = start;
+                bestLength = i - start;
+            }
+        }
+
+        StringBuilder builder = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                builder.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') {
+                builder.append(':');
+            }
+            builder.append(Integer.toHexString(groups[i]));
+        }
+        return builder.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package dev.onechris.extension.transfertool;
 
 import org.geysermc.geyser.api.command.CommandSource;
+import org.geysermc.geyser.api.connection.GeyserConnection;
 import org.geysermc.geyser.api.extension.ExtensionLogger;
 
 import java.io.IOException;
@@ -9,18 +10,28 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Loads all translation files once into immutable per-locale tables. Each table already contains
+ * the whole fallback chain: exact locale -> same language (e.g. de_AT -> de_DE) -> default locale -> bundled en_US.
+ */
 public class LanguageManager {
-    public static String DEFAULT_LOCALE = "en_us";
     private static final String EN_US_PROPERTIES = "en_US.properties";
-    public static final Map<String, Properties> LOCALE_PROPERTIES = new HashMap<>();
-    private final Config config;
+    private static final String BUNDLED_LOCALE = "en_us";
+    // Bedrock only knows a few dozen locales; this only guards against garbage locale strings
+    private static final int MAX_CACHED_LOCALES = 256;
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Map<String, Map<String, MessageTemplate>> tables;
+    private final Map<String, Map<String, MessageTemplate>> languageTables;
+    private final Map<String, MessageTemplate> defaultTable;
+    private final Map<String, Map<String, MessageTemplate>> resolvedLocales = new ConcurrentHashMap<>();
+    private final Map<GeyserConnection, Map<String, MessageTemplate>> connectionTables = new ConcurrentHashMap<>();
     private final ExtensionLogger logger;
 
     public LanguageManager(Path languageFolder, Config config, ExtensionLogger logger) throws IOException {
-        this.config = config;
         this.logger = logger;
 
         // Ensure it exists
@@ -31,33 +42,49 @@ public class LanguageManager {
         }
 
         List<Path> languageFiles;
-        try {
-            languageFiles = new ArrayList<>(Files.list(languageFolder).toList());
+        try (var files = Files.list(languageFolder)) {
+            languageFiles = new ArrayList<>(files.toList());
         } catch (IOException e) {
             throw new RuntimeException("Failed to list language files!", e);
         }
 
+        String defaultLocale = BUNDLED_LOCALE;
         if (config.defaultLocale() != null) {
-            DEFAULT_LOCALE = config.defaultLocale().toLowerCase().replace(".properties", "");
+            defaultLocale = normalize(config.defaultLocale().replace(".properties", ""));
+        }
+
+        Properties bundled = new Properties();
+        try (InputStream input = bundledProperties()) {
+            try (InputStreamReader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+                bundled.load(reader);
+            }
         }
 
         //Check: Does default locale exist? Fallback to en_us if it does not.
-        if (languageFiles.stream().noneMatch(path -> path.getFileName().toString().equalsIgnoreCase(DEFAULT_LOCALE + ".properties"))) {
+        String finalDefaultLocale = defaultLocale;
+        if (languageFiles.stream().noneMatch(path -> normalize(path.getFileName().toString()).equals(finalDefaultLocale + ".properties"))) {
 
             // Check: Is default locale not english?
-            if (!DEFAULT_LOCALE.equalsIgnoreCase("en_us")) {
-                logger.warning("Default configured locale " + DEFAULT_LOCALE + " not found, falling back to en_us.properties");
-                DEFAULT_LOCALE = "en_us";
+            if (!defaultLocale.equals(BUNDLED_LOCALE)) {
+                logger.warning("Default configured locale " + defaultLocale + " not found, falling back to en_us.properties");
+                defaultLocale = BUNDLED_LOCALE;
             }
 
-            try (InputStream input = TransferTool.class.getClassLoader().getResourceAsStream(EN_US_PROPERTIES)) {
-                assert input != null;
+            try (InputStream input = bundledProperties()) {
+                byte[] bundledBytes = input.readAllBytes();
                 Path defaultLocalePath = languageFolder.resolve(EN_US_PROPERTIES);
-                Files.copy(input, defaultLocalePath, StandardCopyOption.REPLACE_EXISTING);
-                languageFiles.add(defaultLocalePath);
+                // Only write if it differs, which also keeps the config watcher from seeing a change
+                if (!Files.isRegularFile(defaultLocalePath) || Files.size(defaultLocalePath) != bundledBytes.length
+                        || !Arrays.equals(Files.readAllBytes(defaultLocalePath), bundledBytes)) {
+                    Files.write(defaultLocalePath, bundledBytes);
+                }
+                if (!languageFiles.contains(defaultLocalePath)) {
+                    languageFiles.add(defaultLocalePath);
+                }
             }
         }
 
+        Map<String, Properties> locales = new TreeMap<>();
         for (Path languageFile : languageFiles) {
             if (!languageFile.toFile().isFile()) {
                 continue;
@@ -69,38 +96,133 @@ public class LanguageManager {
             }
 
             // Load the locale
-            try (InputStream localeStream = Files.newInputStream(languageFile)) {
-                Properties localeProp = new Properties();
-                try (InputStreamReader reader = new InputStreamReader(localeStream, StandardCharsets.UTF_8)) {
-                    localeProp.load(reader);
-                } catch (Exception e) {
-                    throw new AssertionError("Failed to load locale " + fileName);
-                } finally {
-                    localeStream.close();
-                }
+            Properties localeProp = new Properties();
+            try (InputStreamReader reader = new InputStreamReader(Files.newInputStream(languageFile), StandardCharsets.UTF_8)) {
+                localeProp.load(reader);
+            } catch (Exception e) {
+                throw new AssertionError("Failed to load locale " + fileName);
+            }
+
+            locales.put(normalize(fileName.substring(0, fileName.length() - ".properties".length())), localeProp);
+        }
 
-                // Insert the locale into the mappings, all lowercase
-                LOCALE_PROPERTIES.put(fileName.substring(0, 5).toLowerCase(), localeProp);
+        // Fallback for a language: the "main" locale of it (de -> de_de) if present, otherwise the first one
+        Map<String, String> languageLocales = new HashMap<>();
+        for (String locale : locales.keySet()) {
+            String language = language(locale);
+            if (locale.equals(language + "_" + language) || !languageLocales.containsKey(language)) {
+                languageLocales.put(language, locale);
             }
         }
+
+        Map<String, MessageTemplate> base = compile(bundled, Map.of());
+        this.defaultTable = compile(locales.getOrDefault(defaultLocale, new Properties()), base);
+
+        Map<String, Map<String, MessageTemplate>> languageTables = new HashMap<>();
+        for (Map.Entry<String, String> entry : languageLocales.entrySet()) {
+            languageTables.put(entry.getKey(), compile(locales.get(entry.getValue()), defaultTable));
+        }
+
+        Map<String, Map<String, MessageTemplate>> tables = new HashMap<>();
+        for (Map.Entry<String, Properties> entry : locales.entrySet()) {
+            Map<String, MessageTemplate> fallback = languageTables.getOrDefault(language(entry.getKey()), defaultTable);
+            tables.put(entry.getKey(), compile(entry.getValue(), fallback));
+        }
+
+        this.tables = Map.copyOf(tables);
+        this.languageTables = Map.copyOf(languageTables);
+    }
+
+    private static InputStream bundledProperties() {
+        InputStream input = TransferTool.class.getClassLoader().getResourceAsStream(EN_US_PROPERTIES);
+        if (input == null) {
+            throw new IllegalStateException(EN_US_PROPERTIES + " is missing from the extension jar!");
+        }
+        return input;
+    }
+
+    private static Map<String, MessageTemplate> compile(Properties properties, Map<String, MessageTemplate> fallback) {
+        Map<String, MessageTemplate> table = new HashMap<>(fallback);
+        for (String key : properties.stringPropertyNames()) {
+            table.put(key, MessageTemplate.parse(properties.getProperty(key)));
+        }
+        return Map.copyOf(table);
+    }
+
+    static String normalize(String locale) {
+        return locale.toLowerCase(Locale.ROOT).replace('-', '_');
+    }
+
+    static String language(String locale) {
+        int separator = locale.indexOf('_');
+        return separator < 0 ? locale : locale.substring(0, separator);
+    }
+
+    private Map<String, MessageTemplate> table(CommandSource source) {
+        if (source instanceof GeyserConnection connection) {
+            // A Bedrock client's locale does not change during a session; resolve it only once
+            Map<String, MessageTemplate> table = connectionTables.get(connection);
+            if (table == null) {
+                table = table(connection.locale());
+                connectionTables.put(connection, table);
+            }
+            return table;
+        }
+        return table(source.locale());
+    }
+
+    private Map<String, MessageTemplate> table(String locale) {
+        if (locale == null) {
+            return defaultTable;
+        }
+
+        Map<String, MessageTemplate> table = resolvedLocales.get(locale);
+        if (table != null) {
+            return table;
+        }
+
+        String normalized = normalize(locale);
+        table = tables.get(normalized);
+        if (table == null) {
+            table = languageTables.getOrDefault(language(normalized), defaultTable);
+        }
+        if (resolvedLocales.size() < MAX_CACHED_LOCALES) {
+            resolvedLocales.put(locale, table);
+        }
+        return table;
+    }
+
+    /**
+     * Drops cached state for a connection that left.
+     */
+    public void forget(GeyserConnection connection) {
+        connectionTables.remove(connection);
     }
 
     public String getLocaleString(CommandSource source, String key) {
-        return getLocaleString(source.locale(), key);
+        return translate(table(source), key, NO_ARGS);
+    }
+
+    public String getLocaleString(CommandSource source, String key, Object... args) {
+        return translate(table(source), key, args);
     }
 
     public String getLocaleString(String key) {
-        return getLocaleString(config.defaultLocale(), key);
+        return translate(defaultTable, key, NO_ARGS);
     }
 
     public String getLocaleString(String locale, String key) {
-        String translation =  LOCALE_PROPERTIES.getOrDefault(locale.toLowerCase(), LOCALE_PROPERTIES.get(DEFAULT_LOCALE))
-                .getProperty(key);
-        if (translation != null) {
-            return translation;
+        return translate(table(locale), key, NO_ARGS);
+    }
+
+    private String translate(Map<String, MessageTemplate> table, String key, Object[] args) {
+        MessageTemplate template = table.get(key);
+        if (template != null) {
+            // Without arguments, the text is shown as written, as it always was
+            return args.length == 0 ? template.raw() : template.format(args);
         } else {
             logger.warning("No translation fallback found for translation key: " + key);
             return key;
         }
     }
-}
\ No newline at end of file
+}
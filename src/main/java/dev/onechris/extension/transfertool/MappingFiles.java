@@ -0,0 +1,378 @@
+package dev.onechris.extension.transfertool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads key -> target entries from external, line-oriented files, e.g. generated by an orchestration system.
+ * <ul>
+ *     <li>.csv: {@code key,target[,more targets...]}; fields may be double-quoted, lines starting with # are ignored</li>
+ *     <li>.jsonl: one object per line, {@code {"<key field>": "...", "target": "..."}}; the target may also be a list</li>
+ * </ul>
+ * Files are read in one go and closed right away, so generators can replace them at any time (also on Windows),
+ * then decoded line by line. Files whose content did not change since the last read are not parsed again.
+ */
+public final class MappingFiles {
+
+    private final String keyField;
+    private final Map<Path, Loaded> loaded = new HashMap<>();
+
+    private record Loaded(byte[] hash, Map<String, String> entries) {
+    }
+
+    /**
+     * @param keyField the JSON field holding the key, e.g. "source" or "name"
+     */
+    public MappingFiles(String keyField) {
+        this.keyField = keyField;
+    }
+
+    /**
+     * Reads all files, in order; later entries replace earlier ones with the same key.
+     * A missing or unreadable file keeps the entries it had when it was last read.
+     * Not thread-safe; only called from the reload executor.
+     */
+    public Map<String, String> read(List<Path> files, Consumer<String> warnings) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        Map<Path, Loaded> current = new HashMap<>();
+        for (Path file : files) {
+            Loaded previous = loaded.get(file);
+            Loaded result;
+            try {
+                // Hashing the content instead of comparing modification times also catches same-size rewrites
+                // within the file system's timestamp resolution
+                byte[] content = Files.readAllBytes(file);
+                byte[] hash = hash(content);
+                if (previous != null && MessageDigest.isEqual(previous.hash(), hash)) {
+                    result = previous;
+                } else {
+                    result = new Loaded(hash, parse(file, ByteBuffer.wrap(content), warnings));
+                }
+            } catch (NoSuchFileException e) {
+                warnings.accept("Mapping file " + file + " does not exist" + keeping(previous));
+                result = previous;
+            } catch (IOException e) {
+                warnings.accept("Unable to read mapping file " + file + ": " + e.getMessage() + keeping(previous));
+                result = previous;
+            }
+
+            if (result != null) {
+                current.put(file, result);
+                entries.putAll(result.entries());
+            }
+        }
+
+        loaded.clear();
+        loaded.putAll(current);
+        return entries;
+    }
+
+    private static String keeping(Loaded previous) {
+        return previous == null ? "!" : ", keeping its previous " + previous.entries().size() + " entries.";
+    }
+
+    private static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, String> parse(Path file, ByteBuffer buffer, Consumer<String> warnings) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean json = name.endsWith(".jsonl") || name.endsWith(".json") || name.endsWith(".ndjson");
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer line = CharBuffer.allocate(256);
+        List<String> fields = new ArrayList<>();
+
+        int limit = buffer.limit();
+        int start = hasBom(buffer) ? 3 : 0;
+        int number = 0;
+        for (int i = start; i <= limit; i++) {
+            if (i < limit && buffer.get(i) != '\n') {
+                continue;
+            }
+            number++;
+            int end = i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+            line = decode(decoder, buffer.slice(start, end - start), line);
+            start = i + 1;
+            if (line == null) {
+                throw new IOException("line " + number + " is not valid UTF-8");
+            }
+
+            fields.clear();
+            String error = json ? parseJson(line, fields) : parseCsv(line, fields);
+            if (error != null) {
+                warnings.accept("Skipping line " + number + " of " + file + ": " + error);
+            } else if (!fields.isEmpty()) {
+                entries.put(fields.get(0), String.join(", ", fields.subList(1, fields.size())));
+            }
+        }
+        return entries;
+    }
+
+    private static boolean hasBom(ByteBuffer buffer) {
+        return buffer.limit() >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF;
+    }
+
+    /**
+     * Decodes into the reused buffer, growing it for long lines.
+     *
+     * @return the flipped buffer, or null if the bytes are not valid UTF-8
+     */
+    private static CharBuffer decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer out) {
+        if (out.capacity() < bytes.remaining()) {
+            out = CharBuffer.allocate(bytes.remaining());
+        }
+        out.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(bytes, out, true);
+        if (result.isError() || decoder.flush(out).isError()) {
+            return null;
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * @return an error message, or null if the line was parsed (or empty) into key and targets
+     */
+    static String parseCsv(CharSequence line, List<String> fields) {
+        int length = line.length();
+        int i = skipWhitespace(line, 0, length);
+        if (i == length || line.charAt(i) == '#') {
+            return null;
+        }
+
+        StringBuilder field = new StringBuilder();
+        while (i <= length) {
+            field.setLength(0);
+            i = skipWhitespace(line, i, length);
+            if (i < length && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        return "unterminated quote";
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                i = skipWhitespace(line, i, length);
+                if (i < length && line.charAt(i) != ',') {
+                    return "unexpected character after quoted field";
+                }
+            } else {
+                while (i < length && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            }
+            String value = field.toString().trim();
+            if (!value.isEmpty()) {
+                fields.add(value);
+            }
+            i++;
+        }
+
+        if (fields.size() < 2) {
+            fields.clear();
+            return "expected a key and at least one target";
+        }
+        return null;
+    }
+
+    /**
+     * Parses a flat JSON object; only string and string-list values are supported.
+     *
+     * @return an error message, or null if the line was parsed (or empty) into key and targets
+     */
+    String parseJson(CharSequence line, List<String> fields) {
+        int length = line.length();
+        int[] position = {skipWhitespace(line, 0, length)};
+        if (position[0] == length) {
+            return null;
+        }
+        if (line.charAt(position[0]) != '{') {
+            return "expected a JSON object";
+        }
+        position[0]++;
+
+        String key = null;
+        List<String> targets = new ArrayList<>();
+        StringBuilder buffer = new StringBuilder();
+        boolean first = true;
+        while (true) {
+            int i = skipWhitespace(line, position[0], length);
+            if (i < length && line.charAt(i) == '}' && first) {
+                position[0] = i + 1;
+                break;
+            }
+            position[0] = i;
+            String name = readString(line, position, buffer);
+            if (name == null) {
+                return "expected a field name";
+            }
+            i = skipWhitespace(line, position[0], length);
+            if (i >= length || line.charAt(i) != ':') {
+                return "expected ':' after " + name;
+            }
+            position[0] = skipWhitespace(line, i + 1, length);
+
+            List<String> values = new ArrayList<>();
+            if (position[0] < length && line.charAt(position[0]) == '[') {
+                position[0] = skipWhitespace(line, position[0] + 1, length);
+                if (position[0] < length && line.charAt(position[0]) == ']') {
+                    position[0]++;
+                } else {
+                    while (true) {
+                        String value = readString(line, position, buffer);
+                        if (value == null) {
+                            return "only strings are supported in lists";
+                        }
+                        values.add(value);
+                        i = skipWhitespace(line, position[0], length);
+                        if (i < length && line.charAt(i) == ',') {
+                            position[0] = skipWhitespace(line, i + 1, length);
+                        } else if (i < length && line.charAt(i) == ']') {
+                            position[0] = i + 1;
+                            break;
+                        } else {
+                            return "unterminated list";
+                        }
+                    }
+                }
+            } else {
+                String value = readString(line, position, buffer);
+                if (value == null) {
+                    return "only string values are supported (" + name + ")";
+                }
+                values.add(value);
+            }
+
+            if (name.equals(keyField) && values.size() == 1) {
+                key = values.get(0).trim();
+            } else if (name.equals("target")) {
+                for (String value : values) {
+                    if (!value.isBlank()) {
+                        targets.add(value.trim());
+                    }
+                }
+            }
+            // Other fields are ignored, so generators may add their own metadata
+
+            i = skipWhitespace(line, position[0], length);
+            first = false;
+            if (i < length && line.charAt(i) == ',') {
+                position[0] = i + 1;
+            } else if (i < length && line.charAt(i) == '}') {
+                position[0] = i + 1;
+                break;
+            } else {
+                return "expected ',' or '}'";
+            }
+        }
+
+        if (skipWhitespace(line, position[0], length) != length) {
+            return "unexpected content after the object";
+        }
+        if (key == null || key.isEmpty() || targets.isEmpty()) {
+            return "expected \"" + keyField + "\" and \"target\"";
+        }
+        fields.add(key);
+        fields.addAll(targets);
+        return null;
+    }
+
+    /**
+     * Reads a JSON string starting at position[0] and advances past it.
+     *
+     * @return the string, or null if there is no valid string at the position
+     */
+    private static String readString(CharSequence line, int[] position, StringBuilder buffer) {
+        int length = line.length();
+        int i = position[0];
+        if (i >= length || line.charAt(i) != '"') {
+            return null;
+        }
+        buffer.setLength(0);
+        i++;
+        while (i < length) {
+            char c = line.charAt(i++);
+            if (c == '"') {
+                position[0] = i;
+                return buffer.toString();
+            }
+            if (c != '\\') {
+                buffer.append(c);
+                continue;
+            }
+            if (i >= length) {
+                return null;
+            }
+            char escaped = line.charAt(i++);
+            switch (escaped) {
+                case '"', '\\', '/' -> buffer.append(escaped);
+                case 'b' -> buffer.append('\b');
+                case 'f' -> buffer.append('\f');
+                case 'n' -> buffer.append('\n');
+                case 'r' -> buffer.append('\r');
+                case 't' -> buffer.append('\t');
+                case 'u' -> {
+                    if (i + 4 > length) {
+                        return null;
+                    }
+                    int code = 0;
+                    for (int j = 0; j < 4; j++) {
+                        int digit = Character.digit(line.charAt(i++), 16);
+                        if (digit < 0) {
+                            return null;
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    buffer.append((char) code);
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int skipWhitespace(CharSequence line, int from, int to) {
+        while (from < to && Character.isWhitespace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,94 @@
+package dev.onechris.extension.transfertool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A translation string parsed once at load. Supports "%s", "%d", indexed "%1$s" arguments and "%%".
+ * Any other "%" is kept as literal text, so translations like "100% free" never fail to format.
+ */
+public final class MessageTemplate {
+
+    private final String raw;
+    // Literal parts; argument i is inserted after literals[i]
+    private final String[] literals;
+    private final int[] arguments;
+
+    private MessageTemplate(String raw, String[] literals, int[] arguments) {
+        this.raw = raw;
+        this.literals = literals;
+        this.arguments = arguments;
+    }
+
+    public static MessageTemplate parse(String raw) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> arguments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int nextArgument = 0;
+
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '%' || i + 1 >= raw.length()) {
+                literal.append(c);
+                continue;
+            }
+
+            char next = raw.charAt(i + 1);
+            if (next == '%') {
+                literal.append('%');
+                i++;
+                continue;
+            }
+
+            int index;
+            int end;
+            if (next == 's' || next == 'd') {
+                index = nextArgument++;
+                end = i + 1;
+            } else {
+                // Indexed argument: %<n>$s
+                int dollar = i + 1;
+                index = 0;
+                char digit;
+                while (dollar < raw.length() && dollar - i <= 3 && (digit = raw.charAt(dollar)) >= '0' && digit <= '9') {
+                    index = index * 10 + digit - '0';
+                    dollar++;
+                }
+                if (index < 1 || dollar + 1 >= raw.length() || raw.charAt(dollar) != '$'
+                        || "sd".indexOf(raw.charAt(dollar + 1)) < 0) {
+                    literal.append(c);
+                    continue;
+                }
+                index--;
+                end = dollar + 1;
+            }
+
+            literals.add(literal.toString());
+            arguments.add(index);
+            literal.setLength(0);
+            i = end;
+        }
+        literals.add(literal.toString());
+
+        return new MessageTemplate(raw, literals.toArray(new String[0]),
+                arguments.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public String format(Object... args) {
+        if (arguments.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder builder = new StringBuilder(raw.length() + 16 * arguments.length);
+        for (int i = 0; i < arguments.length; i++) {
+            builder.append(literals[i]);
+            int index = arguments[i];
+            builder.append(index < args.length ? args[index] : "");
+        }
+        return builder.append(literals[arguments.length]).toString();
+    }
+
+    public String raw() {
+        return raw;
+    }
+}
@@ -0,0 +1,156 @@
+package dev.onechris.extension.transfertool;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Serves {@link TransferMetrics} in the Prometheus text exposition format on "/metrics".
+ */
+public final class MetricsServer {
+
+    private final TransferMetrics metrics;
+    private final Supplier<Collection<TargetHealth>> targets;
+    private final String address;
+    private final int port;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsServer(TransferMetrics metrics, Supplier<Collection<TargetHealth>> targets, String address, int port) {
+        this.metrics = metrics;
+        this.targets = targets;
+        this.address = address;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TransferTool-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", this::handle);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean boundTo(String address, int port) {
+        return this.address.equals(address) && this.port == port;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    String render() {
+        StringBuilder out = new StringBuilder(1024);
+
+        header(out, "transfertool_mapping_hits_total", "counter", "Java transfers that matched a transfer mapping.");
+        for (Map.Entry<String, LongAdder> entry : metrics.mappingHits().entrySet()) {
+            sample(out, "transfertool_mapping_hits_total", "mapping", entry.getKey(), entry.getValue().sum());
+        }
+
+        header(out, "transfertool_rule_hits_total", "counter", "Java transfers that matched a routing rule.");
+        for (Map.Entry<String, LongAdder> entry : metrics.ruleHits().entrySet()) {
+            sample(out, "transfertool_rule_hits_total", "rule", entry.getKey(), entry.getValue().sum());
+        }
+
+        header(out, "transfertool_mapping_misses_total", "counter", "Java transfers without a matching transfer mapping.");
+        sample(out, "transfertool_mapping_misses_total", null, null, metrics.misses());
+
+        header(out, "transfertool_forwarded_total", "counter", "Java transfers forwarded to the original target.");
+        sample(out, "transfertool_forwarded_total", null, null, metrics.forwardedCount());
+
+        header(out, "transfertool_shortcut_transfers_total", "counter", "Command transfers per shortcut.");
+        for (Map.Entry<String, LongAdder> entry : metrics.shortcutTransfers().entrySet()) {
+            sample(out, "transfertool_shortcut_transfers_total", "shortcut", entry.getKey(), entry.getValue().sum());
+        }
+
+        header(out, "transfertool_rejections_total", "counter", "Transfers rejected due to an invalid destination.");
+        for (TransferMetrics.Rejection reason : TransferMetrics.Rejection.values()) {
+            sample(out, "transfertool_rejections_total", "reason", reason.label(), metrics.rejections(reason));
+        }
+
+        header(out, "transfertool_rate_limited_total", "counter", "Transfer command uses denied by the per-player rate limit.");
+        for (RateLimiter.Action action : RateLimiter.Action.values()) {
+            sample(out, "transfertool_rate_limited_total", "action", action.label(), metrics.rateLimitedCount(action));
+        }
+
+        header(out, "transfertool_audit_dropped_total", "counter", "Audit log records dropped because the buffer was full.");
+        sample(out, "transfertool_audit_dropped_total", null, null, metrics.auditDroppedCount());
+
+        header(out, "transfertool_admission_total", "counter", "Transfers over a server's admission limits, by what happened instead.");
+        for (AdmissionControl.Decision decision : AdmissionControl.Decision.values()) {
+            sample(out, "transfertool_admission_total", "decision", decision.label(), metrics.admissionCount(decision));
+        }
+
+        TransferMetrics.LatencyHistogram latency = metrics.eventLatency();
+        long[] counts = latency.counts();
+        header(out, "transfertool_event_duration_seconds", "histogram", "Time spent handling a ServerTransferEvent.");
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            double bound = TransferMetrics.LatencyHistogram.upperBound(i) / 1e9;
+            out.append("transfertool_event_duration_seconds_bucket{le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+        }
+        out.append("transfertool_event_duration_seconds_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append("transfertool_event_duration_seconds_sum ").append(latency.sumNanos() / 1e9).append('\n');
+        out.append("transfertool_event_duration_seconds_count ").append(cumulative).append('\n');
+
+        Collection<TargetHealth> health = targets.get();
+        if (!health.isEmpty()) {
+            header(out, "transfertool_target_healthy", "gauge", "Whether a pooled Bedrock target answers pings.");
+            for (TargetHealth target : health) {
+                sample(out, "transfertool_target_healthy", "target", target.destination().toString(), target.healthy() ? 1 : 0);
+            }
+            header(out, "transfertool_target_latency_seconds", "gauge", "Last ping latency of a pooled Bedrock target.");
+            for (TargetHealth target : health) {
+                if (target.latencyMillis() >= 0) {
+                    out.append("transfertool_target_latency_seconds{target=\"").append(escape(target.destination().toString()))
+                            .append("\"} ").append(target.latencyMillis() / 1e3).append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String value, long sample) {
+        out.append(name);
+        if (label != null) {
+            out.append('{').append(label).append("=\"").append(escape(value)).append("\"}");
+        }
+        out.append(' ').append(sample).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,123 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-player token buckets for the transfer command, keyed by XUID so reconnecting does not reset them.
+ * <p>
+ * Each bucket is a single "theoretical arrival time" (GCRA), updated with a CAS, so no locks are needed.
+ * A bucket that has refilled completely carries no information anymore; such players are swept from the map
+ * at most once per minute, which keeps memory proportional to recently active players.
+ * <p>
+ * The same instance is kept across reloads, so reloading does not hand every player a full bucket again.
+ */
+public final class RateLimiter {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public enum Action {
+        MENU,
+        SHORTCUT,
+        CUSTOM;
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * The configured rates per action; an interval of 0 means unlimited.
+     */
+    private record Rates(boolean enabled, long[] intervalNanos, long[] burstNanos) {
+    }
+
+    private volatile Rates rates;
+    private final Map<String, AtomicLongArray> players = new ConcurrentHashMap<>();
+    // Times are relative to this, so that 0 means "bucket full"
+    private final long origin = System.nanoTime();
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    public RateLimiter(Config.RateLimits settings) {
+        configure(settings);
+    }
+
+    /**
+     * Applies new rates. The buckets of players are kept and simply refill at the new rates from now on.
+     */
+    public void configure(Config.RateLimits settings) {
+        long[] intervalNanos = new long[Action.values().length];
+        long[] burstNanos = new long[Action.values().length];
+        configure(Action.MENU, settings.menu(), intervalNanos, burstNanos);
+        configure(Action.SHORTCUT, settings.shortcut(), intervalNanos, burstNanos);
+        configure(Action.CUSTOM, settings.custom(), intervalNanos, burstNanos);
+        this.rates = new Rates(settings.enabled(), intervalNanos, burstNanos);
+    }
+
+    private static void configure(Action action, Config.RateLimits.Bucket bucket, long[] intervalNanos, long[] burstNanos) {
+        if (bucket.capacity() > 0 && bucket.refillMillis() > 0) {
+            intervalNanos[action.ordinal()] = TimeUnit.MILLISECONDS.toNanos(bucket.refillMillis());
+            burstNanos[action.ordinal()] = intervalNanos[action.ordinal()] * bucket.capacity();
+        }
+    }
+
+    /**
+     * Takes a token for the action if one is available.
+     *
+     * @return 0 if the action is allowed, otherwise the nanoseconds until it will be
+     */
+    public long tryAcquire(GeyserConnection connection, Action action) {
+        Rates rates = this.rates;
+        int index = action.ordinal();
+        long interval = rates.intervalNanos()[index];
+        if (!rates.enabled() || interval == 0) {
+            return 0;
+        }
+
+        long now = System.nanoTime() - origin;
+        sweep(now);
+
+        AtomicLongArray buckets = players.computeIfAbsent(key(connection), $ -> new AtomicLongArray(Action.values().length));
+        while (true) {
+            long arrival = buckets.get(index);
+            long next = Math.max(arrival, now) + interval;
+            long wait = next - now - rates.burstNanos()[index];
+            if (wait > 0) {
+                return wait;
+            }
+            if (buckets.compareAndSet(index, arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public int size() {
+        return players.size();
+    }
+
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        // A concurrent acquire on a removed player only loses that one token; not worth a lock
+        players.values().removeIf(buckets -> {
+            for (int i = 0; i < buckets.length(); i++) {
+                if (buckets.get(i) > now) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private static String key(GeyserConnection connection) {
+        String xuid = connection.xuid();
+        return xuid == null || xuid.isEmpty() ? connection.name() : xuid;
+    }
+}
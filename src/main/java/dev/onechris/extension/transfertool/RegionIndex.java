@@ -0,0 +1,328 @@
+package dev.onechris.extension.transfertool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Longest-prefix-match index from CIDR ranges to region names: a path-compressed binary (Patricia) trie over
+ * 128-bit addresses, with IPv4 in ::ffff:0:0/96. Nodes are packed into a single long array, so lookups neither
+ * allocate nor chase object pointers, and large IPv4 tables skip the first 16 address bits with a jump table.
+ * Immutable once built.
+ */
+public final class RegionIndex {
+    // Node layout in NODE_LONGS consecutive longs, so visiting a node touches a single cache line
+    private static final int NODE_LONGS = 4;
+    private static final int HI = 0;
+    private static final int LO = 1;
+    // length << 32 | value index (or -1)
+    private static final int META = 2;
+    // zero child << 32 | one child (or -1 each)
+    private static final int CHILDREN = 3;
+    // IPv4 lookups start at the first node of at least ::ffff:a.b.0.0/112 on their path
+    private static final int IPV4_JUMP_BITS = 112;
+    private static final int IPV4_JUMP_MIN_NODES = 4096;
+
+    public static final RegionIndex EMPTY = new Builder().build();
+
+    private final long[] nodes;
+    private final String[] regions;
+    // Per top 16 bits of an IPv4 address: the node to continue at (or -1), and the best value above it (or -1)
+    private final int[] ipv4Start;
+    private final int[] ipv4Best;
+
+    private RegionIndex(long[] nodes, String[] regions) {
+        this.nodes = nodes;
+        this.regions = regions;
+        if (nodes() < IPV4_JUMP_MIN_NODES) {
+            this.ipv4Start = null;
+            this.ipv4Best = null;
+            return;
+        }
+
+        this.ipv4Start = new int[1 << 16];
+        this.ipv4Best = new int[1 << 16];
+        for (int prefix = 0; prefix < 1 << 16; prefix++) {
+            long lo = InetLiterals.IPV4_MAPPED_PREFIX | (long) prefix << 16;
+            int best = -1;
+            int node = 0;
+            while (node >= 0) {
+                int offset = node * NODE_LONGS;
+                int bits = (int) (nodes[offset + META] >>> 32);
+                if (bits >= IPV4_JUMP_BITS) {
+                    break;
+                }
+                if (commonPrefix(0, lo, nodes[offset + HI], nodes[offset + LO], bits) < bits) {
+                    node = -1;
+                    break;
+                }
+                int value = (int) nodes[offset + META];
+                if (value >= 0) {
+                    best = value;
+                }
+                node = child(nodes[offset + CHILDREN], bit(0, lo, bits));
+            }
+            ipv4Start[prefix] = node;
+            ipv4Best[prefix] = best;
+        }
+    }
+
+    public int nodes() {
+        return nodes.length / NODE_LONGS;
+    }
+
+    public List<String> regions() {
+        return List.of(regions);
+    }
+
+    /**
+     * @return the region of the most specific range containing the address, or null if there is none
+     */
+    public String lookup(long hi, long lo) {
+        int best = -1;
+        int node = 0;
+        if (ipv4Start != null && hi == 0 && (lo & 0xFFFF_FFFF_0000_0000L) == InetLiterals.IPV4_MAPPED_PREFIX) {
+            int prefix = (int) (lo >>> 16) & 0xFFFF;
+            best = ipv4Best[prefix];
+            node = ipv4Start[prefix];
+        }
+        long[] nodes = this.nodes;
+        while (node >= 0) {
+            int offset = node * NODE_LONGS;
+            long meta = nodes[offset + META];
+            int bits = (int) (meta >>> 32);
+            if (commonPrefix(hi, lo, nodes[offset + HI], nodes[offset + LO], bits) < bits) {
+                break;
+            }
+            if ((int) meta >= 0) {
+                best = (int) meta;
+            }
+            if (bits == 128) {
+                break;
+            }
+            node = child(nodes[offset + CHILDREN], bit(hi, lo, bits));
+        }
+        return best < 0 ? null : regions[best];
+    }
+
+    private static int child(long children, int side) {
+        return side == 0 ? (int) (children >> 32) : (int) children;
+    }
+
+    /**
+     * Reads "network,region[,...]" lines, e.g. "203.0.113.0/24,eu" or a GeoIP-style CSV (selecting the column with
+     * the region). Lines that do not start with a CIDR range, such as headers and # comments, are skipped.
+     *
+     * @param regionColumn the zero-based column containing the region name
+     */
+    public static RegionIndex load(Path file, int regionColumn, Consumer<String> warnings) throws IOException {
+        Builder builder = new Builder();
+        long[] address = new long[2];
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!add(builder, line, regionColumn, address)) {
+                    skipped++;
+                }
+            }
+        }
+        // A header line is expected
+        if (skipped > 1) {
+            warnings.accept("Skipped " + skipped + " lines without a valid CIDR range and region in " + file);
+        }
+        return builder.build();
+    }
+
+    private static boolean add(Builder builder, String line, int regionColumn, long[] address) {
+        int end = line.indexOf(',');
+        int slash = line.indexOf('/');
+        if (end < 0 || slash < 0 || slash > end) {
+            return false;
+        }
+
+        int prefix = parsePrefix(line, slash + 1, end);
+        if (prefix < 0 || !InetLiterals.parseAny(line, 0, slash, address)) {
+            return false;
+        }
+        if (InetLiterals.parseIpv4(line, 0, slash) >= 0) {
+            prefix = prefix > 32 ? -1 : prefix + 96;
+        }
+        if (prefix < 0 || prefix > 128) {
+            return false;
+        }
+
+        // Find the region column
+        int start = end + 1;
+        for (int column = 1; column < regionColumn && start > 0; column++) {
+            start = line.indexOf(',', start) + 1;
+        }
+        if (start <= 0) {
+            return false;
+        }
+        int stop = line.indexOf(',', start);
+        String region = line.substring(start, stop < 0 ? line.length() : stop).trim();
+        if (region.length() > 1 && region.charAt(0) == '"' && region.charAt(region.length() - 1) == '"') {
+            region = region.substring(1, region.length() - 1);
+        }
+        if (region.isEmpty()) {
+            return false;
+        }
+
+        builder.insert(address[0], address[1], prefix, region);
+        return true;
+    }
+
+    private static int parsePrefix(String line, int from, int to) {
+        if (from >= to || to - from > 3) {
+            return -1;
+        }
+        int prefix = 0;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            prefix = prefix * 10 + (c - '0');
+        }
+        return prefix;
+    }
+
+    static int bit(long hi, long lo, int index) {
+        return (int) (index < 64 ? hi >>> (63 - index) : lo >>> (127 - index)) & 1;
+    }
+
+    /**
+     * @return the number of leading bits (at most {@code limit}) both addresses share
+     */
+    static int commonPrefix(long aHi, long aLo, long bHi, long bLo, int limit) {
+        long hi = aHi ^ bHi;
+        int common = hi != 0 ? Long.numberOfLeadingZeros(hi) : 64 + Long.numberOfLeadingZeros(aLo ^ bLo);
+        return Math.min(common, limit);
+    }
+
+    static long maskHi(long hi, int bits) {
+        return bits >= 64 ? hi : bits == 0 ? 0 : hi & (-1L << (64 - bits));
+    }
+
+    static long maskLo(long lo, int bits) {
+        return bits >= 128 ? lo : bits <= 64 ? 0 : lo & (-1L << (128 - bits));
+    }
+
+    /**
+     * Grows the node arrays while inserting; node 0 is the root (the empty prefix).
+     */
+    public static final class Builder {
+        private long[] keyHi = new long[16];
+        private long[] keyLo = new long[16];
+        private byte[] length = new byte[16];
+        private int[] zero = new int[16];
+        private int[] one = new int[16];
+        private int[] value = new int[16];
+        private int size;
+        private final Map<String, Integer> regionIds = new HashMap<>();
+        private final List<String> regions = new ArrayList<>();
+
+        public Builder() {
+            node(0, 0, 0, -1);
+        }
+
+        /**
+         * Adds a range; a range that was already added gets the new region.
+         */
+        public Builder insert(long hi, long lo, int bits, String region) {
+            hi = maskHi(hi, bits);
+            lo = maskLo(lo, bits);
+            Integer id = regionIds.get(region);
+            if (id == null) {
+                id = regions.size();
+                regionIds.put(region, id);
+                regions.add(region);
+            }
+
+            int node = 0;
+            while (true) {
+                int nodeBits = length[node] & 0xFF;
+                if (bits == nodeBits) {
+                    value[node] = id;
+                    return this;
+                }
+
+                int side = bit(hi, lo, nodeBits);
+                int child = side == 0 ? zero[node] : one[node];
+                if (child < 0) {
+                    setChild(node, side, node(hi, lo, bits, id));
+                    return this;
+                }
+
+                int childBits = length[child] & 0xFF;
+                int common = commonPrefix(hi, lo, keyHi[child], keyLo[child], Math.min(bits, childBits));
+                if (common == childBits) {
+                    node = child;
+                    continue;
+                }
+
+                int inserted;
+                if (common == bits) {
+                    // The new range contains the child
+                    inserted = node(hi, lo, bits, id);
+                } else {
+                    // Diverging below the node: split with a value-less branch node
+                    inserted = node(maskHi(hi, common), maskLo(lo, common), common, -1);
+                    int leaf = node(hi, lo, bits, id);
+                    setChild(inserted, bit(hi, lo, common), leaf);
+                }
+                setChild(inserted, bit(keyHi[child], keyLo[child], common), child);
+                setChild(node, side, inserted);
+                return this;
+            }
+        }
+
+        private void setChild(int node, int side, int child) {
+            if (side == 0) {
+                zero[node] = child;
+            } else {
+                one[node] = child;
+            }
+        }
+
+        private int node(long hi, long lo, int bits, int id) {
+            if (size == value.length) {
+                int capacity = size + (size >> 1);
+                keyHi = Arrays.copyOf(keyHi, capacity);
+                keyLo = Arrays.copyOf(keyLo, capacity);
+                length = Arrays.copyOf(length, capacity);
+                zero = Arrays.copyOf(zero, capacity);
+                one = Arrays.copyOf(one, capacity);
+                value = Arrays.copyOf(value, capacity);
+            }
+            keyHi[size] = hi;
+            keyLo[size] = lo;
+            length[size] = (byte) bits;
+            zero[size] = -1;
+            one[size] = -1;
+            value[size] = id;
+            return size++;
+        }
+
+        public RegionIndex build() {
+            long[] nodes = new long[size * NODE_LONGS];
+            for (int node = 0; node < size; node++) {
+                int offset = node * NODE_LONGS;
+                nodes[offset + HI] = keyHi[node];
+                nodes[offset + LO] = keyLo[node];
+                nodes[offset + META] = (long) (length[node] & 0xFF) << 32 | (value[node] & 0xFFFF_FFFFL);
+                nodes[offset + CHILDREN] = (long) zero[node] << 32 | (one[node] & 0xFFFF_FFFFL);
+            }
+            return new RegionIndex(nodes, regions.toArray(new String[0]));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resolves the region of a player from their client address. The {@link RegionIndex} is (re)built on a
+ * background thread and swapped in once complete; until then, and for addresses outside of all ranges,
+ * players have no region. The region of a connection is looked up once and cached.
+ */
+public final class RegionLocator {
+    private static final String NO_REGION = "";
+
+    private final ExtensionLogger logger;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TransferTool-Regions");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile RegionIndex index = RegionIndex.EMPTY;
+    private volatile Map<GeyserConnection, String> cache = new ConcurrentHashMap<>();
+    // Only touched by the loader thread
+    private String loadedFingerprint;
+
+    public RegionLocator(ExtensionLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Rebuilds the index in the background if the file (or the column to read) changed since the last load.
+     */
+    public void load(Path file, int regionColumn) {
+        loader.execute(() -> {
+            String fingerprint;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                fingerprint = file + ":" + regionColumn + ":" + attributes.lastModifiedTime().toMillis() + ":" + attributes.size();
+            } catch (IOException e) {
+                logger.error("Unable to read the TransferTool region file " + file + "! " + e.getMessage());
+                return;
+            }
+            if (fingerprint.equals(loadedFingerprint)) {
+                return;
+            }
+
+            try {
+                long start = System.nanoTime();
+                RegionIndex loaded = RegionIndex.load(file, regionColumn, logger::warning);
+                swap(loaded);
+                loadedFingerprint = fingerprint;
+                logger.info("Loaded %s regions (%s index nodes) in %s ms.".formatted(loaded.regions().size(),
+                        loaded.nodes(), (System.nanoTime() - start) / 1_000_000));
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unable to load the TransferTool region file " + file + "! " + e.getMessage());
+            }
+        });
+    }
+
+    public void stop() {
+        loader.shutdownNow();
+        swap(RegionIndex.EMPTY);
+    }
+
+    private void swap(RegionIndex index) {
+        this.index = index;
+        // Regions resolved with the previous index may be outdated
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the region of the player, or null if it is unknown
+     */
+    public String region(GeyserConnection connection) {
+        Map<GeyserConnection, String> cache = this.cache;
+        String region = cache.get(connection);
+        if (region == null) {
+            region = lookup(index, connection.socketAddress());
+            cache.put(connection, region == null ? NO_REGION : region);
+            return region;
+        }
+        return region.isEmpty() ? null : region;
+    }
+
+    public void forget(GeyserConnection connection) {
+        cache.remove(connection);
+    }
+
+    static String lookup(RegionIndex index, InetSocketAddress socketAddress) {
+        InetAddress address = socketAddress == null ? null : socketAddress.getAddress();
+        if (address instanceof Inet4Address) {
+            // The hash code of an IPv4 address is the address itself, and unlike getAddress() does not copy
+            return index.lookup(0, InetLiterals.IPV4_MAPPED_PREFIX | (address.hashCode() & 0xFFFF_FFFFL));
+        }
+        if (address instanceof Inet6Address) {
+            byte[] bytes = address.getAddress();
+            long hi = 0;
+            long lo = 0;
+            for (int i = 0; i < 8; i++) {
+                hi = hi << 8 | (bytes[i] & 0xFF);
+                lo = lo << 8 | (bytes[i + 8] & 0xFF);
+            }
+            return index.lookup(hi, lo);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,107 @@
+package dev.onechris.extension.transfertool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Per-region overrides of transfer mapping and shortcut targets, indexed by {@link Route#id()} and shortcut index.
+ */
+public final class RegionalTargets {
+    public static final RegionalTargets EMPTY = new RegionalTargets(Map.of(), Map.of());
+
+    private final Map<String, TargetPool[]> routes;
+    private final Map<String, TargetPool[]> shortcuts;
+
+    private RegionalTargets(Map<String, TargetPool[]> routes, Map<String, TargetPool[]> shortcuts) {
+        this.routes = routes;
+        this.shortcuts = shortcuts;
+    }
+
+    public boolean isEmpty() {
+        return routes.isEmpty() && shortcuts.isEmpty();
+    }
+
+    /**
+     * @return the pool for the mapping in the region, or null if the region does not override it
+     */
+    public TargetPool route(String region, Route route) {
+        TargetPool[] pools = region == null ? null : routes.get(region);
+        return pools == null ? null : pools[route.id()];
+    }
+
+    /**
+     * @return the pool for the shortcut in the region, or null if the region does not override it
+     */
+    public TargetPool shortcut(String region, int index) {
+        TargetPool[] pools = region == null ? null : shortcuts.get(region);
+        return pools == null ? null : pools[index];
+    }
+
+    public List<TargetPool> pools() {
+        List<TargetPool> pools = new ArrayList<>();
+        for (TargetPool[] table : routes.values()) {
+            addAll(pools, table);
+        }
+        for (TargetPool[] table : shortcuts.values()) {
+            addAll(pools, table);
+        }
+        return pools;
+    }
+
+    private static void addAll(List<TargetPool> pools, TargetPool[] table) {
+        for (TargetPool pool : table) {
+            if (pool != null) {
+                pools.add(pool);
+            }
+        }
+    }
+
+    public static RegionalTargets compile(Config.Regions config, RoutingTable table, Shortcuts shortcuts,
+                                          Function<String, TargetPool> parser, Consumer<String> warnings) {
+        if (!config.enabled()) {
+            return EMPTY;
+        }
+
+        Map<String, Integer> routeIds = new HashMap<>();
+        for (Route route : table.routes()) {
+            routeIds.put(route.source(), route.id());
+        }
+        Map<String, TargetPool[]> routes = compile(config.mappings(), table.size(), routeIds::get,
+                "transfer mapping", parser, warnings);
+        Map<String, TargetPool[]> shortcutPools = compile(config.shortcuts(), shortcuts.size(), name -> {
+            int index = shortcuts.indexOf(name);
+            return index < 0 ? null : index;
+        }, "shortcut", parser, warnings);
+        return routes.isEmpty() && shortcutPools.isEmpty() ? EMPTY : new RegionalTargets(routes, shortcutPools);
+    }
+
+    private static Map<String, TargetPool[]> compile(Map<String, Map<String, String>> overrides, int size,
+                                                     Function<String, Integer> ids, String kind,
+                                                     Function<String, TargetPool> parser, Consumer<String> warnings) {
+        Map<String, TargetPool[]> compiled = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> region : overrides.entrySet()) {
+            TargetPool[] pools = new TargetPool[size];
+            boolean any = false;
+            for (Map.Entry<String, String> entry : region.getValue().entrySet()) {
+                Integer id = ids.apply(entry.getKey());
+                if (id == null) {
+                    warnings.accept("Region " + region.getKey() + " refers to unknown " + kind + " " + entry.getKey());
+                    continue;
+                }
+                TargetPool pool = parser.apply(entry.getValue());
+                if (pool != null) {
+                    pools[id] = pool;
+                    any = true;
+                }
+            }
+            if (any) {
+                compiled.put(region.getKey(), pools);
+            }
+        }
+        return Map.copyOf(compiled);
+    }
+}
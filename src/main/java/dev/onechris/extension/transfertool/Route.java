@@ -0,0 +1,26 @@
+package dev.onechris.extension.transfertool;
+
+/**
+ * A compiled transfer mapping.
+ *
+ * @param id the index of this route within its {@link RoutingTable}
+ * @param source the mapping key as written in the config
+ * @param targets the Bedrock destination(s); for port ranges this holds the first port of the target range
+ * @param portStart first Java port matched by this route
+ * @param portEnd last Java port matched by this route (inclusive)
+ * @param portRange whether the target port is offset by the position of the Java port within the source range
+ */
+public record Route(int id, String source, TargetPool targets, int portStart, int portEnd, boolean portRange) {
+
+    public boolean matchesPort(int port) {
+        return port >= portStart && port <= portEnd;
+    }
+
+    public int targetPort(Destination selected, int javaPort) {
+        return portRange ? selected.port() + (javaPort - portStart) : selected.port();
+    }
+
+    int width() {
+        return portEnd - portStart;
+    }
+}
@@ -0,0 +1,346 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.floodgate.util.DeviceOs;
+import org.geysermc.floodgate.util.InputMode;
+import org.geysermc.geyser.api.connection.GeyserConnection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The configured routing rules, compiled into one bitmask table per condition: bit {@code i} of an entry is set
+ * if rule {@code i} accepts that value (or has no such condition). Matching ANDs one entry per condition and
+ * takes the lowest set bit, i.e. the first matching rule in config order; no rule is interpreted per transfer.
+ * <p>
+ * Conditions that cannot change during a session (device, version, locale, XUID) are combined once per
+ * connection and cached until it disconnects or the rules are reloaded.
+ */
+public final class RoutingRules {
+    public static final int MAX_RULES = Long.SIZE;
+
+    private static final int DEVICES = DeviceOs.values().length;
+    private static final int INPUTS = InputMode.values().length;
+    // XUID buckets, i.e. a resolution of 0.01%
+    private static final int BUCKETS = 10_000;
+    // The highest value of a single version part
+    private static final int MAX_PART = 999;
+
+    public static final RoutingRules EMPTY = new RoutingRules(new Rule[0], new long[1], new long[DEVICES],
+            new long[INPUTS], 0, Map.of(), new int[]{0}, new long[]{0}, 0, new int[]{0}, new long[]{0});
+
+    /**
+     * @param id the position of the rule among the accepted rules
+     * @param admissionReason the audit reason of a transfer turned away by admission control
+     * @param overflowReason the audit reason of a transfer sent to an overflow server
+     */
+    public record Rule(int id, String name, TargetPool targets, String admissionReason, String overflowReason) {
+
+        public Rule(int id, String name, TargetPool targets) {
+            this(id, name, targets, name + " (admission)", name + " (overflow)");
+        }
+    }
+
+    private final Rule[] rules;
+    // Indexed by Route#id(); the last entry is for Java transfers without a matching mapping
+    private final long[] routeMasks;
+    private final long[] deviceMasks;
+    private final long[] inputMasks;
+    private final long anyLocaleMask;
+    private final Map<String, Long> localeMasks;
+    // Sorted lower bounds of version / bucket intervals, and the mask of each interval
+    private final int[] versionBounds;
+    private final long[] versionMasks;
+    // Rules without a version range, the only ones matching clients with an unknown version
+    private final long anyVersionMask;
+    private final int[] bucketBounds;
+    private final long[] bucketMasks;
+
+    private final Map<GeyserConnection, Long> playerMasks = new ConcurrentHashMap<>();
+
+    private RoutingRules(Rule[] rules, long[] routeMasks, long[] deviceMasks, long[] inputMasks,
+                         long anyLocaleMask, Map<String, Long> localeMasks, int[] versionBounds, long[] versionMasks,
+                         long anyVersionMask, int[] bucketBounds, long[] bucketMasks) {
+        this.rules = rules;
+        this.routeMasks = routeMasks;
+        this.deviceMasks = deviceMasks;
+        this.inputMasks = inputMasks;
+        this.anyLocaleMask = anyLocaleMask;
+        this.localeMasks = localeMasks;
+        this.versionBounds = versionBounds;
+        this.versionMasks = versionMasks;
+        this.anyVersionMask = anyVersionMask;
+        this.bucketBounds = bucketBounds;
+        this.bucketMasks = bucketMasks;
+    }
+
+    /**
+     * @param pools creates the target pool of a rule
+     */
+    public static RoutingRules compile(List<Config.RoutingRule> configured, RoutingTable table,
+                                       Function<String, TargetPool> pools, Consumer<String> warnings) {
+        List<Config.RoutingRule> accepted = new ArrayList<>();
+        List<Rule> rules = new ArrayList<>();
+        for (Config.RoutingRule rule : configured) {
+            String name = rule.name() == null || rule.name().isBlank() ? "#" + (rules.size() + 1) : rule.name();
+            if (rules.size() == MAX_RULES) {
+                warnings.accept("Ignoring routing rule " + name + ": at most " + MAX_RULES + " rules are supported.");
+                continue;
+            }
+            TargetPool pool = rule.target() == null ? null : pools.apply(rule.target());
+            if (pool == null) {
+                warnings.accept("Ignoring routing rule " + name + " without a valid target.");
+                continue;
+            }
+            accepted.add(rule);
+            rules.add(new Rule(rules.size(), name, pool));
+        }
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, Integer> routeIds = new HashMap<>();
+        for (Route route : table.routes()) {
+            routeIds.put(route.source(), route.id());
+        }
+
+        long[] routeMasks = new long[table.size() + 1];
+        long anyRouteMask = 0;
+        long[] deviceMasks = new long[DEVICES];
+        long[] inputMasks = new long[INPUTS];
+        long anyLocaleMask = 0;
+        long anyVersionMask = 0;
+        Map<String, Long> localeMasks = new HashMap<>();
+        int[][] versionRanges = new int[rules.size()][];
+        int[] bucketLimits = new int[rules.size()];
+
+        for (int i = 0; i < rules.size(); i++) {
+            Config.RoutingRule rule = accepted.get(i);
+            String name = rules.get(i).name();
+            long bit = 1L << i;
+
+            if (rule.mappings().isEmpty()) {
+                anyRouteMask |= bit;
+            }
+            for (String mapping : rule.mappings()) {
+                Integer id = routeIds.get(mapping);
+                if (id == null) {
+                    warnings.accept("Routing rule " + name + " refers to unknown transfer mapping " + mapping);
+                } else {
+                    routeMasks[id] |= bit;
+                }
+            }
+
+            fill(deviceMasks, bit, rule.deviceOs(), DeviceOs.class, name, warnings);
+            fill(inputMasks, bit, rule.inputMode(), InputMode.class, name, warnings);
+
+            if (rule.locales().isEmpty()) {
+                anyLocaleMask |= bit;
+            }
+            for (String locale : rule.locales()) {
+                localeMasks.merge(LanguageManager.normalize(locale), bit, (a, b) -> a | b);
+            }
+
+            int min = rule.minVersion().isBlank() ? 0 : parseVersion(rule.minVersion());
+            int max = rule.maxVersion().isBlank() ? Integer.MAX_VALUE - 1 : parseVersion(rule.maxVersion(), MAX_PART);
+            if (min < 0 || max < 0) {
+                warnings.accept("Routing rule " + name + " has an invalid version range; ignoring it.");
+                min = 0;
+                max = Integer.MAX_VALUE - 1;
+            }
+            if (min == 0 && max == Integer.MAX_VALUE - 1) {
+                anyVersionMask |= bit;
+            }
+            versionRanges[i] = new int[]{min, max + 1};
+            bucketLimits[i] = (int) Math.round(Math.max(0, Math.min(100, rule.xuidPercent())) * (BUCKETS / 100));
+        }
+
+        for (int i = 0; i < routeMasks.length; i++) {
+            routeMasks[i] |= anyRouteMask;
+        }
+
+        // Version intervals between all range bounds
+        TreeSet<Integer> bounds = new TreeSet<>();
+        bounds.add(0);
+        for (int[] range : versionRanges) {
+            bounds.add(range[0]);
+            bounds.add(range[1]);
+        }
+        int[] versionBounds = bounds.stream().mapToInt(Integer::intValue).toArray();
+        long[] versionMasks = new long[versionBounds.length];
+        for (int b = 0; b < versionBounds.length; b++) {
+            for (int i = 0; i < versionRanges.length; i++) {
+                if (versionBounds[b] >= versionRanges[i][0] && versionBounds[b] < versionRanges[i][1]) {
+                    versionMasks[b] |= 1L << i;
+                }
+            }
+        }
+
+        // Bucket intervals: a rule accepts buckets below its limit
+        TreeSet<Integer> limits = new TreeSet<>();
+        limits.add(0);
+        for (int limit : bucketLimits) {
+            limits.add(limit);
+        }
+        int[] bucketBounds = limits.stream().mapToInt(Integer::intValue).toArray();
+        long[] bucketMasks = new long[bucketBounds.length];
+        for (int b = 0; b < bucketBounds.length; b++) {
+            for (int i = 0; i < bucketLimits.length; i++) {
+                if (bucketBounds[b] < bucketLimits[i]) {
+                    bucketMasks[b] |= 1L << i;
+                }
+            }
+        }
+
+        return new RoutingRules(rules.toArray(new Rule[0]), routeMasks, deviceMasks, inputMasks, anyLocaleMask,
+                Map.copyOf(localeMasks), versionBounds, versionMasks, anyVersionMask, bucketBounds, bucketMasks);
+    }
+
+    private static <E extends Enum<E>> void fill(long[] masks, long bit, List<String> values, Class<E> type,
+                                                 String rule, Consumer<String> warnings) {
+        if (values.isEmpty()) {
+            for (int i = 0; i < masks.length; i++) {
+                masks[i] |= bit;
+            }
+            return;
+        }
+        for (String value : values) {
+            try {
+                masks[Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT)).ordinal()] |= bit;
+            } catch (IllegalArgumentException e) {
+                warnings.accept("Routing rule " + rule + " refers to unknown " + type.getSimpleName() + " " + value
+                        + "; possible values: " + Arrays.toString(type.getEnumConstants()));
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    public List<Rule> rules() {
+        return List.of(rules);
+    }
+
+    /**
+     * @param route the mapping matching the Java transfer, or null if there is none
+     * @return the first rule matching the transfer, or null
+     */
+    public Rule match(Route route, GeyserConnection connection) {
+        if (rules.length == 0) {
+            return null;
+        }
+        long mask = route == null ? routeMasks[routeMasks.length - 1] : routeMasks[route.id()];
+        if (mask == 0) {
+            return null;
+        }
+
+        InputMode inputMode = connection.inputMode();
+        mask &= inputMasks[(inputMode == null ? InputMode.UNKNOWN : inputMode).ordinal()];
+        if (mask == 0) {
+            return null;
+        }
+
+        Long playerMask = playerMasks.get(connection);
+        if (playerMask == null) {
+            playerMask = playerMask(connection);
+            playerMasks.put(connection, playerMask);
+        }
+        mask &= playerMask;
+        return mask == 0 ? null : rules[Long.numberOfTrailingZeros(mask)];
+    }
+
+    public void forget(GeyserConnection connection) {
+        playerMasks.remove(connection);
+    }
+
+    private long playerMask(GeyserConnection connection) {
+        DeviceOs device = connection.platform();
+        long mask = deviceMasks[(device == null ? DeviceOs.UNKNOWN : device).ordinal()];
+
+        String locale = connection.locale();
+        long localeMask = anyLocaleMask;
+        if (locale != null) {
+            String normalized = LanguageManager.normalize(locale);
+            localeMask |= localeMasks.getOrDefault(normalized, 0L);
+            String language = LanguageManager.language(normalized);
+            if (!language.equals(normalized)) {
+                localeMask |= localeMasks.getOrDefault(language, 0L);
+            }
+        }
+        mask &= localeMask;
+
+        String version = connection.version();
+        int parsed = version == null ? -1 : parseVersion(version);
+        mask &= parsed < 0 ? anyVersionMask : intervalMask(versionBounds, versionMasks, parsed);
+
+        mask &= intervalMask(bucketBounds, bucketMasks, bucket(connection.xuid()));
+        return mask;
+    }
+
+    private static long intervalMask(int[] bounds, long[] masks, int value) {
+        int index = Arrays.binarySearch(bounds, value);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index < 0 ? 0 : masks[index];
+    }
+
+    /**
+     * @return the stable bucket (0-9999) of a XUID. Players without one are put into the last bucket,
+     * i.e. only match rules without a percentage.
+     */
+    static int bucket(String xuid) {
+        if (xuid == null || xuid.isEmpty()) {
+            return BUCKETS - 1;
+        }
+        long hash = AffinityStore.hash(xuid);
+        hash ^= hash >>> 33;
+        return (int) Long.remainderUnsigned(hash, BUCKETS);
+    }
+
+    /**
+     * @return "1.21.50" as 1021050, or -1 if it is not a version. Left out parts count as 0.
+     */
+    static int parseVersion(String version) {
+        return parseVersion(version, 0);
+    }
+
+    /**
+     * @param missing the value of parts left out, e.g. {@link #MAX_PART} for an upper bound, so "1.21" includes 1.21.50
+     * @return "1.21.50" as 1021050, or -1 if it is not a version
+     */
+    static int parseVersion(String version, int missing) {
+        int[] parts = {0, missing, missing};
+        int part = 0;
+        boolean digits = false;
+        for (int i = 0; i < version.length(); i++) {
+            char c = version.charAt(i);
+            if (c >= '0' && c <= '9') {
+                parts[part] = digits ? parts[part] * 10 + (c - '0') : c - '0';
+                if (parts[part] > MAX_PART) {
+                    return -1;
+                }
+                digits = true;
+            } else if (c == '.' && digits && part < 2) {
+                part++;
+                digits = false;
+            } else {
+                // e.g. a fourth component or a suffix; ignore the rest
+                break;
+            }
+        }
+        return digits || part > 0 ? parts[0] * 1_000_000 + parts[1] * 1_000 + parts[2] : -1;
+    }
+}
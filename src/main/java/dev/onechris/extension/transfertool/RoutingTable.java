@@ -0,0 +1,599 @@
+package dev.onechris.extension.transfertool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Immutable lookup structure compiled from the "transfer-mappings" config section.
+ * <p>
+ * Supported keys:
+ * <ul>
+ *     <li>hostnames ({@code play.example.com}), matched case-insensitively and ignoring a trailing dot</li>
+ *     <li>wildcards ({@code *.lobby.example.com}), matching any subdomain; the longest suffix wins</li>
+ *     <li>IPv4 / IPv6 literals and CIDR ranges ({@code 10.0.0.0/8}, {@code [2001:db8::/32]}); the longest prefix wins</li>
+ *     <li>{@code *}, matching any host that nothing else matched</li>
+ * </ul>
+ * Each key may be followed by a port ({@code :25565}), a port range ({@code :25565-25600}) or {@code :*}.
+ * Without a port, the default Java port is used. If both source and target specify a range of equal size,
+ * Java ports are mapped onto the Bedrock range by their offset.
+ * Targets may be a comma separated list of equivalent Bedrock servers, which then form a {@link TargetPool}.
+ * <p>
+ * Host specificity is resolved first; if a host matches but none of its ports do, less specific hosts are tried.
+ * Within a host, an exact port beats the narrowest containing range.
+ */
+public final class RoutingTable {
+
+    public static final int DEFAULT_JAVA_PORT = 25565;
+    public static final int DEFAULT_BEDROCK_PORT = 19132;
+
+    public static final RoutingTable EMPTY = compile(Map.of(), $ -> null, message -> {});
+
+    private static final ThreadLocal<long[]> ADDRESS_SCRATCH = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final Route[] routes;
+    // Parsed form of every accepted mapping, so the next compile can skip unchanged ones
+    private final Map<String, Compiled> compiled;
+    private final int recompiled;
+    private final HostTable exactHosts;
+    private final HostTable wildcardHosts;
+    private final PortRules anyHost;
+
+    // Open addressing table over (masked address, prefix length); IPv4 lives in ::ffff:0:0/96
+    private final long[] addressHi;
+    private final long[] addressLo;
+    private final int[] addressPrefix;
+    private final PortRules[] addressRules;
+    private final int addressMask;
+    private final int[] prefixLengths;
+
+    private RoutingTable(Route[] routes, Map<String, Compiled> compiled, int recompiled, HostTable exactHosts,
+                         HostTable wildcardHosts, PortRules anyHost, Map<AddressKey, PortRules> addresses) {
+        this.routes = routes;
+        this.compiled = compiled;
+        this.recompiled = recompiled;
+        this.exactHosts = exactHosts;
+        this.wildcardHosts = wildcardHosts;
+        this.anyHost = anyHost;
+
+        int capacity = tableCapacity(addresses.size());
+        this.addressHi = new long[capacity];
+        this.addressLo = new long[capacity];
+        this.addressPrefix = new int[capacity];
+        this.addressRules = new PortRules[capacity];
+        this.addressMask = capacity - 1;
+
+        TreeSet<Integer> prefixes = new TreeSet<>(Comparator.reverseOrder());
+        for (Map.Entry<AddressKey, PortRules> entry : addresses.entrySet()) {
+            AddressKey key = entry.getKey();
+            prefixes.add(key.prefix());
+            int slot = addressHash(key.hi(), key.lo(), key.prefix()) & addressMask;
+            while (addressRules[slot] != null) {
+                slot = (slot + 1) & addressMask;
+            }
+            addressHi[slot] = key.hi();
+            addressLo[slot] = key.lo();
+            addressPrefix[slot] = key.prefix();
+            addressRules[slot] = entry.getValue();
+        }
+        this.prefixLengths = prefixes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Finds the most specific route for the given Java host and port. Does not allocate for ASCII hosts.
+     *
+     * @return the matching route, or null if there is none
+     */
+    public Route lookup(String host, int port) {
+        int from = 0;
+        int to = host.length();
+        if (to > 0 && host.charAt(to - 1) == '.') {
+            to--;
+        }
+        if (to - from >= 2 && host.charAt(from) == '[' && host.charAt(to - 1) == ']') {
+            from++;
+            to--;
+        }
+
+        long[] address = ADDRESS_SCRATCH.get();
+        if (InetLiterals.parseAny(host, from, to, address)) {
+            Route route = lookupAddress(address[0], address[1], port);
+            if (route != null) {
+                return route;
+            }
+            return anyHost == null ? null : anyHost.match(port);
+        }
+
+        Route route = lookupHostname(host, from, to, port);
+        if (route != null) {
+            return route;
+        }
+
+        if (!isAscii(host, from, to)) {
+            // Rare: a Java server sending a unicode hostname. Retry with its ACE form.
+            String ace = DestinationParser.canonicalHostname(host, from, to);
+            if (ace != null) {
+                route = lookupHostname(ace, 0, ace.length(), port);
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+
+        return anyHost == null ? null : anyHost.match(port);
+    }
+
+    private Route lookupHostname(String host, int from, int to, int port) {
+        Route route = exactHosts.match(host, from, to, port);
+        if (route != null) {
+            return route;
+        }
+
+        // Walk suffixes from longest to shortest: a.b.example.com -> b.example.com -> example.com -> com
+        if (wildcardHosts.size > 0) {
+            for (int i = from; i < to; i++) {
+                if (host.charAt(i) == '.') {
+                    route = wildcardHosts.match(host, i + 1, to, port);
+                    if (route != null) {
+                        return route;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private Route lookupAddress(long hi, long lo, int port) {
+        for (int prefix : prefixLengths) {
+            long maskedHi = maskHi(hi, prefix);
+            long maskedLo = maskLo(lo, prefix);
+            int slot = addressHash(maskedHi, maskedLo, prefix) & addressMask;
+
+            PortRules rules;
+            while ((rules = addressRules[slot]) != null) {
+                if (addressHi[slot] == maskedHi && addressLo[slot] == maskedLo && addressPrefix[slot] == prefix) {
+                    Route route = rules.match(port);
+                    if (route != null) {
+                        return route;
+                    }
+                    break;
+                }
+                slot = (slot + 1) & addressMask;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return routes.length;
+    }
+
+    public boolean isEmpty() {
+        return routes.length == 0;
+    }
+
+    /**
+     * @return how many mappings had to be parsed when this table was compiled, i.e. were not reused
+     */
+    public int recompiled() {
+        return recompiled;
+    }
+
+    public List<Route> routes() {
+        return List.of(routes);
+    }
+
+    public List<TargetPool> pools() {
+        List<TargetPool> pools = new ArrayList<>(routes.length);
+        for (Route route : routes) {
+            pools.add(route.targets());
+        }
+        return pools;
+    }
+
+    public static RoutingTable compile(Map<String, String> mappings, Function<List<Destination>, TargetPool> pools,
+                                       Consumer<String> warnings) {
+        return compile(mappings, pools, warnings, null);
+    }
+
+    /**
+     * Compiles the mappings, reusing the parsed source and target pool of every mapping whose key and target
+     * are unchanged since {@code previous}. Only pass a previous table whose pools came from an equivalent
+     * pool factory (same prober and selection).
+     */
+    public static RoutingTable compile(Map<String, String> mappings, Function<List<Destination>, TargetPool> pools,
+                                       Consumer<String> warnings, RoutingTable previous) {
+        List<Route> routes = new ArrayList<>(mappings.size());
+        Map<String, Compiled> compiledMappings = new HashMap<>();
+        int recompiled = 0;
+        Map<String, List<Route>> exact = new LinkedHashMap<>();
+        Map<String, List<Route>> wildcard = new LinkedHashMap<>();
+        Map<AddressKey, List<Route>> addresses = new LinkedHashMap<>();
+        List<Route> any = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : mappings.entrySet()) {
+            Compiled compiled = previous == null ? null : previous.compiled.get(entry.getKey());
+            if (compiled == null || !compiled.target().equals(entry.getValue())) {
+                compiled = compileMapping(entry.getKey(), entry.getValue(), pools, warnings);
+                recompiled++;
+                if (compiled == null) {
+                    continue;
+                }
+            }
+
+            SourceKey key = compiled.key();
+            Route route = new Route(routes.size(), entry.getKey(), compiled.pool(),
+                    key.portStart(), key.portEnd(), compiled.portRange());
+
+            List<Route> bucket = switch (key.kind()) {
+                case EXACT -> exact.computeIfAbsent(key.host(), $ -> new ArrayList<>());
+                case WILDCARD -> wildcard.computeIfAbsent(key.host(), $ -> new ArrayList<>());
+                case ADDRESS -> addresses.computeIfAbsent(new AddressKey(key.hi(), key.lo(), key.prefix()), $ -> new ArrayList<>());
+                case ANY -> any;
+            };
+
+            boolean duplicate = false;
+            for (Route existing : bucket) {
+                if (existing.portStart() == route.portStart() && existing.portEnd() == route.portEnd()) {
+                    warnings.accept("Transfer mapping " + entry.getKey() + " is a duplicate of " + existing.source() + ", ignoring it.");
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (duplicate) {
+                continue;
+            }
+
+            bucket.add(route);
+            routes.add(route);
+            compiledMappings.put(entry.getKey(), compiled);
+        }
+
+        Map<AddressKey, PortRules> addressRules = new LinkedHashMap<>();
+        addresses.forEach((key, list) -> addressRules.put(key, new PortRules(list)));
+
+        return new RoutingTable(routes.toArray(new Route[0]), compiledMappings, recompiled, new HostTable(exact),
+                new HostTable(wildcard), any.isEmpty() ? null : new PortRules(any), addressRules);
+    }
+
+    /**
+     * @return the parsed mapping, or null if it is invalid (a warning has been emitted)
+     */
+    private static Compiled compileMapping(String source, String target, Function<List<Destination>, TargetPool> pools,
+                                           Consumer<String> warnings) {
+        SourceKey key = parseSource(source, warnings);
+        if (key == null) {
+            return null;
+        }
+
+        List<TargetSpec> targets = new ArrayList<>();
+        for (String part : target.split(",")) {
+            TargetSpec spec = parseTarget(part, warnings);
+            if (spec != null) {
+                targets.add(spec);
+            }
+        }
+        if (targets.isEmpty()) {
+            return null;
+        }
+
+        TargetSpec first = targets.get(0);
+        boolean portRange = first.portEnd() != first.portStart();
+        if (portRange && targets.size() > 1) {
+            warnings.accept("Skipping transfer mapping " + source + " -> " + target +
+                    ": port ranges cannot be combined with multiple targets!");
+            return null;
+        }
+        if (portRange && first.portEnd() - first.portStart() != key.portEnd() - key.portStart()) {
+            warnings.accept("Skipping transfer mapping " + source + " -> " + target +
+                    ": the Bedrock port range must be as large as the Java port range!");
+            return null;
+        }
+
+        List<Destination> destinations = new ArrayList<>(targets.size());
+        for (TargetSpec spec : targets) {
+            destinations.add(Destination.of(spec.host(), spec.portStart()));
+        }
+        return new Compiled(target, key, pools.apply(destinations), portRange);
+    }
+
+    private enum Kind {
+        EXACT,
+        WILDCARD,
+        ADDRESS,
+        ANY
+    }
+
+    private record SourceKey(Kind kind, String host, long hi, long lo, int prefix, int portStart, int portEnd) {
+    }
+
+    private record TargetSpec(String host, int portStart, int portEnd) {
+    }
+
+    private record Compiled(String target, SourceKey key, TargetPool pool, boolean portRange) {
+    }
+
+    private record AddressKey(long hi, long lo, int prefix) {
+    }
+
+    private static SourceKey parseSource(String input, Consumer<String> warnings) {
+        String trimmed = input.trim();
+        String[] split = splitHostPort(trimmed);
+        if (split == null) {
+            warnings.accept("Skipping transfer mapping with invalid key: " + input);
+            return null;
+        }
+
+        String host = split[0];
+        int[] ports = parsePortSpec(split[1], DEFAULT_JAVA_PORT);
+        if (ports == null) {
+            warnings.accept("Skipping transfer mapping with invalid port: " + input);
+            return null;
+        }
+
+        if (host.equals("*")) {
+            return new SourceKey(Kind.ANY, null, 0, 0, 0, ports[0], ports[1]);
+        }
+
+        long[] address = new long[2];
+        int slash = host.indexOf('/');
+        if (slash >= 0 || InetLiterals.parseAny(host, 0, host.length(), address)) {
+            int prefix = 128;
+            String literal = host;
+            if (slash >= 0) {
+                literal = host.substring(0, slash);
+                try {
+                    prefix = Integer.parseInt(host.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    prefix = -1;
+                }
+            }
+
+            if (!InetLiterals.parseAny(literal, 0, literal.length(), address)) {
+                warnings.accept("Skipping transfer mapping with invalid address: " + input);
+                return null;
+            }
+
+            boolean ipv4 = InetLiterals.parseIpv4(literal, 0, literal.length()) >= 0;
+            if (slash >= 0 && ipv4) {
+                prefix = prefix < 0 || prefix > 32 ? -1 : prefix + 96;
+            }
+            if (prefix < 0 || prefix > 128) {
+                warnings.accept("Skipping transfer mapping with invalid CIDR prefix: " + input);
+                return null;
+            }
+
+            return new SourceKey(Kind.ADDRESS, null, maskHi(address[0], prefix), maskLo(address[1], prefix), prefix,
+                    ports[0], ports[1]);
+        }
+
+        if (host.startsWith("*.")) {
+            String suffix = DestinationParser.canonicalHostname(host, 2, host.length());
+            if (suffix == null) {
+                warnings.accept("Skipping transfer mapping with invalid wildcard: " + input);
+                return null;
+            }
+            return new SourceKey(Kind.WILDCARD, suffix, 0, 0, 0, ports[0], ports[1]);
+        }
+
+        String canonical = DestinationParser.canonicalHostname(host, 0, host.length());
+        if (canonical == null) {
+            warnings.accept("Skipping transfer mapping with invalid hostname: " + input);
+            return null;
+        }
+        return new SourceKey(Kind.EXACT, canonical, 0, 0, 0, ports[0], ports[1]);
+    }
+
+    /**
+     * Parses a target like {@link Destination#parse}, so it is validated the same way as destinations of the
+     * transfer command, plus an optional port range ("host:19132-19167").
+     */
+    private static TargetSpec parseTarget(String input, Consumer<String> warnings) {
+        String trimmed = input.trim();
+        int portSeparator = trimmed.startsWith("[") ? trimmed.indexOf("]:") + 1
+                : trimmed.indexOf(':') == trimmed.lastIndexOf(':') ? trimmed.indexOf(':') : -1;
+        int dash = portSeparator > 0 ? trimmed.indexOf('-', portSeparator) : -1;
+
+        DestinationResult result = Destination.parse(trimmed, 0, dash < 0 ? trimmed.length() : dash, DEFAULT_BEDROCK_PORT);
+        if (!(result instanceof Destination destination)) {
+            warnings.accept("Skipping transfer mapping with invalid target " +
+                    (result == DestinationError.INVALID_PORT ? "port: " : "host: ") + input);
+            return null;
+        }
+
+        int portEnd = destination.port();
+        if (dash >= 0) {
+            portEnd = Destination.parsePort(trimmed.substring(dash + 1).trim());
+            if (portEnd < destination.port()) {
+                warnings.accept("Skipping transfer mapping with invalid target port: " + input);
+                return null;
+            }
+        }
+        return new TargetSpec(destination.ip(), destination.port(), portEnd);
+    }
+
+    /**
+     * Splits "host", "host:port", "[v6]:port" and bare IPv6 literals. The port part is empty if absent.
+     */
+    private static String[] splitHostPort(String input) {
+        if (input.isEmpty()) {
+            return null;
+        }
+
+        if (input.startsWith("[")) {
+            int close = input.indexOf(']');
+            if (close < 0) {
+                return null;
+            }
+            String rest = input.substring(close + 1);
+            if (!rest.isEmpty() && !rest.startsWith(":")) {
+                return null;
+            }
+            return new String[]{input.substring(1, close), rest.isEmpty() ? "" : rest.substring(1)};
+        }
+
+        int first = input.indexOf(':');
+        if (first < 0) {
+            return new String[]{input, ""};
+        }
+        if (input.indexOf(':', first + 1) >= 0) {
+            // Unbracketed IPv6 literal; cannot carry a port
+            return new String[]{input, ""};
+        }
+        return new String[]{input.substring(0, first), input.substring(first + 1)};
+    }
+
+    /**
+     * Ports are 1-65535, like in {@link Destination#parsePort}; "*" stands for any port.
+     *
+     * @return {start, end} (inclusive), or null if the spec is invalid
+     */
+    private static int[] parsePortSpec(String spec, int defaultPort) {
+        if (spec.isEmpty()) {
+            return new int[]{defaultPort, defaultPort};
+        }
+        if (spec.equals("*")) {
+            return new int[]{0, 65535};
+        }
+
+        int dash = spec.indexOf('-');
+        int start = Destination.parsePort(spec.substring(0, dash < 0 ? spec.length() : dash).trim());
+        int end = dash < 0 ? start : Destination.parsePort(spec.substring(dash + 1).trim());
+        if (start < 0 || end < start) {
+            return null;
+        }
+        return new int[]{start, end};
+    }
+
+    private static boolean isAscii(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long maskHi(long hi, int prefix) {
+        if (prefix >= 64) {
+            return hi;
+        }
+        return prefix == 0 ? 0 : hi & (-1L << (64 - prefix));
+    }
+
+    private static long maskLo(long lo, int prefix) {
+        if (prefix <= 64) {
+            return 0;
+        }
+        return lo & (-1L << (128 - prefix));
+    }
+
+    private static int addressHash(long hi, long lo, int prefix) {
+        long h = hi * 0x9E3779B97F4A7C15L + lo;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL + prefix;
+        h ^= h >>> 29;
+        return (int) h;
+    }
+
+    private static int tableCapacity(int entries) {
+        // Keep load factor at or below 0.5
+        return Math.max(2, Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1);
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+
+    /**
+     * Port rules of a single host key, ordered from most to least specific.
+     */
+    private static final class PortRules {
+        private final Route[] routes;
+
+        PortRules(List<Route> routes) {
+            Route[] sorted = routes.toArray(new Route[0]);
+            Arrays.sort(sorted, Comparator.comparingInt(Route::width).thenComparingInt(Route::portStart));
+            this.routes = sorted;
+        }
+
+        Route match(int port) {
+            for (Route route : routes) {
+                if (route.matchesPort(port)) {
+                    return route;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Open addressing table of canonical hostnames, probed with case folding so lookups need no lowercase copy.
+     */
+    private static final class HostTable {
+        private final String[] keys;
+        private final PortRules[] values;
+        private final int mask;
+        private final int size;
+
+        HostTable(Map<String, List<Route>> entries) {
+            int capacity = tableCapacity(entries.size());
+            this.keys = new String[capacity];
+            this.values = new PortRules[capacity];
+            this.mask = capacity - 1;
+            this.size = entries.size();
+
+            for (Map.Entry<String, List<Route>> entry : entries.entrySet()) {
+                String key = entry.getKey();
+                int slot = hash(key, 0, key.length()) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = new PortRules(entry.getValue());
+            }
+        }
+
+        Route match(String s, int from, int to, int port) {
+            if (size == 0) {
+                return null;
+            }
+
+            int slot = hash(s, from, to) & mask;
+            String key;
+            while ((key = keys[slot]) != null) {
+                if (equalsFolded(key, s, from, to)) {
+                    return values[slot].match(port);
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int hash(String s, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) {
+                h = 31 * h + lower(s.charAt(i));
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean equalsFolded(String key, String s, int from, int to) {
+            if (key.length() != to - from) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != lower(s.charAt(from + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
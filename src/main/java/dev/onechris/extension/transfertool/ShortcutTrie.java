@@ -0,0 +1,160 @@
+package dev.onechris.extension.transfertool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+
+/**
+ * Case-insensitive prefix trie over shortcut names, for exact, prefix ("autocomplete") and
+ * bounded edit distance ("did you mean") lookups. Lookups return shortcut indices.
+ */
+final class ShortcutTrie {
+    private static final int[] NONE = new int[0];
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        // Several names may only differ in case
+        int[] indices = NONE;
+
+        Node child(char key) {
+            int position = Arrays.binarySearch(keys, key);
+            return position < 0 ? null : children[position];
+        }
+
+        Node addChild(char key) {
+            int position = Arrays.binarySearch(keys, key);
+            if (position >= 0) {
+                return children[position];
+            }
+            position = -position - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, position);
+            System.arraycopy(children, 0, newChildren, 0, position);
+            System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+            System.arraycopy(children, position, newChildren, position + 1, keys.length - position);
+            Node child = new Node();
+            newKeys[position] = key;
+            newChildren[position] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    /**
+     * A shortcut within {@code distance} edits of the input.
+     */
+    record Match(int index, int distance) {
+    }
+
+    private final Node root = new Node();
+
+    ShortcutTrie(String[] names) {
+        for (int i = 0; i < names.length; i++) {
+            Node node = root;
+            String name = names[i].toLowerCase(Locale.ROOT);
+            for (int c = 0; c < name.length(); c++) {
+                node = node.addChild(name.charAt(c));
+            }
+            node.indices = Arrays.copyOf(node.indices, node.indices.length + 1);
+            node.indices[node.indices.length - 1] = i;
+        }
+    }
+
+    /**
+     * @return the indices of all names equal to the input, ignoring case
+     */
+    int[] exact(String input) {
+        Node node = find(input.toLowerCase(Locale.ROOT));
+        return node == null ? NONE : node.indices;
+    }
+
+    /**
+     * @return up to {@code limit} accepted indices of names starting with the input (ignoring case), in name order
+     */
+    List<Integer> withPrefix(String input, IntPredicate accept, int limit) {
+        List<Integer> result = new ArrayList<>();
+        Node node = find(input.toLowerCase(Locale.ROOT));
+        if (node != null) {
+            collect(node, accept, limit, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return up to {@code limit} accepted names within {@code maxDistance} edits (Levenshtein, ignoring case)
+     * of the input, closest first
+     */
+    List<Match> similar(String input, int maxDistance, IntPredicate accept, int limit) {
+        String query = input.toLowerCase(Locale.ROOT);
+        int[] row = new int[query.length() + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < root.keys.length; i++) {
+            search(root.children[i], root.keys[i], query, row, maxDistance, accept, matches);
+        }
+        matches.sort((a, b) -> a.distance() != b.distance() ? Integer.compare(a.distance(), b.distance())
+                : Integer.compare(a.index(), b.index()));
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    private void search(Node node, char key, String query, int[] previous, int maxDistance,
+                        IntPredicate accept, List<Match> matches) {
+        int[] row = new int[previous.length];
+        row[0] = previous[0] + 1;
+        int best = row[0];
+        for (int i = 1; i < row.length; i++) {
+            int cost = query.charAt(i - 1) == key ? 0 : 1;
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+            best = Math.min(best, row[i]);
+        }
+
+        int distance = row[row.length - 1];
+        if (distance <= maxDistance) {
+            for (int index : node.indices) {
+                if (accept.test(index)) {
+                    matches.add(new Match(index, distance));
+                }
+            }
+        }
+
+        // No name below this node can get closer than the best cell of this row
+        if (best <= maxDistance) {
+            for (int i = 0; i < node.keys.length; i++) {
+                search(node.children[i], node.keys[i], query, row, maxDistance, accept, matches);
+            }
+        }
+    }
+
+    private Node find(String lowerCase) {
+        Node node = root;
+        for (int i = 0; i < lowerCase.length() && node != null; i++) {
+            node = node.child(lowerCase.charAt(i));
+        }
+        return node;
+    }
+
+    private static void collect(Node node, IntPredicate accept, int limit, List<Integer> result) {
+        for (int index : node.indices) {
+            if (result.size() >= limit) {
+                return;
+            }
+            if (accept.test(index)) {
+                result.add(index);
+            }
+        }
+        for (Node child : node.children) {
+            if (result.size() >= limit) {
+                return;
+            }
+            collect(child, accept, limit, result);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The configured transfer shortcuts in config order, together with per-snapshot caches for the transfer menu:
+ * localized menu labels per locale, and a permission snapshot per connection.
+ * Both caches are dropped with the snapshot on reload; permission snapshots also when a player disconnects.
+ */
+public final class Shortcuts {
+    public static final String PERMISSION_PREFIX = "transfertool.shortcuts.";
+    public static final String TRANSFER_ANY_PERMISSION = "transfertool.command.transfer.any";
+
+    private final String[] names;
+    private final TargetPool[] pools;
+    private final String[] specs;
+    private final String[] permissions;
+    private final Map<String, Integer> indices;
+    private final ShortcutTrie trie;
+
+    private final Map<GeyserConnection, PermissionSnapshot> permissionSnapshots = new ConcurrentHashMap<>();
+    private final Map<String, MenuLabels> menuLabels = new ConcurrentHashMap<>();
+
+    /**
+     * @param specs the configured target of each shortcut, used to reuse unchanged pools on the next reload
+     */
+    public Shortcuts(Map<String, TargetPool> shortcuts, Map<String, String> specs) {
+        int size = shortcuts.size();
+        this.names = new String[size];
+        this.pools = new TargetPool[size];
+        this.specs = new String[size];
+        this.permissions = new String[size];
+
+        Map<String, Integer> indices = new HashMap<>();
+        int index = 0;
+        for (Map.Entry<String, TargetPool> entry : shortcuts.entrySet()) {
+            names[index] = entry.getKey();
+            pools[index] = entry.getValue();
+            this.specs[index] = specs.get(entry.getKey());
+            permissions[index] = PERMISSION_PREFIX + entry.getKey();
+            indices.put(entry.getKey(), index);
+            index++;
+        }
+        this.indices = Map.copyOf(indices);
+        this.trie = new ShortcutTrie(names);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    /**
+     * @return the index of the shortcut, or -1 if there is none with this name
+     */
+    public int indexOf(String name) {
+        Integer index = indices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Finds a shortcut the player is allowed to use by its name, ignoring case.
+     *
+     * @return the index of the shortcut, or -1 if there is none or several names only differ in case
+     */
+    public int indexOfIgnoreCase(String input, PermissionSnapshot permissions) {
+        int found = -1;
+        for (int index : trie.exact(input)) {
+            if (permissions.allows(index)) {
+                if (found >= 0) {
+                    return -1;
+                }
+                found = index;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return up to {@code limit} names of allowed shortcuts that the input may have been meant as:
+     * names starting with it, then names within one (short inputs) or two edits of it
+     */
+    public List<String> suggestions(String input, PermissionSnapshot permissions, int limit) {
+        List<String> suggestions = new ArrayList<>(limit);
+        for (int index : trie.withPrefix(input, permissions::allows, limit)) {
+            suggestions.add(names[index]);
+        }
+        int maxDistance = input.length() <= 4 ? 1 : 2;
+        for (ShortcutTrie.Match match : trie.similar(input, maxDistance, permissions::allows, limit)) {
+            if (suggestions.size() >= limit) {
+                break;
+            }
+            if (!suggestions.contains(names[match.index()])) {
+                suggestions.add(names[match.index()]);
+            }
+        }
+        return suggestions;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    public TargetPool pool(int index) {
+        return pools[index];
+    }
+
+    public TargetPool get(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : pools[index];
+    }
+
+    /**
+     * @return the pool of the shortcut if it is still configured with the same target, otherwise null
+     */
+    public TargetPool reusablePool(String name, String spec) {
+        int index = indexOf(name);
+        return index >= 0 && spec.equals(specs[index]) ? pools[index] : null;
+    }
+
+    public String permission(int index) {
+        return permissions[index];
+    }
+
+    public List<String> names() {
+        return List.of(names);
+    }
+
+    public List<TargetPool> pools() {
+        return List.of(pools);
+    }
+
+    /**
+     * Checks all shortcut permissions of a connection once, and reuses the result until the next reload
+     * or until the connection leaves.
+     */
+    public PermissionSnapshot permissions(GeyserConnection connection) {
+        PermissionSnapshot snapshot = permissionSnapshots.get(connection);
+        if (snapshot == null) {
+            snapshot = PermissionSnapshot.of(connection, permissions);
+            permissionSnapshots.put(connection, snapshot);
+        }
+        return snapshot;
+    }
+
+    public MenuLabels menuLabels(LanguageManager languageManager, GeyserConnection connection) {
+        String locale = connection.locale();
+        if (locale == null) {
+            return MenuLabels.of(languageManager, connection);
+        }
+
+        MenuLabels labels = menuLabels.get(locale);
+        if (labels == null) {
+            labels = MenuLabels.of(languageManager, connection);
+            menuLabels.put(locale, labels);
+        }
+        return labels;
+    }
+
+    public void forget(GeyserConnection connection) {
+        permissionSnapshots.remove(connection);
+    }
+
+    /**
+     * @param allowed bitmask of permitted shortcut indices
+     * @param visible the permitted shortcut indices in menu order, i.e. menu button id -> shortcut index
+     */
+    public record PermissionSnapshot(long[] allowed, int[] visible, boolean mayTransferAny) {
+
+        static PermissionSnapshot of(GeyserConnection connection, String[] permissions) {
+            long[] allowed = new long[(permissions.length + 63) >>> 6];
+            int[] visible = new int[permissions.length];
+            int count = 0;
+            for (int i = 0; i < permissions.length; i++) {
+                if (connection.hasPermission(permissions[i])) {
+                    allowed[i >>> 6] |= 1L << i;
+                    visible[count++] = i;
+                }
+            }
+
+            int[] trimmed = new int[count];
+            System.arraycopy(visible, 0, trimmed, 0, count);
+            return new PermissionSnapshot(allowed, trimmed, connection.hasPermission(TRANSFER_ANY_PERMISSION));
+        }
+
+        public boolean allows(int index) {
+            return (allowed[index >>> 6] & (1L << index)) != 0;
+        }
+    }
+
+    public record MenuLabels(String title, String custom, String customTitle, String customIp,
+                             String customIpPlaceholder, String customPort, String previous, String next) {
+
+        static MenuLabels of(LanguageManager languageManager, GeyserConnection source) {
+            return new MenuLabels(
+                    languageManager.getLocaleString(source, "menu.transfer.title"),
+                    languageManager.getLocaleString(source, "menu.transfer.custom"),
+                    languageManager.getLocaleString(source, "menu.transfer.custom.title"),
+                    languageManager.getLocaleString(source, "menu.transfer.custom.ip"),
+                    languageManager.getLocaleString(source, "form.custom.ip.placeholder"),
+                    languageManager.getLocaleString(source, "menu.transfer.custom.port"),
+                    languageManager.getLocaleString(source, "menu.transfer.previous"),
+                    languageManager.getLocaleString(source, "menu.transfer.next"));
+        }
+    }
+}
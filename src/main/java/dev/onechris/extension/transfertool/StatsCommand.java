@@ -0,0 +1,94 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.command.Command;
+import org.geysermc.geyser.api.command.CommandExecutor;
+import org.geysermc.geyser.api.command.CommandSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * '/transfertool stats': prints a summary of {@link TransferMetrics}.
+ */
+public class StatsCommand implements CommandExecutor<CommandSource> {
+    // Per section; counters without any transfers are left out entirely
+    private static final int MAX_ENTRIES = 10;
+
+    private final Supplier<TransferState> state;
+    private final TransferMetrics metrics;
+
+    public StatsCommand(Supplier<TransferState> state, TransferMetrics metrics) {
+        this.state = state;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void execute(CommandSource source, Command command, String[] args) {
+        LanguageManager languageManager = state.get().languageManager();
+
+        long mapped = 0;
+        for (LongAdder hits : metrics.mappingHits().values()) {
+            mapped += hits.sum();
+        }
+        long forwarded = metrics.forwardedCount();
+        source.sendMessage(languageManager.getLocaleString(source, "commands.stats.events",
+                mapped, forwarded, metrics.misses() - forwarded));
+
+        source.sendMessage(languageManager.getLocaleString(source, "commands.stats.rejections",
+                metrics.rejections(TransferMetrics.Rejection.INVALID_IP),
+                metrics.rejections(TransferMetrics.Rejection.INVALID_PORT),
+                metrics.rejections(TransferMetrics.Rejection.UNKNOWN)));
+
+        source.sendMessage(languageManager.getLocaleString(source, "commands.stats.rate_limited",
+                metrics.rateLimitedCount(RateLimiter.Action.MENU),
+                metrics.rateLimitedCount(RateLimiter.Action.SHORTCUT),
+                metrics.rateLimitedCount(RateLimiter.Action.CUSTOM)));
+
+        source.sendMessage(languageManager.getLocaleString(source, "commands.stats.admission",
+                metrics.admissionCount(AdmissionControl.Decision.QUEUED),
+                metrics.admissionCount(AdmissionControl.Decision.OVERFLOWED),
+                metrics.admissionCount(AdmissionControl.Decision.TURNED_AWAY)));
+
+        long[] counts = metrics.eventLatency().counts();
+        source.sendMessage(languageManager.getLocaleString(source, "commands.stats.latency",
+                TransferMetrics.LatencyHistogram.quantile(counts, 0.5) / 1000.0,
+                TransferMetrics.LatencyHistogram.quantile(counts, 0.99) / 1000.0));
+
+        printCounters(source, languageManager, "commands.stats.mappings", metrics.mappingHits());
+        printCounters(source, languageManager, "commands.stats.shortcuts", metrics.shortcutTransfers());
+        printCounters(source, languageManager, "commands.stats.rules", metrics.ruleHits());
+    }
+
+    private static void printCounters(CommandSource source, LanguageManager languageManager, String header,
+                                      Map<String, LongAdder> counters) {
+        // Mapping files can hold tens of thousands of entries; only the busiest ones are worth a chat line
+        List<Map.Entry<String, Long>> used = new ArrayList<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            long hits = entry.getValue().sum();
+            if (hits > 0) {
+                used.add(Map.entry(entry.getKey(), hits));
+            }
+        }
+        if (used.isEmpty()) {
+            return;
+        }
+        used.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        source.sendMessage(languageManager.getLocaleString(source, header));
+        int shown = Math.min(MAX_ENTRIES, used.size());
+        for (int i = 0; i < shown; i++) {
+            Map.Entry<String, Long> entry = used.get(i);
+            source.sendMessage(languageManager.getLocaleString(source, "commands.stats.entry", entry.getKey(), entry.getValue()));
+        }
+        if (used.size() > shown) {
+            long remainingHits = 0;
+            for (int i = shown; i < used.size(); i++) {
+                remainingHits += used.get(i).getValue();
+            }
+            source.sendMessage(languageManager.getLocaleString(source, "commands.stats.more", used.size() - shown, remainingHits));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package dev.onechris.extension.transfertool;
+
+/**
+ * Latest probe results of a single Bedrock target. Written by the {@link BedrockProber} thread only,
+ * read lock-free by transfer handlers.
+ */
+public final class TargetHealth {
+    private final Destination destination;
+
+    volatile long lastPingNanos;
+    volatile long lastPongNanos;
+    volatile int latencyMillis = -1;
+    volatile int onlinePlayers = -1;
+    volatile int maxPlayers = -1;
+    volatile int consecutiveFailures;
+    volatile boolean healthy = true;
+    // Players recently sent here by this and other TransferTool instances, see ClusterState
+    volatile int recentTransfers;
+
+    TargetHealth(Destination destination) {
+        this.destination = destination;
+    }
+
+    public Destination destination() {
+        return destination;
+    }
+
+    /**
+     * @return whether this target answered recent pings and is not full. Targets that were never probed count as healthy.
+     */
+    public boolean available() {
+        int max = maxPlayers;
+        return healthy && (max <= 0 || onlinePlayers < max);
+    }
+
+    public boolean healthy() {
+        return healthy;
+    }
+
+    public int latencyMillis() {
+        return latencyMillis;
+    }
+
+    public int onlinePlayers() {
+        return onlinePlayers;
+    }
+
+    public int maxPlayers() {
+        return maxPlayers;
+    }
+
+    /**
+     * Lower is better. Targets without probe data sort behind all probed ones.
+     */
+    long score(TargetPool.Selection selection) {
+        int latency = latencyMillis;
+        int online = onlinePlayers;
+        int max = maxPlayers;
+        if (latency < 0) {
+            return Long.MAX_VALUE - 1;
+        }
+
+        // Players sent since the last pong would otherwise be invisible until the next one
+        long players = Math.max(0, online) + recentTransfers;
+        long loadPermille = max > 0 ? players * 1000L / max : 0;
+        return switch (selection) {
+            case LEAST_LOADED -> loadPermille * 100_000L + latency;
+            case LOWEST_LATENCY -> latency * 1_000L + loadPermille;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return destination + (healthy ? " (healthy, " : " (unhealthy, ") + latencyMillis + "ms, " +
+                onlinePlayers + "/" + maxPlayers + ")";
+    }
+}
@@ -0,0 +1,150 @@
+package dev.onechris.extension.transfertool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * One or more equivalent Bedrock targets. Selection only reads cached probe results and never blocks.
+ */
+public final class TargetPool {
+
+    public enum Selection {
+        LEAST_LOADED,
+        LOWEST_LATENCY
+    }
+
+    private final Destination[] members;
+    private final TargetHealth[] health;
+    private final Selection selection;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private TargetPool(Destination[] members, TargetHealth[] health, Selection selection) {
+        this.members = members;
+        this.health = health;
+        this.selection = selection;
+    }
+
+    public static TargetPool of(Destination destination) {
+        return new TargetPool(new Destination[]{destination}, null, Selection.LEAST_LOADED);
+    }
+
+    /**
+     * @param prober the prober supplying health data, or null if health checks are disabled
+     */
+    public static TargetPool of(List<Destination> destinations, BedrockProber prober, Selection selection) {
+        Destination[] members = destinations.toArray(new Destination[0]);
+        TargetHealth[] health = null;
+        if (prober != null && members.length > 1) {
+            health = new TargetHealth[members.length];
+            for (int i = 0; i < members.length; i++) {
+                health[i] = prober.track(members[i]);
+            }
+        }
+        return new TargetPool(members, health, selection);
+    }
+
+    /**
+     * Parses a comma separated list of targets, e.g. "a.example.com, b.example.com:19133".
+     *
+     * @return the pool, or null if no valid target was found
+     */
+    public static TargetPool parse(String input, int fallbackPort, BedrockProber prober, Selection selection,
+                                   Consumer<String> caller) {
+        List<Destination> destinations = new ArrayList<>();
+        for (String part : input.split(",")) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+
+            DestinationResult result = Destination.parse(trimmed, fallbackPort);
+            if (result instanceof DestinationError error) {
+                caller.accept("Ignoring invalid target " + trimmed + " (" + error.description() + ") in: " + input);
+                continue;
+            }
+            destinations.add((Destination) result);
+        }
+
+        if (destinations.isEmpty()) {
+            return null;
+        }
+        return of(destinations, prober, selection);
+    }
+
+    /**
+     * Picks the best available member: healthy, not full, and then the least loaded or lowest latency one.
+     * Ties, pools without health data and pools without any healthy member are spread round-robin.
+     */
+    public Destination select() {
+        int size = members.length;
+        if (size == 1) {
+            return members[0];
+        }
+
+        int start = (cursor.getAndIncrement() & Integer.MAX_VALUE) % size;
+        if (health == null) {
+            return members[start];
+        }
+
+        int best = -1;
+        long bestScore = Long.MAX_VALUE;
+        for (int offset = 0; offset < size; offset++) {
+            int index = (start + offset) % size;
+            TargetHealth candidate = health[index];
+            if (!candidate.available()) {
+                continue;
+            }
+
+            long score = candidate.score(selection);
+            if (score < bestScore) {
+                best = index;
+                bestScore = score;
+            }
+        }
+
+        return members[best < 0 ? start : best];
+    }
+
+    /**
+     * Picks the given member if it is available, and otherwise falls back to {@link #select()}.
+     */
+    public Destination select(int preferred) {
+        if (preferred >= 0 && preferred < members.length && (health == null || health[preferred].available())) {
+            return members[preferred];
+        }
+        return select();
+    }
+
+    public Destination member(int index) {
+        return members[index];
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    public Destination first() {
+        return members[0];
+    }
+
+    public List<Destination> members() {
+        return List.of(members);
+    }
+
+    @Override
+    public String toString() {
+        if (members.length == 1) {
+            return members[0].toString();
+        }
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < members.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(health == null ? members[i] : health[i]);
+        }
+        return builder.append(']').toString();
+    }
+}
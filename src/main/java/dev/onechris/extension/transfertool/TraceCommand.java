@@ -0,0 +1,85 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.command.Command;
+import org.geysermc.geyser.api.command.CommandExecutor;
+import org.geysermc.geyser.api.command.CommandSource;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * '/transfertool trace [player|count]': prints the most recent traced transfer decisions, optionally of one player only.
+ */
+public class TraceCommand implements CommandExecutor<CommandSource> {
+    private static final int DEFAULT_COUNT = 10;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final Supplier<TransferState> state;
+    private final Supplier<TransferTrace> trace;
+
+    public TraceCommand(Supplier<TransferState> state, Supplier<TransferTrace> trace) {
+        this.state = state;
+        this.trace = trace;
+    }
+
+    @Override
+    public void execute(CommandSource source, Command command, String[] args) {
+        LanguageManager languageManager = state.get().languageManager();
+        TransferTrace trace = this.trace.get();
+        if (trace == null) {
+            source.sendMessage(languageManager.getLocaleString(source, "commands.trace.disabled"));
+            return;
+        }
+        if (args.length > 1) {
+            source.sendMessage(languageManager.getLocaleString(source, "commands.trace.usage"));
+            return;
+        }
+
+        String player = null;
+        int count = DEFAULT_COUNT;
+        if (args.length == 1) {
+            int parsed = parseCount(args[0]);
+            if (parsed > 0) {
+                count = parsed;
+            } else {
+                player = args[0];
+            }
+        }
+
+        List<TransferTrace.Entry> entries = trace.recent(player, Math.min(count, trace.capacity()));
+        if (entries.isEmpty()) {
+            source.sendMessage(languageManager.getLocaleString(source, "commands.trace.none"));
+            return;
+        }
+        source.sendMessage(languageManager.getLocaleString(source, "commands.trace.header", entries.size(), trace.recorded()));
+        // Oldest first, so the most recent decision ends up at the bottom of the chat
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            TransferTrace.Entry entry = entries.get(i);
+            String requested = entry.requestedPort() < 0 ? String.valueOf(entry.requested())
+                    : entry.requested() + ":" + entry.requestedPort();
+            String target = entry.targetHost() == null ? "-" : entry.targetHost() + ":" + entry.targetPort();
+            source.sendMessage(languageManager.getLocaleString(source, "commands.trace.entry",
+                    TIME.format(Instant.ofEpochMilli(entry.timeMillis())), entry.player(), entry.kind().name().toLowerCase(Locale.ROOT),
+                    requested, target, entry.reason() == null ? "-" : entry.reason()));
+        }
+    }
+
+    private static int parseCount(String arg) {
+        if (arg.isEmpty() || arg.length() > 6) {
+            return -1;
+        }
+        int count = 0;
+        for (int i = 0; i < arg.length(); i++) {
+            char c = arg.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            count = count * 10 + (c - '0');
+        }
+        return count;
+    }
+}
@@ -0,0 +1,228 @@
+package dev.onechris.extension.transfertool;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Transfer counters and an event handling latency histogram, all backed by {@link LongAdder}s.
+ * Per-mapping, per-shortcut and per-rule counters are keyed by name so they survive reloads;
+ * {@link #bind} resolves them into arrays for a snapshot so the hot path only does an array access.
+ */
+public final class TransferMetrics {
+
+    public enum Rejection {
+        INVALID_IP("invalid_ip"),
+        INVALID_PORT("invalid_port"),
+        UNKNOWN("unknown");
+
+        private final String label;
+
+        Rejection(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private final Map<String, LongAdder> mappingHits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> shortcutTransfers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> ruleHits = new ConcurrentHashMap<>();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder[] rejections = new LongAdder[Rejection.values().length];
+    private final LongAdder[] rateLimited = new LongAdder[RateLimiter.Action.values().length];
+    private final LongAdder auditDropped = new LongAdder();
+    private final LongAdder[] admissions = new LongAdder[AdmissionControl.Decision.values().length];
+    private final LatencyHistogram eventLatency = new LatencyHistogram();
+
+    public TransferMetrics() {
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+        for (int i = 0; i < rateLimited.length; i++) {
+            rateLimited[i] = new LongAdder();
+        }
+        for (int i = 0; i < admissions.length; i++) {
+            admissions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Resolves the counters of all mappings, shortcuts and rules of a snapshot. Counters of removed mappings are dropped.
+     */
+    public Counters bind(RoutingTable routingTable, Shortcuts shortcuts, RoutingRules routingRules) {
+        LongAdder[] routeHits = new LongAdder[routingTable.size()];
+        for (Route route : routingTable.routes()) {
+            routeHits[route.id()] = mappingHits.computeIfAbsent(route.source(), $ -> new LongAdder());
+        }
+        // retainAll looks up every key in its argument, so that has to be a set for large routing tables
+        mappingHits.keySet().retainAll(routingTable.routes().stream().map(Route::source).collect(Collectors.toSet()));
+
+        LongAdder[] shortcutHits = new LongAdder[shortcuts.size()];
+        for (int i = 0; i < shortcuts.size(); i++) {
+            shortcutHits[i] = shortcutTransfers.computeIfAbsent(shortcuts.name(i), $ -> new LongAdder());
+        }
+        shortcutTransfers.keySet().retainAll(Set.copyOf(shortcuts.names()));
+
+        LongAdder[] ruleTransfers = new LongAdder[routingRules.size()];
+        for (RoutingRules.Rule rule : routingRules.rules()) {
+            ruleTransfers[rule.id()] = ruleHits.computeIfAbsent(rule.name(), $ -> new LongAdder());
+        }
+        ruleHits.keySet().retainAll(routingRules.rules().stream().map(RoutingRules.Rule::name).collect(Collectors.toSet()));
+
+        return new Counters(routeHits, shortcutHits, ruleTransfers);
+    }
+
+    public void miss() {
+        misses.increment();
+    }
+
+    public void forwarded() {
+        forwarded.increment();
+    }
+
+    public void rejected(Rejection reason) {
+        rejections[reason.ordinal()].increment();
+    }
+
+    public void rateLimited(RateLimiter.Action action) {
+        rateLimited[action.ordinal()].increment();
+    }
+
+    public void auditDropped() {
+        auditDropped.increment();
+    }
+
+    public void admission(AdmissionControl.Decision decision) {
+        admissions[decision.ordinal()].increment();
+    }
+
+    public void eventHandled(long nanos) {
+        eventLatency.record(nanos);
+    }
+
+    public Map<String, LongAdder> mappingHits() {
+        return mappingHits;
+    }
+
+    public Map<String, LongAdder> shortcutTransfers() {
+        return shortcutTransfers;
+    }
+
+    public Map<String, LongAdder> ruleHits() {
+        return ruleHits;
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long forwardedCount() {
+        return forwarded.sum();
+    }
+
+    public long rejections(Rejection reason) {
+        return rejections[reason.ordinal()].sum();
+    }
+
+    public long rateLimitedCount(RateLimiter.Action action) {
+        return rateLimited[action.ordinal()].sum();
+    }
+
+    public long auditDroppedCount() {
+        return auditDropped.sum();
+    }
+
+    public long admissionCount(AdmissionControl.Decision decision) {
+        return admissions[decision.ordinal()].sum();
+    }
+
+    public LatencyHistogram eventLatency() {
+        return eventLatency;
+    }
+
+    /**
+     * Counters of one snapshot, indexed by {@link Route#id()}, shortcut index and {@link RoutingRules.Rule#id()}.
+     */
+    public record Counters(LongAdder[] routeHits, LongAdder[] shortcutTransfers, LongAdder[] ruleHits) {
+
+        public void hit(Route route) {
+            routeHits[route.id()].increment();
+        }
+
+        public void shortcutTransfer(int index) {
+            shortcutTransfers[index].increment();
+        }
+
+        public void hit(RoutingRules.Rule rule) {
+            ruleHits[rule.id()].increment();
+        }
+    }
+
+    /**
+     * Power-of-two nanosecond buckets; recording is a leading-zero count and one adder increment.
+     */
+    public static final class LatencyHistogram {
+        // Bucket i counts values in [2^(i-1), 2^i) ns; the last bucket also takes everything larger
+        public static final int BUCKETS = 32;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder sumNanos = new LongAdder();
+
+        LatencyHistogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+            buckets[bucket].increment();
+            sumNanos.add(nanos);
+        }
+
+        public long[] counts() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        public long sumNanos() {
+            return sumNanos.sum();
+        }
+
+        /**
+         * @return the upper bound (in nanoseconds) of the bucket containing the given quantile, or 0 without data
+         */
+        public static long quantile(long[] counts, double quantile) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        public static long upperBound(int bucket) {
+            return 1L << bucket;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package dev.onechris.extension.transfertool;
+
+/**
+ * Everything a transfer decision depends on. Built completely before it is published,
+ * so handlers reading a single snapshot never see a partially applied reload.
+ *
+ * @param generation incremented with every successful load
+ * @param prober     probes the pools of this snapshot, or null if health checks are disabled
+ */
+public record TransferState(long generation, Config config, RoutingTable routingTable,
+                            Shortcuts shortcuts, LanguageManager languageManager, TransferMetrics.Counters counters,
+                            RateLimiter rateLimiter, RoutingRules routingRules,
+                            RegionalTargets regionalTargets, BedrockProber prober) {
+}
@@ -6,77 +6,258 @@ import org.geysermc.event.subscribe.Subscribe;
 import org.geysermc.geyser.api.command.Command;
 import org.geysermc.geyser.api.command.CommandSource;
 import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.geysermc.geyser.api.event.bedrock.SessionDisconnectEvent;
 import org.geysermc.geyser.api.event.java.ServerTransferEvent;
 import org.geysermc.geyser.api.event.lifecycle.GeyserDefineCommandsEvent;
 import org.geysermc.geyser.api.event.lifecycle.GeyserPreInitializeEvent;
 import org.geysermc.geyser.api.event.lifecycle.GeyserPreReloadEvent;
 import org.geysermc.geyser.api.event.lifecycle.GeyserRegisterPermissionsEvent;
+import org.geysermc.geyser.api.event.lifecycle.GeyserShutdownEvent;
 import org.geysermc.geyser.api.extension.Extension;
 import org.geysermc.geyser.api.extension.ExtensionLogger;
 import org.geysermc.geyser.api.util.TriState;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
 
 public class TransferTool implements Extension {
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final int MENU_CUSTOM = -1;
+    private static final int MENU_PREVIOUS = -2;
+    private static final int MENU_NEXT = -3;
+
     static ExtensionLogger logger;
-    private Map<Destination, Destination> transferMappings = new HashMap<>();
-    private Map<String, Destination> serverShortcuts = new HashMap<>();
-    private Config config;
-    private LanguageManager languageManager;
+    private volatile TransferState state;
+    private volatile BedrockProber prober;
+    private ScheduledExecutorService reloadExecutor;
+    private ConfigLoader.Loaded loadedConfig;
+    private volatile ConfigWatcher configWatcher;
+    private final MappingFiles mappingFiles = new MappingFiles("source");
+    private final MappingFiles shortcutFiles = new MappingFiles("name");
+    private final TransferMetrics metrics = new TransferMetrics();
+    private MetricsServer metricsServer;
+    private volatile AuditLog auditLog;
+    private volatile AffinityStore affinityStore;
+    // The capacity affinity.dat was first opened with by this process, see updateAffinityStore
+    private int affinityCapacity;
+    private volatile ClusterState cluster;
+    private volatile RegionLocator regionLocator;
+    private volatile TransferTrace trace;
+    private volatile AdmissionControl admission;
+    private volatile DnsCache dnsCache;
+    private final DrainCommand drainCommand = new DrainCommand(() -> this.state, () -> geyserApi().onlineConnections(),
+            (connection, destination) -> transfer(this.state, connection, destination, AuditLog.Kind.DRAIN, null));
 
     @Subscribe
     public void onEnable(GeyserPreInitializeEvent ignored) {
         logger = this.logger();
-        loadConfig();
-        loadLanguageManager();
+        reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TransferTool-Reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            state = loadState(0);
+        } catch (Exception e) {
+            logger.error("Unable to load TransferTool config! " + e.getMessage());
+            this.disable();
+            return;
+        }
+        updateProber(state);
+        updateRateLimiter(state);
+        updateMetricsServer(state.config());
+        updateAuditLog(state.config());
+        updateAffinityStore(state.config());
+        updateCluster(state.config());
+        updateRegionLocator(state.config());
+        updateTrace(state.config());
+        updateAdmission(state.config());
+        updateDnsCache(state);
+        updateConfigWatcher(state.config());
     }
 
+    /**
+     * Reloads before returning, so Geyser registers permissions and commands of the new config afterwards.
+     * Runs on the reload executor to not overlap with automatic reloads.
+     */
     @Subscribe
     public void onReload(GeyserPreReloadEvent ignored) {
         logger.info("Reloading config!");
-        loadConfig();
-        loadLanguageManager();
+        try {
+            reloadExecutor.submit(this::reload).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            logger.error("Unable to reload TransferTool config! " + e.getMessage());
+        }
+    }
+
+    @Subscribe
+    public void onShutdown(GeyserShutdownEvent ignored) {
+        if (configWatcher != null) {
+            configWatcher.close();
+        }
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+        if (prober != null) {
+            prober.stop();
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        drainCommand.shutdown();
+        if (auditLog != null) {
+            auditLog.stop();
+        }
+        closeAffinityStore();
+        if (cluster != null) {
+            cluster.stop();
+        }
+        if (regionLocator != null) {
+            regionLocator.stop();
+        }
+        if (admission != null) {
+            admission.stop();
+        }
+        if (dnsCache != null) {
+            dnsCache.stop();
+        }
+    }
+
+    @Subscribe
+    public void onDisconnect(SessionDisconnectEvent event) {
+        TransferState state = this.state;
+        if (state != null) {
+            state.languageManager().forget(event.connection());
+            state.shortcuts().forget(event.connection());
+            state.routingRules().forget(event.connection());
+        }
+        RegionLocator regionLocator = this.regionLocator;
+        if (regionLocator != null) {
+            regionLocator.forget(event.connection());
+        }
+        AdmissionControl admission = this.admission;
+        if (admission != null) {
+            admission.disconnected(event.connection());
+        }
+        drainCommand.disconnected(event.connection());
     }
 
     @Subscribe
     public void onTransferEvent(ServerTransferEvent event) {
-        logger().debug("TransferTool: Handling ServerTransferEvent: " + event.toString());
-
-        Destination target = new Destination(event.host(), event.port());
-        Destination bedrockTarget = transferMappings.get(target);
-        if (bedrockTarget != null) {
-            logger.debug(String.format("Transferring %s to %s based on transfer mapping", event.connection().name(), bedrockTarget));
-            event.bedrockPort(bedrockTarget.port());
-            event.bedrockHost(bedrockTarget.ip());
+        long start = System.nanoTime();
+        try {
+            handleTransferEvent(event);
+        } finally {
+            metrics.eventHandled(System.nanoTime() - start);
+        }
+    }
+
+    private void handleTransferEvent(ServerTransferEvent event) {
+        TransferState state = this.state;
+        Route route = state.routingTable().lookup(event.host(), event.port());
+        RoutingRules.Rule rule = state.routingRules().match(route, event.connection());
+        if (rule != null) {
+            state.counters().hit(rule);
+            AffinityStore affinity = affinityStore;
+            Destination bedrockTarget = affinity == null ? rule.targets().select()
+                    : affinity.selectForRule(event.connection(), rule.name(), rule.targets());
+            Destination admitted = admitNow(event.connection(), bedrockTarget);
+            if (admitted == null) {
+                record(AuditLog.Kind.RULE, event.connection(), event.host(), event.port(), null, 0, rule.admissionReason());
+                return;
+            }
+            recordTransfer(admitted);
+            event.bedrockHost(resolved(admitted.ip()));
+            event.bedrockPort(admitted.port());
+            record(AuditLog.Kind.RULE, event.connection(), event.host(), event.port(), admitted.ip(), admitted.port(),
+                    admitted == bedrockTarget ? rule.name() : rule.overflowReason());
             return;
-        } else if (config.forwardOriginalTarget()) {
-            logger.debug(String.format("Transferring %s to %s due to java transfer forwarding", event.connection().name(), bedrockTarget));
+        }
+        if (route != null) {
+            state.counters().hit(route);
+            TargetPool targets = route.targets();
+            String region = region(state, event.connection());
+            TargetPool regional = state.regionalTargets().route(region, route);
+            if (regional != null) {
+                targets = regional;
+            }
+            AffinityStore affinity = affinityStore;
+            Destination bedrockTarget = affinity == null ? targets.select()
+                    : affinity.selectForMapping(event.connection(), route.source(), targets);
+            int bedrockPort = route.targetPort(bedrockTarget, event.port());
+            String reason = route.source();
+            if (admission != null) {
+                Destination target = bedrockPort == bedrockTarget.port() ? bedrockTarget : Destination.of(bedrockTarget.ip(), bedrockPort);
+                Destination admitted = admitNow(event.connection(), target);
+                if (admitted == null) {
+                    record(AuditLog.Kind.MAPPING, event.connection(), event.host(), event.port(), null, 0, reason + " (admission)");
+                    return;
+                }
+                if (admitted != target) {
+                    reason += " (overflow)";
+                }
+                bedrockTarget = admitted;
+                bedrockPort = admitted.port();
+            }
+            recordTransfer(bedrockTarget);
+            event.bedrockPort(bedrockPort);
+            event.bedrockHost(resolved(bedrockTarget.ip()));
+            record(AuditLog.Kind.MAPPING, event.connection(), event.host(), event.port(), bedrockTarget.ip(), bedrockPort, reason);
+            return;
+        }
+
+        metrics.miss();
+        if (state.config().forwardOriginalTarget()) {
+            metrics.forwarded();
             event.bedrockHost(event.host());
             event.bedrockPort(event.port());
+            record(AuditLog.Kind.FORWARD, event.connection(), event.host(), event.port(), event.host(), event.port(), null);
             return;
         }
 
-        logger.debug(String.format("No target found for Java server %s:%s", event.host(), event.port()));
+        record(AuditLog.Kind.UNMAPPED, event.connection(), event.host(), event.port(), null, 0, null);
     }
 
     @Subscribe
     public void registerPermissions(GeyserRegisterPermissionsEvent event) {
+        TransferState state = this.state;
         event.register("transfertool.command.reload", TriState.NOT_SET);
+        event.register("transfertool.command.stats", TriState.NOT_SET);
+        event.register("transfertool.command.drain", TriState.NOT_SET);
+        event.register("transfertool.command.trace", TriState.NOT_SET);
 
-        if (config.addTransferCommand()) {
+        if (state.config().addTransferCommand()) {
             event.register("transfertool.command.transfer", TriState.TRUE);
-            event.register("transfertool.command.transfer.any", TriState.NOT_SET);
+            event.register(Shortcuts.TRANSFER_ANY_PERMISSION, TriState.NOT_SET);
 
-            for (var shortcut : serverShortcuts.keySet()) {
-                event.register("transfertool.shortcuts." + shortcut, TriState.TRUE);
+            Shortcuts shortcuts = state.shortcuts();
+            for (int i = 0; i < shortcuts.size(); i++) {
+                event.register(shortcuts.permission(i), TriState.TRUE);
             }
         }
     }
 
     @Subscribe
     public void onCommandRegister(GeyserDefineCommandsEvent event) {
+        TransferState state = this.state;
+        LanguageManager languageManager = state.languageManager();
         event.register(
                 Command.builder(this)
                     .name("reload")
@@ -87,7 +268,37 @@ public class TransferTool implements Extension {
                     .build()
         );
 
-        if (config.addTransferCommand()) {
+        event.register(
+                Command.builder(this)
+                    .name("stats")
+                    .description(languageManager.getLocaleString("commands.stats.desc"))
+                    .permission("transfertool.command.stats")
+                    .source(CommandSource.class)
+                    .executor(new StatsCommand(() -> this.state, metrics))
+                    .build()
+        );
+
+        event.register(
+                Command.builder(this)
+                    .name("drain")
+                    .description(languageManager.getLocaleString("commands.drain.desc"))
+                    .permission("transfertool.command.drain")
+                    .source(CommandSource.class)
+                    .executor(drainCommand)
+                    .build()
+        );
+
+        event.register(
+                Command.builder(this)
+                    .name("trace")
+                    .description(languageManager.getLocaleString("commands.trace.desc"))
+                    .permission("transfertool.command.trace")
+                    .source(CommandSource.class)
+                    .executor(new TraceCommand(() -> this.state, () -> this.trace))
+                    .build()
+        );
+
+        if (state.config().addTransferCommand()) {
             event.register(
                 Command.<GeyserConnection>builder(this)
                     .name("transfer")
@@ -103,160 +314,728 @@ public class TransferTool implements Extension {
     }
 
     private void handleArgs(GeyserConnection source, Command command, String[] args) {
+        TransferState state = this.state;
+        LanguageManager languageManager = state.languageManager();
+        Shortcuts shortcuts = state.shortcuts();
+
         // May occur if someone changes the config to no longer register the command.
         // Commands cannot be unregistered :/
-        if (!config.addTransferCommand()) {
+        if (!state.config().addTransferCommand()) {
             source.sendMessage(languageManager.getLocaleString(source, "commands.not_enabled"));
             return;
         }
 
+        Shortcuts.PermissionSnapshot permissions = shortcuts.permissions(source);
         switch (args.length) {
             case 0 -> {
-                if (transferMappings.isEmpty() && !mayTransferToAny(source)) {
+                if (permissions.visible().length == 0 && !permissions.mayTransferAny()) {
                     source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.none_available"));
                     return;
                 }
-
-                boolean mayTransferAny = mayTransferToAny(source);
-
-                SimpleForm.Builder builder = SimpleForm.builder();
-
-                builder.title(languageManager.getLocaleString(source, "menu.transfer.title"));
-
-                for (String shortcut : serverShortcuts.keySet()) {
-                    builder.optionalButton(shortcut, source.hasPermission("transfertool.shortcuts." + shortcut));
-                }
-
-                if (mayTransferAny) {
-                    builder.button(languageManager.getLocaleString(source, "menu.transfer.custom"));
+                if (!allowed(state, source, RateLimiter.Action.MENU)) {
+                    return;
                 }
-
-                builder.validResultHandler((form, resp) -> {
-                    // first: check if they chose the custom button?
-                    if (mayTransferAny && resp.clickedButtonId() == form.buttons().size() - 1) {
-                        source.sendForm(CustomForm.builder()
-                                        .title(languageManager.getLocaleString(source, "menu.transfer.custom.title"))
-                                        .input(languageManager.getLocaleString(source, "menu.transfer.custom.ip"),
-                                                languageManager.getLocaleString(source, "form.custom.ip.placeholder"))
-                                        .input(languageManager.getLocaleString(source, "menu.transfer.custom.port"),
-                                                "19132", "19132")
-                                        .validResultHandler(response ->
-                                                tryParseAndTransferAny(response.asInput(), response.asInput(), source))
-                                .build());
-                        return;
-                    }
-
-                    // or: send 'em
-                    transfer(source, serverShortcuts.get(resp.clickedButton().text()));
-                });
-
-                source.sendForm(builder);
+                sendMenu(state, source, permissions, 0);
             }
             case 1 -> {
                 String arg = args[0];
 
-                if (!source.hasPermission("transfertool.shortcuts." + arg)) {
-                    source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.no_permission")
-                            .formatted(arg));
+                int index = shortcuts.indexOf(arg);
+                if (index >= 0 && !permissions.allows(index)) {
+                    source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.no_permission", arg));
                     return;
                 }
 
-                Destination destination = serverShortcuts.get(arg);
-                if (destination == null) {
-                    if (mayTransferToAny(source)) {
-                        destination = Destination.fromCombined(arg, 19132, source::sendMessage);
+                if (index < 0) {
+                    index = shortcuts.indexOfIgnoreCase(arg, permissions);
+                }
+
+                if (index >= 0) {
+                    if (allowed(state, source, RateLimiter.Action.SHORTCUT)) {
+                        transferToShortcut(state, source, index);
+                    }
+                } else if (permissions.mayTransferAny()) {
+                    // Any other input may be a host, even without a dot (e.g. "hub2" next to a "hub" shortcut)
+                    if (allowed(state, source, RateLimiter.Action.CUSTOM)) {
+                        transfer(state, source, Destination.parse(arg, RoutingTable.DEFAULT_BEDROCK_PORT), arg);
+                    }
+                } else {
+                    // Only suggested, never picked: a prefix such as "l" must not silently transfer to "lobby"
+                    List<String> suggestions = shortcuts.suggestions(arg, permissions, MAX_SUGGESTIONS);
+                    if (!suggestions.isEmpty()) {
+                        source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.did_you_mean",
+                                arg, String.join(", ", suggestions)));
                     } else {
-                        source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.not_found")
-                                .formatted(arg));
-                        return;
+                        source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.not_found", arg));
                     }
                 }
-
-                transfer(source, destination);
             }
             case 2 -> {
-                if (!mayTransferToAny(source)) {
+                if (!permissions.mayTransferAny()) {
                     source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.too_many_args"));
                     return;
                 }
 
-                tryParseAndTransferAny(args[0], args[1], source);
+                tryParseAndTransferAny(state, args[0], args[1], source);
             }
             default -> {
-                source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.unknown_args").formatted(args.length));
-                source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.args_provided").formatted(Arrays.toString(args)));
+                source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.unknown_args", args.length));
+                source.sendMessage(languageManager.getLocaleString(source, "commands.transfer.args_provided", Arrays.toString(args)));
             }
         }
     }
 
-    private void transfer(GeyserConnection source, Destination destination) {
-        if (destination != null) {
-            if (destination.invalidIp()) {
-                source.sendMessage(languageManager.getLocaleString(source, "destination.ip.invalid"));
-                return;
+    /**
+     * Sends one page of the transfer menu. Other pages are only built once the player navigates to them.
+     */
+    private void sendMenu(TransferState state, GeyserConnection source, Shortcuts.PermissionSnapshot permissions, int page) {
+        Shortcuts shortcuts = state.shortcuts();
+        Shortcuts.MenuLabels labels = shortcuts.menuLabels(state.languageManager(), source);
+        int[] visible = permissions.visible();
+        int pageSize = Math.max(1, state.config().menuPageSize());
+        int pages = Math.max(1, (visible.length + pageSize - 1) / pageSize);
+        int from = page * pageSize;
+        int to = Math.min(visible.length, from + pageSize);
+
+        SimpleForm.Builder builder = SimpleForm.builder();
+        builder.title(pages == 1 ? labels.title()
+                : state.languageManager().getLocaleString(source, "menu.transfer.title.page", page + 1, pages));
+
+        // button id -> shortcut index, or one of the MENU_* actions
+        int[] actions = new int[to - from + 3];
+        int buttons = 0;
+        for (int i = from; i < to; i++) {
+            builder.button(shortcuts.name(visible[i]));
+            actions[buttons++] = visible[i];
+        }
+        if (permissions.mayTransferAny()) {
+            builder.button(labels.custom());
+            actions[buttons++] = MENU_CUSTOM;
+        }
+        if (page > 0) {
+            builder.button(labels.previous());
+            actions[buttons++] = MENU_PREVIOUS;
+        }
+        if (page < pages - 1) {
+            builder.button(labels.next());
+            actions[buttons++] = MENU_NEXT;
+        }
+
+        builder.validResultHandler((form, resp) -> {
+            int action = actions[resp.clickedButtonId()];
+            switch (action) {
+                case MENU_PREVIOUS -> sendMenu(state, source, permissions, page - 1);
+                case MENU_NEXT -> sendMenu(state, source, permissions, page + 1);
+                case MENU_CUSTOM -> {
+                    if (!allowed(state, source, RateLimiter.Action.MENU)) {
+                        return;
+                    }
+                    source.sendForm(CustomForm.builder()
+                                    .title(labels.customTitle())
+                                    .input(labels.customIp(), labels.customIpPlaceholder())
+                                    .input(labels.customPort(), "19132", "19132")
+                                    .validResultHandler(response ->
+                                            tryParseAndTransferAny(state, response.asInput(), response.asInput(), source))
+                            .build());
+                }
+                default -> {
+                    if (!allowed(state, source, RateLimiter.Action.SHORTCUT)) {
+                        return;
+                    }
+                    transferToShortcut(state, source, action);
+                }
             }
+        });
+
+        source.sendForm(builder);
+    }
+
+    private void transferToShortcut(TransferState state, GeyserConnection source, int index) {
+        state.counters().shortcutTransfer(index);
+        Shortcuts shortcuts = state.shortcuts();
+        TargetPool pool = state.regionalTargets().shortcut(region(state, source), index);
+        transfer(state, source, pool == null ? shortcuts.pool(index) : pool, shortcuts.name(index));
+    }
 
-            if (destination.invalidPort()) {
-                source.sendMessage(languageManager.getLocaleString(source, "destination.port.invalid"));
+    /**
+     * @return the region of the player, or null if it is unknown or no regional targets are configured
+     */
+    private String region(TransferState state, GeyserConnection connection) {
+        RegionLocator regionLocator = this.regionLocator;
+        if (regionLocator == null || state.regionalTargets().isEmpty()) {
+            return null;
+        }
+        return regionLocator.region(connection);
+    }
+
+    private void transfer(TransferState state, GeyserConnection source, TargetPool pool, String shortcut) {
+        Destination destination = null;
+        if (pool != null) {
+            AffinityStore affinity = affinityStore;
+            destination = affinity == null ? pool.select() : affinity.selectForShortcut(source, shortcut, pool);
+        }
+        transfer(state, source, destination, AuditLog.Kind.SHORTCUT, shortcut);
+    }
+
+    /**
+     * @param requested what the player asked for (shortcut name or input), recorded in the audit log
+     */
+    private void transfer(TransferState state, GeyserConnection source, Destination destination,
+                          AuditLog.Kind kind, String requested) {
+        if (destination != null && kind != AuditLog.Kind.DRAIN && kind != AuditLog.Kind.QUEUED) {
+            destination = admit(source, destination);
+            if (destination == null) {
+                // Queued or turned away; the player was told
+                record(kind, source, requested, -1, null, 0, "admission");
                 return;
             }
-            source.transfer(destination.ip(), destination.port());
+        }
+        if (destination != null) {
+            source.transfer(resolved(destination.ip()), destination.port());
+            recordTransfer(destination);
+            record(kind, source, requested, -1, destination.ip(), destination.port(), null);
         } else {
-            source.sendMessage(languageManager.getLocaleString(source, "destination.unknown"));
+            metrics.rejected(TransferMetrics.Rejection.UNKNOWN);
+            source.sendMessage(state.languageManager().getLocaleString(source, "destination.unknown"));
         }
     }
 
-    private boolean mayTransferToAny(GeyserConnection connection) {
-        return connection.hasPermission("transfertool.command.transfer.any");
+    /**
+     * @param input the user input, shown in the error message if it could not be parsed
+     */
+    private void transfer(TransferState state, GeyserConnection source, DestinationResult result, String input) {
+        if (result instanceof Destination destination) {
+            transfer(state, source, destination, AuditLog.Kind.CUSTOM, input);
+        } else if (result instanceof DestinationError error) {
+            metrics.rejected(error.rejection());
+            source.sendMessage(state.languageManager().getLocaleString(source, error.translationKey(), input));
+        }
     }
 
-    private void tryParseAndTransferAny(String ip, String port, GeyserConnection source) {
-        try {
-            int parsed = Integer.parseInt(port);
-            Destination destination = new Destination(ip, parsed);
-            transfer(source, destination);
-        } catch (NumberFormatException e) {
-            source.sendMessage(languageManager.getLocaleString(source, "destination.port.invalid")
-                    .formatted(port));
+    private void tryParseAndTransferAny(TransferState state, String ip, String port, GeyserConnection source) {
+        if (!allowed(state, source, RateLimiter.Action.CUSTOM)) {
+            return;
+        }
+        int parsedPort = port.isBlank() ? RoutingTable.DEFAULT_BEDROCK_PORT : Destination.parsePort(port.trim());
+        if (parsedPort < 0) {
+            transfer(state, source, DestinationError.INVALID_PORT, port);
+            return;
         }
+        transfer(state, source, Destination.parse(ip, parsedPort), ip);
     }
 
-    private void loadLanguageManager() {
-        try {
-            languageManager = new LanguageManager(dataFolder().resolve("translations"), config, logger);
-        } catch (Exception e) {
-            logger.error("Unable to load TransferTool language manager! " + e.getMessage());
-            this.disable();
+    /**
+     * @return where to transfer the player now, or null if admission control queued or turned them away
+     */
+    private Destination admit(GeyserConnection connection, Destination destination) {
+        AdmissionControl admission = this.admission;
+        return admission == null ? destination : admission.admit(connection, destination);
+    }
+
+    /**
+     * Admission for Java transfer events: the player's session ends unless the event gets a Bedrock target,
+     * so they cannot wait in a queue.
+     *
+     * @return where to transfer the player now, or null if admission control turned them away
+     */
+    private Destination admitNow(GeyserConnection connection, Destination destination) {
+        AdmissionControl admission = this.admission;
+        return admission == null ? destination : admission.admitNow(connection, destination);
+    }
+
+    /**
+     * @return the pre-resolved address of a target hostname if there is a fresh one, otherwise the host itself
+     */
+    private String resolved(String host) {
+        DnsCache dnsCache = this.dnsCache;
+        return dnsCache == null ? host : dnsCache.resolved(host);
+    }
+
+    private void recordTransfer(Destination destination) {
+        ClusterState cluster = this.cluster;
+        if (cluster != null) {
+            cluster.recordTransfer(destination);
+        }
+    }
+
+    /**
+     * Records a transfer decision in the trace and the audit log, if enabled.
+     */
+    private void record(AuditLog.Kind kind, GeyserConnection connection, String requested, int requestedPort,
+                        String targetHost, int targetPort, String reason) {
+        TransferTrace trace = this.trace;
+        if (trace != null) {
+            trace.record(kind, connection, requested, requestedPort, targetHost, targetPort, reason);
+        }
+        AuditLog auditLog = this.auditLog;
+        if (auditLog != null) {
+            auditLog.record(kind, connection, requested, requestedPort, targetHost, targetPort, reason);
         }
     }
 
-    private void loadConfig() {
+    /**
+     * @return whether the player may perform the action now; if not, they are told how long to wait
+     */
+    private boolean allowed(TransferState state, GeyserConnection source, RateLimiter.Action action) {
+        long waitNanos = state.rateLimiter().tryAcquire(source, action);
+        if (waitNanos == 0) {
+            return true;
+        }
+        metrics.rateLimited(action);
+        source.sendMessage(state.languageManager().getLocaleString(source, "commands.transfer.cooldown",
+                (waitNanos + 999_999_999) / 1_000_000_000));
+        return false;
+    }
+
+    /**
+     * Runs on the reload executor. A failed reload keeps the previous snapshot.
+     */
+    private void reload() {
+        TransferState previous = state;
         try {
-            config = ConfigLoader.loadConfig(this);
+            state = loadState(previous == null ? 0 : previous.generation() + 1);
+            updateProber(state);
+            updateRateLimiter(state);
+            updateMetricsServer(state.config());
+            updateAuditLog(state.config());
+            updateAffinityStore(state.config());
+            updateCluster(state.config());
+            updateRegionLocator(state.config());
+            updateTrace(state.config());
+            updateAdmission(state.config());
+            updateDnsCache(state);
+            updateConfigWatcher(state.config());
         } catch (Exception e) {
-            logger.error("Unable to load TransferTool config! " + e.getMessage());
-            this.disable();
-            return;
+            logger.error("Unable to reload TransferTool config, keeping the previous one! " + e.getMessage());
+        } finally {
+            if (configWatcher != null) {
+                configWatcher.markLoaded();
+            }
         }
+    }
 
-        Map<Destination, Destination> map = new HashMap<>();
+    private TransferState loadState(long generation) throws IOException {
+        // Reloads are mostly caused by other files (translations, mapping files); an unchanged config.yml is not parsed again
+        loadedConfig = ConfigLoader.loadConfig(this, loadedConfig);
+        Config config = loadedConfig.config();
 
-        for (Map.Entry<String, String> entry : config.transferMappings().entrySet()) {
-            map.put(Destination.fromCombined(entry.getKey(), 25565),
-                    Destination.fromCombined(entry.getValue(), 19132));
+        Config.HealthChecks healthChecks = config.healthChecks();
+        BedrockProber prober = null;
+        if (healthChecks.enabled()) {
+            // New settings are only applied to a running prober once this snapshot is published, see updateProber
+            prober = this.prober == null ? new BedrockProber(logger, healthChecks) : this.prober;
         }
+        final BedrockProber poolProber = prober;
+        Function<List<Destination>, TargetPool> pools = destinations ->
+                TargetPool.of(destinations, poolProber, healthChecks.selection());
 
-        logger.info("Registered %s transfer mappings.".formatted(map.size()));
-        this.transferMappings = map;
+        // Pools of unchanged entries can only be reused if they would be created the same way
+        TransferState previous = this.state;
+        boolean reusePools = previous != null && prober == this.prober
+                && previous.config().healthChecks().selection() == healthChecks.selection();
 
+        Map<String, String> mappings = withFiles(config.transferMappings(), config.transferMappingFiles(), mappingFiles);
+        RoutingTable table = RoutingTable.compile(mappings, pools, logger::warning, reusePools ? previous.routingTable() : null);
+        logger.info("Registered %s transfer mappings (%s compiled).".formatted(table.size(), table.recompiled()));
+
+        Map<String, TargetPool> shortcuts = new LinkedHashMap<>();
+        Map<String, String> shortcutSpecs = Map.of();
         if (config.addTransferCommand()) {
-            Map<String, Destination> shortcuts = new HashMap<>();
-            for (Map.Entry<String, String> entry : config.transferShortcuts().entrySet()) {
-                shortcuts.put(entry.getKey(), Destination.fromCombined(entry.getValue(), 19132));
+            shortcutSpecs = withFiles(config.transferShortcuts(), config.transferShortcutFiles(), shortcutFiles);
+            for (Map.Entry<String, String> entry : shortcutSpecs.entrySet()) {
+                TargetPool pool = reusePools ? previous.shortcuts().reusablePool(entry.getKey(), entry.getValue()) : null;
+                if (pool == null) {
+                    pool = TargetPool.parse(entry.getValue(), RoutingTable.DEFAULT_BEDROCK_PORT, poolProber, healthChecks.selection(), logger::error);
+                }
+                if (pool != null) {
+                    shortcuts.put(entry.getKey(), pool);
+                }
             }
 
             logger.info("Registered %s server name mappings.".formatted(shortcuts.size()));
-            this.serverShortcuts = shortcuts;
         }
+
+        RoutingRules rules = RoutingRules.compile(config.routingRules(), table,
+                target -> TargetPool.parse(target, RoutingTable.DEFAULT_BEDROCK_PORT, poolProber, healthChecks.selection(), logger::warning),
+                logger::warning);
+        if (!rules.isEmpty()) {
+            logger.info("Registered %s routing rules.".formatted(rules.size()));
+        }
+
+        LanguageManager languageManager = new LanguageManager(dataFolder().resolve("translations"), config, logger);
+
+        // Like the prober, the limiter only gets the new rates once this snapshot is published, see updateRateLimiter
+        RateLimiter rateLimiter = previous == null ? new RateLimiter(config.rateLimits()) : previous.rateLimiter();
+
+        Shortcuts compiledShortcuts = new Shortcuts(shortcuts, shortcutSpecs);
+        RegionalTargets regionalTargets = RegionalTargets.compile(config.regions(), table, compiledShortcuts,
+                target -> TargetPool.parse(target, RoutingTable.DEFAULT_BEDROCK_PORT, poolProber, healthChecks.selection(), logger::warning),
+                logger::warning);
+
+        return new TransferState(generation, config, table, compiledShortcuts, languageManager,
+                metrics.bind(table, compiledShortcuts, rules), rateLimiter, rules, regionalTargets, prober);
+    }
+
+    /**
+     * @return the inline entries, overridden by the entries of the given files (if any)
+     */
+    private Map<String, String> withFiles(Map<String, String> inline, List<String> files, MappingFiles reader) {
+        if (files.isEmpty()) {
+            return inline;
+        }
+        Map<String, String> entries = new LinkedHashMap<>(inline);
+        entries.putAll(reader.read(resolve(files), logger::warning));
+        return entries;
+    }
+
+    private List<Path> resolve(List<String> files) {
+        List<Path> paths = new ArrayList<>(files.size());
+        for (String file : files) {
+            paths.add(dataFolder().resolve(file).toAbsolutePath().normalize());
+        }
+        return paths;
+    }
+
+    /**
+     * (Re)creates the config watcher if auto reloading was toggled or the set of watched folders changed.
+     */
+    private void updateConfigWatcher(Config config) {
+        Set<Path> folders = new LinkedHashSet<>();
+        if (config.autoReload()) {
+            Path dataFolder = dataFolder().toAbsolutePath().normalize();
+            folders.add(dataFolder);
+            folders.add(dataFolder.resolve("translations"));
+            for (Path file : resolve(config.transferMappingFiles())) {
+                folders.add(file.getParent());
+            }
+            for (Path file : resolve(config.transferShortcutFiles())) {
+                folders.add(file.getParent());
+            }
+            if (config.regions().enabled()) {
+                folders.add(resolve(List.of(config.regions().file())).get(0).getParent());
+            }
+        }
+
+        ConfigWatcher current = configWatcher;
+        if (current != null && current.folders().equals(List.copyOf(folders))
+                && current.debounceMillis() == config.autoReloadDelayMillis()) {
+            return;
+        }
+        if (current != null) {
+            current.close();
+            configWatcher = null;
+        }
+        if (folders.isEmpty()) {
+            return;
+        }
+
+        ConfigWatcher watcher = new ConfigWatcher(List.copyOf(folders), config.autoReloadDelayMillis(),
+                reloadExecutor, this::reload, logger);
+        watcher.markLoaded();
+        try {
+            watcher.start();
+            configWatcher = watcher;
+        } catch (IOException e) {
+            logger.error("Unable to watch the TransferTool config for changes! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Switches to the prober of a published snapshot and applies its settings. Called on the reload executor only.
+     */
+    private void updateProber(TransferState state) {
+        BedrockProber prober = state.prober();
+        if (this.prober != null && this.prober != prober) {
+            this.prober.stop();
+        }
+        this.prober = prober;
+        if (prober == null) {
+            return;
+        }
+        prober.configure(state.config().healthChecks());
+
+        Set<Destination> pooled = new HashSet<>();
+        for (TargetPool pool : state.routingTable().pools()) {
+            if (pool.size() > 1) {
+                pooled.addAll(pool.members());
+            }
+        }
+        for (TargetPool pool : state.shortcuts().pools()) {
+            if (pool.size() > 1) {
+                pooled.addAll(pool.members());
+            }
+        }
+        for (RoutingRules.Rule rule : state.routingRules().rules()) {
+            if (rule.targets().size() > 1) {
+                pooled.addAll(rule.targets().members());
+            }
+        }
+        for (TargetPool pool : state.regionalTargets().pools()) {
+            if (pool.size() > 1) {
+                pooled.addAll(pool.members());
+            }
+        }
+        prober.retainOnly(pooled);
+
+        try {
+            if (!pooled.isEmpty()) {
+                prober.start();
+            }
+        } catch (IOException e) {
+            logger.error("Unable to start TransferTool health checks! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the rates of a published snapshot to the limiter, which is shared by all snapshots.
+     * Called on the reload executor only.
+     */
+    private void updateRateLimiter(TransferState state) {
+        state.rateLimiter().configure(state.config().rateLimits());
+    }
+
+    private void updateMetricsServer(Config config) {
+        Config.Metrics settings = config.metrics();
+        if (metricsServer != null) {
+            if (settings.httpEnabled() && metricsServer.boundTo(settings.httpAddress(), settings.httpPort())) {
+                return;
+            }
+            metricsServer.stop();
+            metricsServer = null;
+        }
+
+        if (settings.httpEnabled()) {
+            MetricsServer server = new MetricsServer(metrics,
+                    () -> prober == null ? List.of() : prober.targets(), settings.httpAddress(), settings.httpPort());
+            try {
+                server.start();
+                metricsServer = server;
+                logger.info("Serving TransferTool metrics on http://%s:%s/metrics".formatted(settings.httpAddress(), settings.httpPort()));
+            } catch (IOException e) {
+                logger.error("Unable to start the TransferTool metrics endpoint! " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * (Re)starts the audit log if it was toggled or its settings changed. Called on the reload executor only.
+     */
+    private void updateAuditLog(Config config) {
+        Config.Audit settings = config.audit();
+        Path folder = dataFolder().resolve(settings.folder()).toAbsolutePath().normalize();
+        AuditLog current = auditLog;
+        if (current != null) {
+            if (settings.enabled() && current.configuredAs(folder, settings)) {
+                return;
+            }
+            auditLog = null;
+            current.stop();
+        }
+
+        if (settings.enabled()) {
+            AuditLog log = new AuditLog(folder, settings, metrics, logger);
+            try {
+                log.start();
+                auditLog = log;
+            } catch (IOException e) {
+                logger.error("Unable to open the TransferTool audit log! " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens or closes the affinity store if it was toggled. Called on the reload executor only.
+     */
+    private void updateAffinityStore(Config config) {
+        Config.Affinity settings = config.affinity();
+        if (!settings.enabled()) {
+            closeAffinityStore();
+            return;
+        }
+
+        // Resizing truncates the file, which would crash transfer threads still using a previous store's mapping
+        // (and fails on Windows while it is mapped), so the file keeps the size it was first opened with
+        int capacity = AffinityStore.capacity(settings.maxEntries());
+        if (affinityCapacity == 0) {
+            affinityCapacity = capacity;
+        } else if (capacity != affinityCapacity) {
+            logger.warning("Changes to affinity.max-entries only take effect after a restart.");
+        }
+
+        AffinityStore current = affinityStore;
+        if (current != null) {
+            current.ttlHours(settings.ttlHours());
+            return;
+        }
+        // Kept out of the data folder itself, whose files are watched for config changes
+        Path file = dataFolder().resolve("state").resolve("affinity.dat").toAbsolutePath().normalize();
+        try {
+            affinityStore = AffinityStore.open(file, affinityCapacity, settings.ttlHours());
+        } catch (IOException e) {
+            logger.error("Unable to open the TransferTool affinity store! " + e.getMessage());
+        }
+    }
+
+    private void closeAffinityStore() {
+        AffinityStore current = affinityStore;
+        if (current == null) {
+            return;
+        }
+        affinityStore = null;
+        try {
+            current.close();
+        } catch (IOException e) {
+            logger.error("Unable to save the TransferTool affinity store! " + e.getMessage());
+        }
+    }
+
+    /**
+     * (Re)starts the cluster state exchange if it was toggled or its settings changed. Called on the reload executor only.
+     */
+    private void updateCluster(Config config) {
+        Config.Cluster settings = config.cluster();
+        // Shared counts only feed into the health data of pool members, so without health checks they change nothing
+        boolean enabled = settings.enabled() && config.healthChecks().enabled();
+        if (settings.enabled() && !enabled) {
+            logger.warning("The TransferTool cluster exchange needs health-checks to be enabled, not starting it.");
+        }
+
+        ClusterState current = cluster;
+        if (current != null) {
+            if (enabled && current.configuredAs(settings)) {
+                return;
+            }
+            cluster = null;
+            current.stop();
+        }
+        if (!enabled) {
+            return;
+        }
+
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String peer : settings.peers()) {
+            if (Destination.parse(peer, settings.port()) instanceof Destination destination) {
+                InetSocketAddress address = new InetSocketAddress(destination.ip(), destination.port());
+                if (!address.isUnresolved()) {
+                    peers.add(address);
+                    continue;
+                }
+            }
+            logger.warning("Ignoring invalid or unresolvable cluster peer " + peer);
+        }
+
+        UdpGossipExchange exchange = new UdpGossipExchange(new InetSocketAddress(settings.bindAddress(), settings.port()),
+                peers, settings.fanout(), logger);
+        ClusterState state = new ClusterState(settings, exchange, () -> prober == null ? List.of() : prober.targets(), logger);
+        try {
+            state.start();
+            cluster = state;
+            logger.info("Sharing TransferTool transfer counts with %s other instances.".formatted(peers.size()));
+        } catch (IOException e) {
+            logger.error("Unable to start the TransferTool cluster exchange! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts or stops the region locator, and has it re-read the region file if that changed. Called on the reload executor only.
+     */
+    private void updateRegionLocator(Config config) {
+        Config.Regions settings = config.regions();
+        RegionLocator current = regionLocator;
+        if (!settings.enabled()) {
+            if (current != null) {
+                regionLocator = null;
+                current.stop();
+            }
+            return;
+        }
+
+        if (current == null) {
+            current = new RegionLocator(logger);
+            regionLocator = current;
+        }
+        current.load(dataFolder().resolve(settings.file()).toAbsolutePath().normalize(), settings.regionColumn());
+    }
+
+    /**
+     * (Re)creates the trace buffer if tracing was toggled or the buffer resized. Called on the reload executor only.
+     */
+    private void updateTrace(Config config) {
+        Config.Tracing settings = config.tracing();
+        TransferTrace current = trace;
+        if (!settings.enabled()) {
+            trace = null;
+            return;
+        }
+        if (current != null && current.capacity() == TransferTrace.capacity(settings.bufferSize())) {
+            current.samplePercent(settings.samplePercent());
+            return;
+        }
+        trace = new TransferTrace(settings);
+    }
+
+    /**
+     * Starts, reconfigures or stops admission control. Called on the reload executor only.
+     */
+    private void updateAdmission(Config config) {
+        Config.Admission settings = config.admission();
+        AdmissionControl current = admission;
+        if (!settings.enabled()) {
+            if (current != null) {
+                admission = null;
+                current.stop();
+            }
+            return;
+        }
+
+        if (current == null) {
+            current = new AdmissionControl(() -> this.state, metrics,
+                    (connection, destination) -> transfer(this.state, connection, destination, AuditLog.Kind.QUEUED, null));
+            current.configure(settings);
+            current.start();
+            admission = current;
+        } else {
+            current.configure(settings);
+        }
+    }
+
+    /**
+     * Starts, reconfigures or stops pre-resolving target hostnames. Called on the reload executor only.
+     */
+    private void updateDnsCache(TransferState state) {
+        Config.Dns settings = state.config().dns();
+        DnsCache current = dnsCache;
+        if (!settings.enabled()) {
+            if (current != null) {
+                dnsCache = null;
+                current.stop();
+            }
+            return;
+        }
+
+        List<TargetPool> pools = new ArrayList<>(state.routingTable().pools());
+        pools.addAll(state.shortcuts().pools());
+        for (RoutingRules.Rule rule : state.routingRules().rules()) {
+            pools.add(rule.targets());
+        }
+        pools.addAll(state.regionalTargets().pools());
+
+        Set<String> hosts = new HashSet<>();
+        long[] address = new long[2];
+        for (TargetPool pool : pools) {
+            for (Destination member : pool.members()) {
+                if (!InetLiterals.parseAny(member.ip(), 0, member.ip().length(), address)) {
+                    hosts.add(member.ip());
+                }
+            }
+        }
+
+        if (current == null) {
+            current = new DnsCache(HostResolver.SYSTEM, settings, logger);
+            dnsCache = current;
+        } else {
+            current.configure(settings);
+        }
+        current.track(hosts);
     }
 }
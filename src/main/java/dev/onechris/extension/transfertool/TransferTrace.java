@@ -0,0 +1,130 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the most recent (sampled) transfer decisions in a preallocated ring buffer, for '/transfertool trace'.
+ * Recording only stores references to strings that already exist; nothing is formatted until the trace is read.
+ * Writers never wait: a reader skips entries that were overwritten while it read them.
+ */
+public final class TransferTrace {
+    private static final int SAMPLE_SCALE = 1 << 24;
+
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    // Per slot: the position of the entry in it plus one, or 0 while it is being written
+    private final AtomicLongArray sequences;
+    private final long[] timeMillis;
+    private final AuditLog.Kind[] kinds;
+    private final String[] players;
+    private final String[] requested;
+    private final int[] requestedPorts;
+    private final String[] targetHosts;
+    private final int[] targetPorts;
+    private final String[] reasons;
+    private volatile int sampleThreshold;
+
+    public TransferTrace(Config.Tracing config) {
+        int capacity = capacity(config.bufferSize());
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.timeMillis = new long[capacity];
+        this.kinds = new AuditLog.Kind[capacity];
+        this.players = new String[capacity];
+        this.requested = new String[capacity];
+        this.requestedPorts = new int[capacity];
+        this.targetHosts = new String[capacity];
+        this.targetPorts = new int[capacity];
+        this.reasons = new String[capacity];
+        samplePercent(config.samplePercent());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the buffer size rounded up to a power of two (at least 16, at most 2^20)
+     */
+    public static int capacity(int bufferSize) {
+        int size = Math.max(16, Math.min(1 << 20, bufferSize));
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    public void samplePercent(double percent) {
+        sampleThreshold = (int) Math.round(Math.max(0, Math.min(100, percent)) / 100 * SAMPLE_SCALE);
+    }
+
+    /**
+     * @param requestedPort the Java port, or -1 if the player requested a shortcut or address
+     * @param targetHost the chosen Bedrock host, or null if there is none
+     * @param reason the matching mapping or rule, if any
+     */
+    public void record(AuditLog.Kind kind, GeyserConnection connection, String requested, int requestedPort,
+                       String targetHost, int targetPort, String reason) {
+        int threshold = sampleThreshold;
+        if (threshold < SAMPLE_SCALE && (threshold == 0 || ThreadLocalRandom.current().nextInt(SAMPLE_SCALE) >= threshold)) {
+            return;
+        }
+
+        long position = next.getAndIncrement();
+        int slot = (int) position & mask;
+        sequences.set(slot, 0);
+        // Readers must not see the new fields with the previous sequence
+        VarHandle.storeStoreFence();
+        timeMillis[slot] = System.currentTimeMillis();
+        kinds[slot] = kind;
+        players[slot] = connection.name();
+        this.requested[slot] = requested;
+        requestedPorts[slot] = requestedPort;
+        targetHosts[slot] = targetHost;
+        targetPorts[slot] = targetPort;
+        reasons[slot] = reason;
+        sequences.lazySet(slot, position + 1);
+    }
+
+    /**
+     * @param player only return decisions for this player (case-insensitive), or null for all players
+     * @return up to {@code limit} decisions, the most recent first
+     */
+    public List<Entry> recent(String player, int limit) {
+        List<Entry> entries = new ArrayList<>(Math.min(limit, capacity()));
+        long newest = next.get() - 1;
+        long oldest = Math.max(0, newest - mask);
+        for (long position = newest; position >= oldest && entries.size() < limit; position--) {
+            int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1) {
+                continue;
+            }
+            Entry entry = new Entry(timeMillis[slot], kinds[slot], players[slot], requested[slot],
+                    requestedPorts[slot], targetHosts[slot], targetPorts[slot], reasons[slot]);
+            VarHandle.acquireFence();
+            // Overwritten while reading
+            if (sequences.get(slot) != position + 1) {
+                continue;
+            }
+            if (player == null || player.equalsIgnoreCase(entry.player())) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return how many decisions were recorded in total (including ones that were overwritten since)
+     */
+    public long recorded() {
+        return next.get();
+    }
+
+    public record Entry(long timeMillis, AuditLog.Kind kind, String player, String requested, int requestedPort,
+                        String targetHost, int targetPort, String reason) {
+    }
+}
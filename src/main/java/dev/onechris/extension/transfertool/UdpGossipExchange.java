@@ -0,0 +1,202 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Exchanges {@link ClusterExchange.Update}s as UDP datagrams. Changed counts are sent to "fanout" random peers
+ * per round, and relayed by them in their next round, while full syncs go to every peer. Updates are batched
+ * into datagrams of at most {@link #MAX_DATAGRAM} bytes; datagrams from addresses that are not peers are ignored.
+ * <p>
+ * Datagram: magic (4), version (1), update count (2), then per update: origin (8), host length (1), host,
+ * port (2), transfers (8), recent transfers (4).
+ */
+public final class UdpGossipExchange implements ClusterExchange, Runnable {
+    private static final int MAGIC = 0x5454434c; // "TTCL"
+    private static final byte VERSION = 1;
+    private static final int MAX_DATAGRAM = 1200;
+    private static final int HEADER_SIZE = 7;
+
+    private final InetSocketAddress bindAddress;
+    private final List<InetSocketAddress> peers;
+    private final Set<InetAddress> peerAddresses = new HashSet<>();
+    private final int fanout;
+    private final ExtensionLogger logger;
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(MAX_DATAGRAM);
+
+    private DatagramChannel channel;
+    private Consumer<List<Update>> receiver;
+    private Thread thread;
+
+    /**
+     * @param fanout to how many random peers changes are sent per round; 0 sends them to all peers
+     */
+    public UdpGossipExchange(InetSocketAddress bindAddress, List<InetSocketAddress> peers, int fanout, ExtensionLogger logger) {
+        this.bindAddress = bindAddress;
+        this.peers = List.copyOf(peers);
+        this.fanout = fanout <= 0 ? peers.size() : Math.min(fanout, peers.size());
+        this.logger = logger;
+        for (InetSocketAddress peer : peers) {
+            peerAddresses.add(peer.getAddress());
+        }
+    }
+
+    @Override
+    public void start(Consumer<List<Update>> receiver) throws IOException {
+        this.receiver = receiver;
+        channel = DatagramChannel.open();
+        try {
+            channel.bind(bindAddress);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        thread = new Thread(this, "TransferTool-Gossip");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close cluster channel: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void send(List<Update> updates, boolean full) {
+        if (peers.isEmpty() || updates.isEmpty()) {
+            return;
+        }
+
+        List<InetSocketAddress> targets = peers;
+        if (!full && fanout < peers.size()) {
+            targets = new ArrayList<>(peers);
+            Collections.shuffle(targets);
+            targets = targets.subList(0, fanout);
+        }
+
+        int next = 0;
+        while (next < updates.size()) {
+            sendBuffer.clear();
+            sendBuffer.putInt(MAGIC);
+            sendBuffer.put(VERSION);
+            sendBuffer.putShort((short) 0);
+            int count = 0;
+            while (next < updates.size()) {
+                int mark = sendBuffer.position();
+                try {
+                    write(sendBuffer, updates.get(next));
+                } catch (BufferOverflowException e) {
+                    sendBuffer.position(mark);
+                    if (count == 0) {
+                        // Cannot fit even on its own, i.e. an absurdly long host name
+                        next++;
+                        continue;
+                    }
+                    break;
+                }
+                count++;
+                next++;
+            }
+            if (count == 0) {
+                continue;
+            }
+            sendBuffer.putShort(5, (short) count);
+            sendBuffer.flip();
+
+            for (InetSocketAddress peer : targets) {
+                try {
+                    channel.send(sendBuffer.duplicate(), peer);
+                } catch (IOException e) {
+                    logger.debug("Unable to send cluster update to " + peer + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(65535);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                if (!(sender instanceof InetSocketAddress address) || !peerAddresses.contains(address.getAddress())) {
+                    continue;
+                }
+                buffer.flip();
+                List<Update> updates = read(buffer);
+                if (!updates.isEmpty()) {
+                    receiver.accept(updates);
+                }
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                logger.error("TransferTool cluster exchange failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void write(ByteBuffer buffer, Update update) {
+        byte[] host = update.target().ip().getBytes(StandardCharsets.US_ASCII);
+        if (host.length > 255) {
+            throw new BufferOverflowException();
+        }
+        buffer.putLong(update.origin());
+        buffer.put((byte) host.length);
+        buffer.put(host);
+        buffer.putShort((short) update.target().port());
+        buffer.putLong(update.transfers());
+        buffer.putFloat(update.recent());
+    }
+
+    /**
+     * @return the updates of the datagram, or an empty list if it is not a valid one
+     */
+    static List<Update> read(ByteBuffer buffer) {
+        try {
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                return List.of();
+            }
+            int count = buffer.getShort() & 0xFFFF;
+            List<Update> updates = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long origin = buffer.getLong();
+                byte[] host = new byte[buffer.get() & 0xFF];
+                buffer.get(host);
+                int port = buffer.getShort() & 0xFFFF;
+                long transfers = buffer.getLong();
+                float recent = buffer.getFloat();
+
+                // Hosts were canonical on the sending side; parsing again keeps garbage out of the interned pool
+                DestinationResult target = Destination.parse(new String(host, StandardCharsets.US_ASCII), port);
+                if (target instanceof Destination destination && destination.port() == port) {
+                    updates.add(new Update(origin, destination, transfers, recent));
+                }
+            }
+            return updates;
+        } catch (BufferUnderflowException e) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AdmissionControlTest {
+    private static final Destination TARGET = Destination.of("lobby.example.com", 19132);
+    private static final int ROUNDS = 50_000;
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final List<GeyserConnection> released = new CopyOnWriteArrayList<>();
+    private final TransferMetrics metrics = new TransferMetrics();
+    private TransferState state;
+
+    @TempDir
+    Path folder;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path translations = folder.resolve("translations");
+        Files.createDirectories(translations);
+        Config config = TestSupport.config(Config.class, "");
+        state = new TransferState(1, config, null, new Shortcuts(Map.of(), Map.of()),
+                new LanguageManager(translations, config, TestSupport.logger()), null, null, null, null, null);
+    }
+
+    /**
+     * Admission control with a fake clock, whose ticks are run by the test.
+     */
+    private AdmissionControl admission(String settings) throws Exception {
+        AdmissionControl admission = new AdmissionControl(() -> state, metrics, (connection, destination) -> {
+            assertEquals(TARGET, destination);
+            released.add(connection);
+        }, clock::get);
+        admission.configure(TestSupport.config(Config.Admission.class, "enabled: true\n" + settings));
+        return admission;
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static List<GeyserConnection> players(int count) {
+        List<GeyserConnection> players = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            players.add(TestSupport.connection("player" + i, "en_US"));
+        }
+        return players;
+    }
+
+    @Test
+    void releasesQueuedPlayersInOrderAtTheConfiguredRate() throws Exception {
+        AdmissionControl admission = admission("transfers-per-second: 2");
+        List<GeyserConnection> players = players(5);
+
+        // A burst of one second's worth goes through, the rest waits
+        assertSame(TARGET, admission.admit(players.get(0), TARGET));
+        assertSame(TARGET, admission.admit(players.get(1), TARGET));
+        for (GeyserConnection player : players.subList(2, 5)) {
+            assertNull(admission.admit(player, TARGET));
+        }
+        assertEquals(3, metrics.admissionCount(AdmissionControl.Decision.QUEUED));
+
+        admission.tick();
+        assertEquals(List.of(), released);
+        advance(499);
+        admission.tick();
+        assertEquals(List.of(), released);
+
+        advance(1);
+        admission.tick();
+        assertEquals(players.subList(2, 3), released);
+        advance(500);
+        admission.tick();
+        assertEquals(players.subList(2, 4), released);
+        advance(500);
+        admission.tick();
+        assertEquals(players.subList(2, 5), released);
+    }
+
+    @Test
+    void freesInFlightSlotsWhenPlayersDisconnect() throws Exception {
+        AdmissionControl admission = admission("max-in-flight: 1\ntransfer-timeout-millis: 60000");
+        List<GeyserConnection> players = players(3);
+
+        assertSame(TARGET, admission.admit(players.get(0), TARGET));
+        assertNull(admission.admit(players.get(1), TARGET));
+        assertNull(admission.admit(players.get(2), TARGET));
+        admission.tick();
+        assertEquals(List.of(), released);
+
+        admission.disconnected(players.get(0));
+        admission.tick();
+        assertEquals(players.subList(1, 2), released);
+
+        // A player that leaves while waiting gives up their place
+        admission.disconnected(players.get(2));
+        admission.disconnected(players.get(1));
+        admission.tick();
+        assertEquals(players.subList(1, 2), released);
+        assertSame(TARGET, admission.admit(players(1).get(0), TARGET));
+    }
+
+    @Test
+    void freesInFlightSlotsAfterTheTransferTimeout() throws Exception {
+        AdmissionControl admission = admission("max-in-flight: 1\ntransfer-timeout-millis: 1000");
+        List<GeyserConnection> players = players(2);
+
+        assertSame(TARGET, admission.admit(players.get(0), TARGET));
+        assertNull(admission.admit(players.get(1), TARGET));
+        advance(1000);
+        admission.tick();
+        assertEquals(List.of(), released);
+
+        advance(1);
+        admission.tick();
+        assertEquals(players.subList(1, 2), released);
+    }
+
+    @Test
+    void sendsPlayersOverTheLimitToTheOverflowServer() throws Exception {
+        AdmissionControl admission = admission("""
+                max-in-flight: 1
+                overflow: overflow.example.com
+                targets:
+                  "other.example.com":
+                    max-in-flight: 1
+                """);
+        List<GeyserConnection> players = players(3);
+
+        assertSame(TARGET, admission.admit(players.get(0), TARGET));
+        assertEquals(Destination.of("overflow.example.com", 19132), admission.admit(players.get(1), TARGET));
+        assertEquals(1, metrics.admissionCount(AdmissionControl.Decision.OVERFLOWED));
+
+        // Per-server limits replace the default ones, including the overflow server
+        Destination other = Destination.of("other.example.com", 19132);
+        assertSame(other, admission.admit(players.get(2), other));
+        assertNull(admission.admit(players.get(1), other));
+        assertEquals(1, metrics.admissionCount(AdmissionControl.Decision.QUEUED));
+    }
+
+    @Test
+    void turnsPlayersAwayOnceTheQueueIsFull() throws Exception {
+        AdmissionControl admission = admission("max-in-flight: 1\nmax-queue-length: 2");
+        List<GeyserConnection> players = players(4);
+
+        assertSame(TARGET, admission.admit(players.get(0), TARGET));
+        assertNull(admission.admit(players.get(1), TARGET));
+        assertNull(admission.admit(players.get(2), TARGET));
+        assertNull(admission.admit(players.get(3), TARGET));
+        assertEquals(2, metrics.admissionCount(AdmissionControl.Decision.QUEUED));
+        assertEquals(1, metrics.admissionCount(AdmissionControl.Decision.TURNED_AWAY));
+
+        // Only the queued players are released
+        admission.disconnected(players.get(0));
+        admission.tick();
+        admission.disconnected(players.get(1));
+        admission.tick();
+        admission.disconnected(players.get(2));
+        admission.tick();
+        assertEquals(players.subList(1, 3), released);
+    }
+
+    @Test
+    void neverQueuesPlayersThatCannotWait() throws Exception {
+        AdmissionControl admission = admission("max-in-flight: 1");
+        List<GeyserConnection> players = players(2);
+
+        assertSame(TARGET, admission.admitNow(players.get(0), TARGET));
+        // Sent away by a Java server: Geyser ends their session unless they are transferred now
+        assertNull(admission.admitNow(players.get(1), TARGET));
+        assertEquals(1, metrics.admissionCount(AdmissionControl.Decision.TURNED_AWAY));
+        assertEquals(0, metrics.admissionCount(AdmissionControl.Decision.QUEUED));
+
+        admission.disconnected(players.get(0));
+        admission.tick();
+        assertEquals(List.of(), released);
+    }
+
+    @Test
+    void keepsLimitsWhenAnIdleGateIsRemovedDuringAdmission() throws Exception {
+        AdmissionControl admission = admission("max-in-flight: 1\nmax-queue-length: 0");
+
+        // Every round leaves the gate idle, so ticks keep removing gates while players are admitted
+        AtomicBoolean done = new AtomicBoolean();
+        Thread ticker = new Thread(() -> {
+            while (!done.get()) {
+                admission.tick();
+            }
+        });
+        ticker.start();
+        List<Thread> threads = new ArrayList<>();
+        List<String> failures = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Destination target = Destination.of("server" + t + ".example.com", 19132);
+            GeyserConnection first = TestSupport.connection("first" + t, "en_US");
+            GeyserConnection second = TestSupport.connection("second" + t, "en_US");
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < ROUNDS && failures.isEmpty(); i++) {
+                    if (admission.admit(first, target) != target) {
+                        failures.add(target + ": first player not admitted in round " + i);
+                    }
+                    // Would be admitted as well if the first player's slot was taken from a removed gate
+                    if (admission.admit(second, target) != null) {
+                        failures.add(target + ": limit exceeded in round " + i);
+                    }
+                    admission.disconnected(first);
+                }
+            }));
+        }
+        try {
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            done.set(true);
+            ticker.join();
+        }
+        assertEquals(List.of(), failures);
+        assertEquals(4 * ROUNDS, metrics.admissionCount(AdmissionControl.Decision.TURNED_AWAY));
+    }
+}
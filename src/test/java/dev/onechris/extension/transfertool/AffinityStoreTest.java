@@ -0,0 +1,153 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AffinityStoreTest {
+    private static final Destination FIRST = Destination.of("10.0.0.1", 19132);
+    private static final Destination SECOND = Destination.of("10.0.0.2", 19132);
+    private static final GeyserConnection PLAYER = player("2535416409489371");
+    private static final int CAPACITY = AffinityStore.capacity(64);
+
+    @TempDir
+    Path folder;
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private final List<AffinityStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (AffinityStore store : stores) {
+            store.close();
+        }
+    }
+
+    private AffinityStore open(int capacity, int ttlHours) throws IOException {
+        AffinityStore store = AffinityStore.open(folder.resolve("affinity.dat"), capacity, ttlHours, now::get);
+        stores.add(store);
+        return store;
+    }
+
+    /**
+     * A round-robin pool without health data; a fresh one always picks {@link #FIRST} first.
+     */
+    private static TargetPool pool() {
+        return TargetPool.of(List.of(FIRST, SECOND), null, TargetPool.Selection.LEAST_LOADED);
+    }
+
+    /**
+     * Sends the player to {@link #SECOND} for the given source, which a fresh pool would not pick.
+     */
+    private static void sendToSecond(AffinityStore store, String source) {
+        TargetPool pool = pool();
+        pool.select();
+        assertEquals(SECOND, store.selectForMapping(PLAYER, source, pool));
+    }
+
+    /**
+     * @return {@link #SECOND} if the store remembered it for the given source; remembers the result
+     */
+    private static Destination remembered(AffinityStore store, String source) {
+        return store.selectForMapping(PLAYER, source, pool());
+    }
+
+    @Test
+    void remembersTargetsAcrossReopens() throws IOException {
+        AffinityStore store = open(CAPACITY, 0);
+        sendToSecond(store, "lobby.example.com");
+        assertEquals(SECOND, remembered(store, "lobby.example.com"));
+        assertEquals(FIRST, remembered(store, "other.example.com"));
+        store.close();
+        stores.remove(store);
+
+        AffinityStore reopened = open(CAPACITY, 0);
+        assertEquals(SECOND, remembered(reopened, "lobby.example.com"));
+    }
+
+    @Test
+    void startsOverWithAnotherCapacity() throws IOException {
+        AffinityStore store = open(CAPACITY, 0);
+        sendToSecond(store, "lobby.example.com");
+        store.close();
+        stores.remove(store);
+
+        AffinityStore resized = open(CAPACITY * 2, 0);
+        assertEquals(64 + CAPACITY * 2L * 32, Files.size(folder.resolve("affinity.dat")));
+        assertEquals(FIRST, remembered(resized, "lobby.example.com"));
+    }
+
+    @Test
+    void forgetsTargetsUnusedForTheTtl() throws IOException {
+        AffinityStore store = open(CAPACITY, 1);
+        sendToSecond(store, "lobby.example.com");
+
+        // Each use starts the TTL again
+        now.addAndGet(TimeUnit.MINUTES.toMillis(59));
+        assertEquals(SECOND, remembered(store, "lobby.example.com"));
+        now.addAndGet(TimeUnit.MINUTES.toMillis(59));
+        assertEquals(SECOND, remembered(store, "lobby.example.com"));
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(61));
+        assertEquals(FIRST, remembered(store, "lobby.example.com"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntryOfAFullBucket() throws IOException {
+        AffinityStore store = open(CAPACITY, 0);
+
+        // Nine sources whose entries share a bucket of eight slots
+        List<String> sources = new ArrayList<>();
+        int bucket = store.bucket(2535416409489371L, AffinityStore.hash("source-0"));
+        for (int i = 0; sources.size() < 9; i++) {
+            String source = "source-" + i;
+            if (store.bucket(2535416409489371L, AffinityStore.hash(source)) == bucket) {
+                sources.add(source);
+            }
+        }
+
+        for (String source : sources.subList(0, 8)) {
+            now.incrementAndGet();
+            sendToSecond(store, source);
+        }
+        now.incrementAndGet();
+        assertEquals(SECOND, remembered(store, sources.get(0)));
+
+        // Evicts the second source, which is now the least recently used one
+        now.incrementAndGet();
+        sendToSecond(store, sources.get(8));
+        for (int i = 2; i < 9; i++) {
+            assertEquals(SECOND, remembered(store, sources.get(i)), sources.get(i));
+        }
+        assertEquals(SECOND, remembered(store, sources.get(0)));
+        assertEquals(FIRST, remembered(store, sources.get(1)));
+    }
+
+    @Test
+    void doesNotTrackPlayersWithoutXuid() throws IOException {
+        AffinityStore store = open(CAPACITY, 0);
+        GeyserConnection offline = player(null);
+        TargetPool pool = pool();
+        pool.select();
+        assertEquals(SECOND, store.selectForMapping(offline, "lobby.example.com", pool));
+        assertEquals(FIRST, store.selectForMapping(offline, "lobby.example.com", pool()));
+    }
+
+    private static GeyserConnection player(String xuid) {
+        GeyserConnection connection = TestSupport.connection("Player", "en_us");
+        return (GeyserConnection) Proxy.newProxyInstance(AffinityStoreTest.class.getClassLoader(), new Class<?>[]{GeyserConnection.class},
+                (proxy, method, args) -> method.getName().equals("xuid") ? xuid : method.invoke(connection, args));
+    }
+}
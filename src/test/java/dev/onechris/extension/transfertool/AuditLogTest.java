@@ -0,0 +1,103 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static dev.onechris.extension.transfertool.TestSupport.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogTest {
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT)
+            .withZone(ZoneOffset.UTC);
+
+    @TempDir
+    Path folder;
+    private AuditLog log;
+
+    @AfterEach
+    void tearDown() {
+        if (log != null) {
+            log.stop();
+        }
+    }
+
+    @Test
+    void countsEncodedBytes() {
+        assertEquals(3, AuditLog.utf8Length("abc"));
+        assertEquals(2, AuditLog.utf8Length("\u00fc"));
+        assertEquals(3, AuditLog.utf8Length("\u20ac"));
+        assertEquals(4, AuditLog.utf8Length("\ud83d\ude00"));
+        assertEquals(1, AuditLog.utf8Length("\ud83d"));
+        for (String text : List.of("plain", "b\u00fccher \u20ac \ud83d\ude00")) {
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, AuditLog.utf8Length(text), text);
+        }
+    }
+
+    @Test
+    void rotatesBySizeInBytesEvenIfTheArchiveNameIsTaken() throws Exception {
+        // Archives that a previous rotation in the same second would have written
+        Set<Path> taken = new HashSet<>();
+        long now = Instant.now().getEpochSecond();
+        for (long second = now; second < now + 5; second++) {
+            Path archive = folder.resolve("transfers-" + SUFFIX.format(Instant.ofEpochSecond(second)) + ".log");
+            Files.writeString(archive, "old\n");
+            taken.add(archive);
+        }
+
+        log = new AuditLog(folder, TestSupport.config(Config.Audit.class, """
+                flush-interval-millis: 10
+                max-file-size-mb: 1
+                compress: false
+                max-archives: 0
+                """), new TransferMetrics(), TestSupport.logger());
+        log.start();
+
+        // 600 records of about 2 KB each in UTF-8, but only about 1000 chars
+        String player = "\u00fc".repeat(1000);
+        for (int i = 0; i < 600; i++) {
+            assertTrue(log.offer(new AuditLog.Entry(System.currentTimeMillis(), AuditLog.Kind.CUSTOM, player, null,
+                    "example.com", 19132, "example.com", 19132, null)));
+        }
+        await("a rotation", 5000, () -> archives().size() > taken.size());
+
+        Path current = folder.resolve("transfers.log");
+        log.offer(new AuditLog.Entry(System.currentTimeMillis(), AuditLog.Kind.CUSTOM, "after", null,
+                "example.com", 19132, "example.com", 19132, null));
+        await("the log to keep writing", 5000, () -> read(current).contains("\"after\""));
+        for (Path archive : taken) {
+            assertEquals("old\n", Files.readString(archive));
+        }
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Set<Path> archives() {
+        try (Stream<Path> files = Files.list(folder)) {
+            Set<Path> archives = new HashSet<>();
+            files.filter(file -> file.getFileName().toString().startsWith("transfers-")).forEach(archives::add);
+            return archives;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static dev.onechris.extension.transfertool.TestSupport.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BedrockProberTest {
+    private BedrockProber prober;
+    private FakeBedrockServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        prober = new BedrockProber(TestSupport.logger(), TestSupport.config(Config.HealthChecks.class, """
+                interval-millis: 100
+                timeout-millis: 1000
+                unhealthy-after: 2
+                """));
+        server = new FakeBedrockServer("MCPE;Test server;686;1.21.0;5;20;1234;Sub;Survival;1;19132;19133;");
+    }
+
+    @AfterEach
+    void tearDown() {
+        prober.stop();
+        server.close();
+    }
+
+    @Test
+    void readsPlayerCountsFromPongs() throws Exception {
+        TargetHealth health = prober.track(server.destination());
+        prober.start();
+
+        await("a pong", 5000, () -> health.latencyMillis() >= 0);
+        assertTrue(health.healthy());
+        assertEquals(5, health.onlinePlayers());
+        assertEquals(20, health.maxPlayers());
+        assertTrue(health.available());
+    }
+
+    @Test
+    void marksSilentTargetsUnhealthyUntilTheyAnswerAgain() throws Exception {
+        TargetHealth health = prober.track(server.destination());
+        prober.start();
+        await("a pong", 5000, () -> health.latencyMillis() >= 0);
+
+        server.answering = false;
+        await("the target to be marked unhealthy", 5000, () -> !health.healthy());
+        assertFalse(health.available());
+
+        server.answering = true;
+        await("the target to recover", 5000, health::healthy);
+    }
+
+    @Test
+    void marksUnresolvableTargetsUnhealthy() throws Exception {
+        // .invalid never resolves (RFC 6761)
+        TargetHealth health = prober.track(Destination.of("target.invalid", 19132));
+        prober.start();
+
+        await("the target to be marked unhealthy", 5000, () -> !health.healthy());
+        assertFalse(health.available());
+    }
+
+    @Test
+    void ignoresMalformedPongs() throws Exception {
+        server.answer = "garbage";
+        TargetHealth health = prober.track(server.destination());
+        prober.start();
+
+        await("a pong", 5000, () -> health.latencyMillis() >= 0);
+        // Still healthy: the server answered, but did not tell its player counts
+        assertTrue(health.healthy());
+        assertEquals(-1, health.onlinePlayers());
+    }
+
+    @Test
+    void stopsProbingTargetsThatLeftAllPools() throws Exception {
+        TargetHealth health = prober.track(server.destination());
+        prober.retainOnly(List.of());
+        prober.start();
+
+        Thread.sleep(300);
+        assertEquals(0, server.pings);
+        assertEquals(-1, health.latencyMillis());
+    }
+
+    /**
+     * Answers RakNet unconnected pings on a loopback port, like a Bedrock server.
+     */
+    private static final class FakeBedrockServer implements Runnable {
+        private static final byte[] MAGIC = {
+                0x00, (byte) 0xff, (byte) 0xff, 0x00, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe,
+                (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, 0x12, 0x34, 0x56, 0x78
+        };
+
+        private final DatagramSocket socket;
+        private final Thread thread;
+        volatile String answer;
+        volatile boolean answering = true;
+        volatile int pings;
+
+        FakeBedrockServer(String answer) throws SocketException {
+            this.answer = answer;
+            this.socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            this.thread = new Thread(this, "FakeBedrockServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Destination destination() {
+            return Destination.of(InetAddress.getLoopbackAddress().getHostAddress(), socket.getLocalPort());
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[1500];
+            while (!socket.isClosed()) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(packet);
+                } catch (IOException e) {
+                    return;
+                }
+                ByteBuffer ping = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+                // id (1) + ping time (8) + magic (16) + client guid (8)
+                if (ping.remaining() < 33 || ping.get() != 0x01) {
+                    continue;
+                }
+                pings++;
+                if (!answering) {
+                    continue;
+                }
+                long pingTime = ping.getLong();
+
+                byte[] motd = answer.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer pong = ByteBuffer.allocate(35 + motd.length);
+                pong.put((byte) 0x1c);
+                pong.putLong(pingTime);
+                pong.putLong(1234);
+                pong.put(MAGIC);
+                pong.putShort((short) motd.length);
+                pong.put(motd);
+                try {
+                    socket.send(new DatagramPacket(pong.array(), pong.position(), packet.getSocketAddress()));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            socket.close();
+        }
+    }
+}
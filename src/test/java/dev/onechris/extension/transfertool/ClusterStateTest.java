@@ -0,0 +1,88 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.onechris.extension.transfertool.TestSupport.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Two instances exchanging transfer counts over UDP on the loopback interface.
+ */
+class ClusterStateTest {
+    private static final Destination TARGET = Destination.of("10.0.0.1", 19132);
+    // A full sync happens every 10 rounds, i.e. every 3 seconds
+    private static final int GOSSIP_INTERVAL_MILLIS = 300;
+
+    private final List<ClusterState> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ClusterState::stop);
+    }
+
+    private record Node(ClusterState state, TargetHealth health) {
+    }
+
+    private Node start(int port, int peerPort) throws Exception {
+        Config.Cluster settings = TestSupport.config(Config.Cluster.class, """
+                gossip-interval-millis: %s
+                load-window-millis: 600000
+                """.formatted(GOSSIP_INTERVAL_MILLIS));
+        UdpGossipExchange exchange = new UdpGossipExchange(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                List.of(new InetSocketAddress(InetAddress.getLoopbackAddress(), peerPort)), 0, TestSupport.logger());
+        TargetHealth health = new TargetHealth(TARGET);
+        ClusterState state = new ClusterState(settings, exchange, () -> List.of(health), TestSupport.logger());
+        state.start();
+        nodes.add(state);
+        return new Node(state, health);
+    }
+
+    @Test
+    void convergesThroughChangedCounts() throws Exception {
+        int[] ports = freePorts();
+        Node first = start(ports[0], ports[1]);
+        Node second = start(ports[1], ports[0]);
+        // Let the initial full sync pass, so the counts below travel as changes only
+        Thread.sleep(GOSSIP_INTERVAL_MILLIS + GOSSIP_INTERVAL_MILLIS / 3);
+
+        for (int i = 0; i < 3; i++) {
+            first.state().recordTransfer(TARGET);
+        }
+        second.state().recordTransfer(TARGET);
+
+        // Well before the next full sync
+        await("both instances to see all transfers", 5L * GOSSIP_INTERVAL_MILLIS,
+                () -> first.health().recentTransfers == 4 && second.health().recentTransfers == 4);
+    }
+
+    @Test
+    void lateInstanceCatchesUpThroughFullSync() throws Exception {
+        int[] ports = freePorts();
+        Node first = start(ports[0], ports[1]);
+        for (int i = 0; i < 3; i++) {
+            first.state().recordTransfer(TARGET);
+        }
+        // These counts are sent while nobody listens yet, and are not sent again as changes
+        await("the first instance to count its transfers", 5L * GOSSIP_INTERVAL_MILLIS, () -> first.health().recentTransfers == 3);
+        Thread.sleep(GOSSIP_INTERVAL_MILLIS);
+
+        Node second = start(ports[1], ports[0]);
+        await("the late instance to catch up", 20L * GOSSIP_INTERVAL_MILLIS, () -> second.health().recentTransfers == 3);
+        assertEquals(3, first.health().recentTransfers);
+    }
+
+    private static int[] freePorts() throws IOException {
+        try (DatagramSocket first = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket second = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            return new int[]{first.getLocalPort(), second.getLocalPort()};
+        }
+    }
+}
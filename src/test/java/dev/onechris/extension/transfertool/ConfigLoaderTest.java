@@ -0,0 +1,55 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ConfigLoaderTest {
+
+    @TempDir
+    Path folder;
+
+    private final TransferTool extension = new TransferTool() {
+        private final ExtensionLogger logger = TestSupport.logger();
+
+        @Override
+        public Path dataFolder() {
+            return folder;
+        }
+
+        @Override
+        public ExtensionLogger logger() {
+            return logger;
+        }
+    };
+
+    @Test
+    void reusesTheConfigWhileTheFileIsUnchanged() throws Exception {
+        Files.writeString(folder.resolve("config.yml"), "drain:\n  wave-size: 7\n");
+        ConfigLoader.Loaded first = ConfigLoader.loadConfig(extension, null);
+        assertEquals(7, first.config().drain().waveSize());
+
+        // The first load completed and rewrote the file; loading it again needs no parsing
+        assertSame(first, ConfigLoader.loadConfig(extension, first));
+
+        String content = Files.readString(folder.resolve("config.yml"));
+        Files.writeString(folder.resolve("config.yml"), content.replace("wave-size: 7", "wave-size: 8"));
+        ConfigLoader.Loaded changed = ConfigLoader.loadConfig(extension, first);
+        assertNotSame(first, changed);
+        assertEquals(8, changed.config().drain().waveSize());
+    }
+
+    @Test
+    void keepsRoutingWorkingWithUnusableDrainSettings() throws Exception {
+        // Only the drain command refuses these, see DrainTest
+        Files.writeString(folder.resolve("config.yml"), "drain:\n  max-in-flight: 0\n");
+        assertEquals(0, ConfigLoader.loadConfig(extension, null).config().drain().maxInFlight());
+    }
+}
@@ -0,0 +1,70 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.onechris.extension.transfertool.TestSupport.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConfigWatcherTest {
+    private static final long DEBOUNCE_MILLIS = 300;
+
+    @TempDir
+    Path folder;
+    private ScheduledExecutorService executor;
+    private final AtomicInteger reloads = new AtomicInteger();
+    private ConfigWatcher watcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        Files.writeString(folder.resolve("config.yml"), "version: 1\n");
+        watcher = new ConfigWatcher(List.of(folder), DEBOUNCE_MILLIS, executor, reloads::incrementAndGet, TestSupport.logger());
+        watcher.markLoaded();
+        watcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void reloadsOnceAfterChangesSettled() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(folder.resolve("config.yml"), "version: 1\n# change " + i + "\n");
+            Thread.sleep(50);
+        }
+        await("a reload", 5000, () -> reloads.get() > 0);
+        Thread.sleep(DEBOUNCE_MILLIS * 2);
+        assertEquals(1, reloads.get());
+    }
+
+    @Test
+    void ignoresFilesThatAreAsLoaded() throws Exception {
+        Files.writeString(folder.resolve("config.yml"), "version: 2\n");
+        watcher.markLoaded();
+        Thread.sleep(DEBOUNCE_MILLIS * 3);
+        assertEquals(0, reloads.get());
+    }
+
+    @Test
+    void closeCancelsPendingReload() throws Exception {
+        Files.writeString(folder.resolve("config.yml"), "version: 2\n");
+        // Long enough for the change to be seen, shorter than the debounce period
+        Thread.sleep(DEBOUNCE_MILLIS / 2);
+        watcher.close();
+        Thread.sleep(DEBOUNCE_MILLIS * 2);
+        assertEquals(0, reloads.get());
+    }
+}
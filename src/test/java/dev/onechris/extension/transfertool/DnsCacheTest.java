@@ -0,0 +1,144 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.onechris.extension.transfertool.TestSupport.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DnsCacheTest {
+    private static final String HOST = "bedrock.example.com";
+
+    private final FakeResolver resolver = new FakeResolver();
+    private DnsCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.stop();
+        }
+    }
+
+    private void start(String settings) throws Exception {
+        cache = new DnsCache(resolver, TestSupport.config(Config.Dns.class, settings), TestSupport.logger());
+        cache.track(Set.of(HOST));
+    }
+
+    @Test
+    void refreshesBeforeTheRecordTtlRunsOut() throws Exception {
+        resolver.answer(1500, "10.0.0.1");
+        resolver.answer(1500, "10.0.0.2");
+        start("ttl-seconds: 3600");
+
+        await("the first answer", 1000, () -> cache.resolved(HOST).equals("10.0.0.1"));
+        // The record TTL wins over the configured one, and the refresh happens before it expires
+        await("the refreshed answer", 1400, () -> cache.resolved(HOST).equals("10.0.0.2"));
+        assertEquals(2, resolver.lookups.get());
+    }
+
+    @Test
+    void keepsAnUnexpiredAnswerThroughFailedLookups() throws Exception {
+        resolver.answer(1800, "10.0.0.1");
+        start("negative-ttl-seconds: 60");
+
+        await("the first answer", 1000, () -> cache.resolved(HOST).equals("10.0.0.1"));
+        await("a failed refresh", 2000, () -> resolver.lookups.get() == 2);
+        assertEquals("10.0.0.1", cache.resolved(HOST));
+        assertEquals(1, cache.fresh());
+
+        // Once it expires, players are sent the hostname again
+        await("the answer to expire", 2000, () -> cache.resolved(HOST).equals(HOST));
+        assertEquals(0, cache.fresh());
+    }
+
+    @Test
+    void waitsForTheNegativeTtlBeforeRetrying() throws Exception {
+        start("negative-ttl-seconds: 1");
+
+        await("a failed lookup", 1000, () -> resolver.lookups.get() == 1);
+        assertEquals(HOST, cache.resolved(HOST));
+        Thread.sleep(500);
+        assertEquals(1, resolver.lookups.get());
+
+        resolver.answer(0, "10.0.0.1");
+        await("the retry", 2000, () -> cache.resolved(HOST).equals("10.0.0.1"));
+        assertEquals(2, resolver.lookups.get());
+    }
+
+    @Test
+    void prefersTheConfiguredAddressFamily() throws Exception {
+        resolver.answer(0, "2001:db8::1", "10.0.0.1");
+        start("prefer-ipv4: true");
+        await("an IPv4 answer", 1000, () -> cache.resolved(HOST).equals("10.0.0.1"));
+        cache.stop();
+
+        resolver.answer(0, "10.0.0.1", "2001:db8::1");
+        start("prefer-ipv4: false");
+        await("an IPv6 answer", 1000, () -> cache.resolved(HOST).equals("2001:db8::1"));
+    }
+
+    @Test
+    void keepsASingleRefreshChainWhenAHostIsTrackedAgainDuringALookup() throws Exception {
+        resolver.holdFirstLookup = new CountDownLatch(1);
+        start("negative-ttl-seconds: 1");
+        await("the first lookup", 1000, () -> resolver.lookups.get() == 1);
+
+        // Untracked and tracked again while the first lookup is still running
+        cache.track(Set.of());
+        cache.track(Set.of(HOST));
+        await("the lookup of the new chain", 1000, () -> resolver.lookups.get() == 2);
+        resolver.holdFirstLookup.countDown();
+
+        // One chain retries about once a second; two chains would double that
+        Thread.sleep(3500);
+        int lookups = resolver.lookups.get() - 2;
+        assertTrue(lookups >= 2 && lookups <= 4, "lookups after release: " + lookups);
+    }
+
+    /**
+     * Hands out queued answers in order, and fails lookups once there are none.
+     */
+    private static final class FakeResolver implements HostResolver {
+        private final BlockingQueue<Result> answers = new LinkedBlockingQueue<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+        // If set, the first lookup does not return before this is counted down
+        private volatile CountDownLatch holdFirstLookup;
+
+        void answer(long ttlMillis, String... addresses) throws UnknownHostException {
+            InetAddress[] resolved = new InetAddress[addresses.length];
+            for (int i = 0; i < addresses.length; i++) {
+                // Literals are parsed without a lookup
+                resolved[i] = InetAddress.getByName(addresses[i]);
+            }
+            answers.add(new Result(List.of(resolved), ttlMillis));
+        }
+
+        @Override
+        public Result resolve(String host) throws IOException {
+            CountDownLatch hold = holdFirstLookup;
+            if (lookups.incrementAndGet() == 1 && hold != null) {
+                try {
+                    hold.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Result answer = answers.poll();
+            if (answer == null) {
+                throw new UnknownHostException(host);
+            }
+            return answer;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.command.CommandSource;
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static dev.onechris.extension.transfertool.TestSupport.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DrainTest {
+    private static final TargetPool TARGET = TargetPool.of(Destination.of("127.0.0.1", 19132));
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @TempDir
+    Path folder;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void commandRefusesSettingsThatCouldNeverTransferAnyone() throws Exception {
+        List<GeyserConnection> players = players(3);
+        Path translations = folder.resolve("translations");
+        Files.createDirectories(translations);
+        for (String yaml : List.of("wave-size: 0", "max-in-flight: 0", "wave-size: -5")) {
+            Config config = TestSupport.config(Config.class, "drain:\n  " + yaml);
+            LanguageManager languageManager = new LanguageManager(translations, config, TestSupport.logger());
+            TransferState state = new TransferState(1, config, null, new Shortcuts(Map.of(), Map.of()), languageManager,
+                    null, null, null, null, null);
+            List<GeyserConnection> transferred = new ArrayList<>();
+            DrainCommand command = new DrainCommand(() -> state, () -> players, (connection, destination) -> transferred.add(connection));
+
+            List<String> messages = new ArrayList<>();
+            command.execute(source(messages), null, new String[]{"127.0.0.1"});
+            assertEquals(List.of(languageManager.getLocaleString("commands.drain.invalid_settings")), messages, yaml);
+            Thread.sleep(50);
+            assertEquals(List.of(), transferred, yaml);
+        }
+    }
+
+    @Test
+    void transfersInWavesWithinTheInFlightCap() throws Exception {
+        List<GeyserConnection> players = players(5);
+        Config.Drain settings = TestSupport.config(Config.Drain.class, """
+                wave-size: 2
+                max-in-flight: 3
+                wave-interval-millis: 20
+                jitter-millis: 0
+                transfer-timeout-millis: 60000
+                """);
+        List<GeyserConnection> transferred = new CopyOnWriteArrayList<>();
+        AtomicReference<Drain.Progress> finished = new AtomicReference<>();
+        Drain drain = new Drain(players, TARGET, settings, scheduler, () -> players,
+                (connection, destination) -> transferred.add(connection), progress -> {}, finished::set);
+        drain.start();
+
+        // The first wave is capped by the wave size, the second by the in-flight cap
+        await("two waves", 2000, () -> transferred.size() == 3);
+        Thread.sleep(100);
+        assertEquals(3, transferred.size());
+
+        transferred.forEach(drain::disconnected);
+        await("the remaining players", 2000, () -> transferred.size() == 5);
+        transferred.subList(3, 5).forEach(drain::disconnected);
+
+        await("the drain to finish", 2000, () -> finished.get() != null);
+        assertEquals(new Drain.Progress(5, 5, 0, 0, 0, 0), finished.get());
+        assertTrue(drain.done());
+    }
+
+    private static CommandSource source(List<String> messages) {
+        return (CommandSource) Proxy.newProxyInstance(DrainTest.class.getClassLoader(), new Class<?>[]{CommandSource.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "sendMessage" -> {
+                        messages.add((String) args[0]);
+                        yield null;
+                    }
+                    case "isConsole", "hasPermission" -> true;
+                    case "name" -> "CONSOLE";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    private static List<GeyserConnection> players(int count) {
+        List<GeyserConnection> players = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            players.add(TestSupport.connection("player" + i, "en_us"));
+        }
+        return players;
+    }
+}
@@ -0,0 +1,65 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LanguageManagerTest {
+
+    @TempDir
+    Path folder;
+
+    private LanguageManager languageManager(String defaultLocale, Map<String, String> files) throws IOException {
+        Path translations = folder.resolve("translations");
+        Files.createDirectories(translations);
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Files.writeString(translations.resolve(file.getKey()), file.getValue(), StandardCharsets.UTF_8);
+        }
+        Config config = TestSupport.config(Config.class, "default-locale: " + defaultLocale);
+        return new LanguageManager(translations, config, TestSupport.logger());
+    }
+
+    @Test
+    void showsPercentSignsInMenuLabelsAsWritten() throws IOException {
+        LanguageManager languageManager = languageManager("en_US", Map.of("en_US.properties", """
+                menu.transfer.title=Pick a server - 100% free!
+                menu.transfer.custom=Custom (50%% off)
+                menu.transfer.next=Next %s
+                """));
+        GeyserConnection player = TestSupport.connection("Player", "en_US");
+
+        Shortcuts.MenuLabels labels = new Shortcuts(Map.of(), Map.of()).menuLabels(languageManager, player);
+        assertEquals("Pick a server - 100% free!", labels.title());
+        assertEquals("Custom (50%% off)", labels.custom());
+        assertEquals("Next %s", labels.next());
+    }
+
+    @Test
+    void formatsArgumentsNextToPercentSigns() throws IOException {
+        LanguageManager languageManager = languageManager("en_US", Map.of("en_US.properties", """
+                commands.transfer.not_found=Unknown server %s (100% sure)!
+                """));
+        assertEquals("Unknown server lobby (100% sure)!", languageManager.getLocaleString(
+                TestSupport.connection("Player", "en_US"), "commands.transfer.not_found", "lobby"));
+    }
+
+    @Test
+    void fallsBackToLanguageThenDefaultThenBundled() throws IOException {
+        LanguageManager languageManager = languageManager("en_US", Map.of(
+                "en_US.properties", "menu.transfer.title=Select\n",
+                "de_DE.properties", "menu.transfer.title=Auswahl\n"));
+
+        assertEquals("Auswahl", languageManager.getLocaleString("de_AT", "menu.transfer.title"));
+        assertEquals("Select", languageManager.getLocaleString("fr_FR", "menu.transfer.title"));
+        // Missing from all files, so it comes from the bundled en_US strings
+        assertEquals("Custom IP/Port", languageManager.getLocaleString("de_DE", "menu.transfer.custom"));
+    }
+}
@@ -0,0 +1,118 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappingFilesTest {
+
+    @TempDir
+    Path folder;
+
+    private final MappingFiles files = new MappingFiles("source");
+    private final List<String> warnings = new ArrayList<>();
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(folder.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void readsQuotedCsvFieldsAndMultipleTargets() throws IOException {
+        Path file = write("mappings.csv", "# generated, do not edit\n"
+                + "play.example.com, bedrock.example.com\n"
+                + "\"lobby.example.com\",\"a.example.com:19133\",  b.example.com\n"
+                + "\"quoted \"\"name\"\"\",target.example.com\r\n"
+                + "\n");
+
+        assertEquals(Map.of(
+                "play.example.com", "bedrock.example.com",
+                "lobby.example.com", "a.example.com:19133, b.example.com",
+                "quoted \"name\"", "target.example.com"), files.read(List.of(file), warnings::add));
+        assertEquals(List.of(), warnings);
+    }
+
+    @Test
+    void skipsBadCsvLines() throws IOException {
+        Path file = write("mappings.csv", """
+                only-a-key
+                "unterminated,target.example.com
+                "quoted"x,target.example.com
+                good.example.com,target.example.com
+                """);
+
+        assertEquals(Map.of("good.example.com", "target.example.com"), files.read(List.of(file), warnings::add));
+        assertEquals(3, warnings.size());
+        assertTrue(warnings.get(0).startsWith("Skipping line 1 of "), warnings.get(0));
+    }
+
+    @Test
+    void readsJsonLines() throws IOException {
+        Path file = write("mappings.jsonl", """
+                {"source": "play.example.com", "target": "bedrock.example.com", "owner": "team-a"}
+                {"target": ["a.example.com", " b.example.com "], "source":"lobby.example.com"}
+                {"source": "esc\\u0061ped.example.com", "target": "x\\/y"}
+                {"source": "no-target.example.com"}
+                {"source": "number.example.com", "target": 19132}
+                [1, 2]
+                """);
+
+        assertEquals(Map.of(
+                "play.example.com", "bedrock.example.com",
+                "lobby.example.com", "a.example.com, b.example.com",
+                "escaped.example.com", "x/y"), files.read(List.of(file), warnings::add));
+        assertEquals(3, warnings.size());
+    }
+
+    @Test
+    void laterFilesOverrideEarlierOnes() throws IOException {
+        Path first = write("first.csv", "a,one\nb,one\n");
+        Path second = write("second.jsonl", "{\"source\": \"b\", \"target\": \"two\"}\n");
+        assertEquals(Map.of("a", "one", "b", "two"), files.read(List.of(first, second), warnings::add));
+    }
+
+    @Test
+    void keepsPreviousEntriesOfMissingOrUnreadableFiles() throws IOException {
+        Path file = write("mappings.csv", "a,one\n");
+        assertEquals(Map.of("a", "one"), files.read(List.of(file), warnings::add));
+
+        Files.write(file, new byte[]{'b', ',', (byte) 0xC3, '\n'});
+        assertEquals(Map.of("a", "one"), files.read(List.of(file), warnings::add));
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).endsWith("keeping its previous 1 entries."), warnings.get(0));
+
+        Files.delete(file);
+        assertEquals(Map.of("a", "one"), files.read(List.of(file), warnings::add));
+        assertEquals(2, warnings.size());
+
+        // Files that were never read have nothing to keep
+        assertEquals(Map.of(), files.read(List.of(folder.resolve("other.csv")), warnings::add));
+    }
+
+    @Test
+    void onlyParsesFilesWhoseContentChanged() throws IOException {
+        Path file = write("mappings.csv", "bad\na,one\n");
+        files.read(List.of(file), warnings::add);
+        assertEquals(1, warnings.size());
+
+        // Unchanged content is not parsed again, so its bad line is not reported again
+        assertEquals(Map.of("a", "one"), files.read(List.of(file), warnings::add));
+        assertEquals(1, warnings.size());
+
+        // Same size and modification time, but different content
+        FileTime modified = Files.getLastModifiedTime(file);
+        write("mappings.csv", "bad\na,two\n");
+        Files.setLastModifiedTime(file, modified);
+        assertEquals(Map.of("a", "two"), files.read(List.of(file), warnings::add));
+    }
+}
@@ -0,0 +1,37 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MessageTemplateTest {
+
+    @Test
+    void insertsArgumentsInOrder() {
+        assertEquals("Unknown server lobby! Did you mean: lobby1?",
+                MessageTemplate.parse("Unknown server %s! Did you mean: %s?").format("lobby", "lobby1"));
+        assertEquals("3 of 5", MessageTemplate.parse("%d of %d").format(3, 5));
+    }
+
+    @Test
+    void insertsIndexedArguments() {
+        assertEquals("b then a", MessageTemplate.parse("%2$s then %1$s").format("a", "b"));
+    }
+
+    @Test
+    void keepsUnknownPercentSignsAsText() {
+        assertEquals("100% free: lobby", MessageTemplate.parse("100% free: %s").format("lobby"));
+        assertEquals("lobby 50%", MessageTemplate.parse("%s 50%").format("lobby"));
+        assertEquals("%x %5s %1$q %$s lobby", MessageTemplate.parse("%x %5s %1$q %$s %s").format("lobby"));
+    }
+
+    @Test
+    void unescapesDoublePercentSigns() {
+        assertEquals("lobby: 100% full", MessageTemplate.parse("%s: 100%% full").format("lobby"));
+    }
+
+    @Test
+    void leavesMissingArgumentsEmpty() {
+        assertEquals("a and ", MessageTemplate.parse("%s and %s").format("a"));
+    }
+}
@@ -0,0 +1,41 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+    private static final String LIMITS = """
+            menu:
+              capacity: 2
+              refill-millis: 60000
+            """;
+
+    @Test
+    void limitsBurstsPerPlayer() throws Exception {
+        RateLimiter limiter = new RateLimiter(TestSupport.config(Config.RateLimits.class, LIMITS));
+        GeyserConnection player = TestSupport.connection("player", "en_us");
+
+        assertEquals(0, limiter.tryAcquire(player, RateLimiter.Action.MENU));
+        assertEquals(0, limiter.tryAcquire(player, RateLimiter.Action.MENU));
+        assertTrue(limiter.tryAcquire(player, RateLimiter.Action.MENU) > 0);
+        assertEquals(0, limiter.tryAcquire(TestSupport.connection("other", "en_us"), RateLimiter.Action.MENU));
+    }
+
+    @Test
+    void reconfiguringKeepsUsedTokens() throws Exception {
+        RateLimiter limiter = new RateLimiter(TestSupport.config(Config.RateLimits.class, LIMITS));
+        GeyserConnection player = TestSupport.connection("player", "en_us");
+        limiter.tryAcquire(player, RateLimiter.Action.MENU);
+        limiter.tryAcquire(player, RateLimiter.Action.MENU);
+
+        // A reload with the same limits must not refill the bucket
+        limiter.configure(TestSupport.config(Config.RateLimits.class, LIMITS));
+        assertTrue(limiter.tryAcquire(player, RateLimiter.Action.MENU) > 0);
+
+        limiter.configure(TestSupport.config(Config.RateLimits.class, "enabled: false"));
+        assertEquals(0, limiter.tryAcquire(player, RateLimiter.Action.MENU));
+    }
+}
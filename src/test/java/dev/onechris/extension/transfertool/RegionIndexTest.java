@@ -0,0 +1,189 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionIndexTest {
+    private static final long IPV4 = InetLiterals.IPV4_MAPPED_PREFIX;
+
+    @TempDir
+    Path folder;
+
+    private record Range(long hi, long lo, int bits, String region) {
+        Range {
+            hi = RegionIndex.maskHi(hi, bits);
+            lo = RegionIndex.maskLo(lo, bits);
+        }
+
+        boolean contains(long hi, long lo) {
+            return RegionIndex.commonPrefix(hi, lo, this.hi, this.lo, bits) == bits;
+        }
+
+        /**
+         * @return a random address within this range
+         */
+        long[] address(Random random) {
+            long hi = random.nextLong();
+            long lo = random.nextLong();
+            return new long[]{
+                    this.hi | (bits >= 64 ? 0 : hi & ~RegionIndex.maskHi(-1L, bits)),
+                    this.lo | (lo & ~RegionIndex.maskLo(-1L, bits))};
+        }
+    }
+
+    /**
+     * The most specific range containing the address; of equal ranges, the last one added wins.
+     */
+    private static String bruteForce(List<Range> ranges, long hi, long lo) {
+        Range best = null;
+        for (Range range : ranges) {
+            if (range.contains(hi, lo) && (best == null || range.bits() >= best.bits())) {
+                best = range;
+            }
+        }
+        return best == null ? null : best.region();
+    }
+
+    private static Range ipv4(Random random, int prefix) {
+        // Mostly within a few /16 blocks, so ranges nest, split and repeat
+        long address = random.nextInt(4) == 0 ? random.nextInt() & 0xFFFF_FFFFL
+                : (long) (10 + random.nextInt(4)) << 24 | (long) random.nextInt(4) << 16 | random.nextInt(1 << 16);
+        return new Range(0, IPV4 | address, 96 + prefix, "v4-" + random.nextInt(50));
+    }
+
+    private static Range ipv6(Random random, int bits) {
+        // Within 2001:db8::/32 most of the time
+        long hi = random.nextInt(4) == 0 ? random.nextLong() : 0x2001_0db8_0000_0000L | (long) random.nextInt(1 << 12) << 20;
+        return new Range(hi, random.nextLong(), bits, "v6-" + random.nextInt(50));
+    }
+
+    private static void compareWithBruteForce(int count, long seed, boolean expectJumpTable) {
+        Random random = new Random(seed);
+        List<Range> ranges = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Range range = random.nextInt(3) == 0 ? ipv6(random, random.nextInt(129))
+                    : ipv4(random, random.nextInt(4) == 0 ? 8 + random.nextInt(9) : 17 + random.nextInt(16));
+            ranges.add(range);
+            if (random.nextInt(20) == 0) {
+                // The same range again, with another region
+                ranges.add(new Range(range.hi(), range.lo(), range.bits(), range.region() + "-replaced"));
+            }
+        }
+        // Shortest first and longest first, so both containing and contained ranges get inserted into existing paths
+        if (random.nextBoolean()) {
+            ranges.sort((a, b) -> Integer.compare(a.bits(), b.bits()));
+        }
+
+        RegionIndex.Builder builder = new RegionIndex.Builder();
+        for (Range range : ranges) {
+            builder.insert(range.hi(), range.lo(), range.bits(), range.region());
+        }
+        RegionIndex index = builder.build();
+        assertEquals(expectJumpTable, index.nodes() >= 4096, "nodes: " + index.nodes());
+
+        for (int i = 0; i < 20_000; i++) {
+            long[] address;
+            if (i % 4 == 0) {
+                address = new long[]{random.nextInt(8) == 0 ? random.nextLong() : 0, IPV4 | random.nextInt() & 0xFFFF_FFFFL};
+            } else {
+                address = ranges.get(random.nextInt(ranges.size())).address(random);
+            }
+            assertEquals(bruteForce(ranges, address[0], address[1]), index.lookup(address[0], address[1]),
+                    () -> "address " + InetLiterals.format(address[0], address[1]) + ", seed " + seed);
+        }
+    }
+
+    @Test
+    void matchesBruteForceOnSmallTables() {
+        for (long seed = 0; seed < 20; seed++) {
+            compareWithBruteForce(200, seed, false);
+        }
+    }
+
+    @Test
+    void matchesBruteForceOnTablesWithAJumpTable() {
+        for (long seed = 100; seed < 103; seed++) {
+            compareWithBruteForce(6000, seed, true);
+        }
+    }
+
+    @Test
+    void findsTheMostSpecificRange() {
+        RegionIndex index = new RegionIndex.Builder()
+                .insert(0, IPV4 | 10L << 24, 104, "ten")
+                .insert(0, IPV4 | 10L << 24 | 1L << 16, 112, "ten-one")
+                .insert(0, IPV4 | 10L << 24 | 1L << 16 | 2L << 8, 120, "ten-one-two")
+                // Splits the /16 and /8 paths
+                .insert(0, IPV4 | 10L << 24 | 3L << 16, 112, "ten-three")
+                .insert(0, IPV4 | 10L << 24 | 1L << 16, 112, "ten-one-replaced")
+                .build();
+
+        assertEquals("ten-one-two", index.lookup(0, IPV4 | 10L << 24 | 1L << 16 | 2L << 8 | 7));
+        assertEquals("ten-one-replaced", index.lookup(0, IPV4 | 10L << 24 | 1L << 16 | 3L << 8));
+        assertEquals("ten-three", index.lookup(0, IPV4 | 10L << 24 | 3L << 16 | 1));
+        assertEquals("ten", index.lookup(0, IPV4 | 10L << 24 | 2L << 16));
+        assertNull(index.lookup(0, IPV4 | 11L << 24));
+        assertNull(RegionIndex.EMPTY.lookup(0, IPV4));
+    }
+
+    @Test
+    void loadsCsvFiles() throws IOException {
+        Path file = Files.writeString(folder.resolve("regions.csv"), """
+                network,region
+                # private ranges
+                10.0.0.0/8,eu
+                10.1.0.0/16, "us-east"
+                2001:db8::/32,apac
+                [2001:db8:1::]/48,eu
+                """, StandardCharsets.UTF_8);
+        List<String> warnings = new ArrayList<>();
+        RegionIndex index = RegionIndex.load(file, 1, warnings::add);
+
+        assertEquals("eu", lookup(index, "10.2.3.4"));
+        assertEquals("us-east", lookup(index, "10.1.3.4"));
+        assertEquals("apac", lookup(index, "2001:db8:2::1"));
+        assertNull(lookup(index, "192.0.2.1"));
+        // A bracketed range is not a valid address; besides it, the header and comment were skipped
+        assertEquals("apac", lookup(index, "2001:db8:1::1"));
+        assertEquals(List.of("Skipped 3 lines without a valid CIDR range and region in " + file), warnings);
+    }
+
+    @Test
+    void readsTheConfiguredRegionColumn() throws IOException {
+        Path file = Files.writeString(folder.resolve("geo.csv"), """
+                network,geoname_id,continent_code,is_anonymous_proxy
+                203.0.113.0/24,2635167,"EU",0
+                198.51.100.0/24,6252001,NA,0
+                198.51.100.128/25,6252001,,0
+                192.0.2.0/33,1,EU,0
+                """, StandardCharsets.UTF_8);
+        List<String> warnings = new ArrayList<>();
+        RegionIndex index = RegionIndex.load(file, 2, warnings::add);
+
+        assertEquals("EU", lookup(index, "203.0.113.9"));
+        // The more specific range has no region, so it is skipped
+        assertEquals("NA", lookup(index, "198.51.100.200"));
+        assertNull(lookup(index, "192.0.2.1"));
+        assertEquals(List.of("EU", "NA"), index.regions());
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).startsWith("Skipped 3 lines"), warnings.get(0));
+    }
+
+    private static String lookup(RegionIndex index, String address) {
+        long[] parsed = new long[2];
+        assertTrue(InetLiterals.parseAny(address, 0, address.length(), parsed), address);
+        return index.lookup(parsed[0], parsed[1]);
+    }
+}
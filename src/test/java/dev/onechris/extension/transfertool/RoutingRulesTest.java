@@ -0,0 +1,249 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.floodgate.util.DeviceOs;
+import org.geysermc.floodgate.util.InputMode;
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingRulesTest {
+    private final List<String> warnings = new ArrayList<>();
+    private final RoutingTable table = RoutingTable.compile(
+            Map.of("javaip.com", "bedrock.example.com", "other.example.com", "other.bedrock.example.com"),
+            destinations -> TargetPool.of(destinations, null, TargetPool.Selection.LEAST_LOADED), warnings::add);
+
+    private RoutingRules compile(String... rules) throws Exception {
+        List<Config.RoutingRule> configured = new ArrayList<>();
+        for (String rule : rules) {
+            configured.add(TestSupport.config(Config.RoutingRule.class, rule));
+        }
+        return RoutingRules.compile(configured, table,
+                target -> TargetPool.parse(target, RoutingTable.DEFAULT_BEDROCK_PORT, null, TargetPool.Selection.LEAST_LOADED, warnings::add),
+                warnings::add);
+    }
+
+    private static String matched(RoutingRules rules, Route route, Player player) {
+        RoutingRules.Rule rule = rules.match(route, player.connection());
+        return rule == null ? null : rule.name();
+    }
+
+    private static String matched(RoutingRules rules, Player player) {
+        return matched(rules, null, player);
+    }
+
+    @Test
+    void firstMatchingRuleWins() throws Exception {
+        RoutingRules rules = compile("""
+                name: mobile
+                input-mode: [TOUCH]
+                target: mobile.example.com
+                """, """
+                name: ios
+                device-os: [IOS]
+                target: ios.example.com
+                """, """
+                name: everyone
+                target: everyone.example.com
+                """);
+
+        assertEquals("mobile", matched(rules, Player.DEFAULT.input(InputMode.TOUCH).device(DeviceOs.IOS)));
+        assertEquals("ios", matched(rules, Player.DEFAULT.device(DeviceOs.IOS)));
+        assertEquals("everyone", matched(rules, Player.DEFAULT));
+        // Clients that do not tell count as UNKNOWN
+        assertEquals("everyone", matched(rules, Player.DEFAULT.input(null).device(null)));
+        assertEquals(List.of(), warnings);
+    }
+
+    @Test
+    void onlyAppliesToTheConfiguredMappings() throws Exception {
+        RoutingRules rules = compile("""
+                name: limited
+                mappings: [javaip.com, unknown.example.com]
+                target: limited.example.com
+                """);
+        Route mapped = table.lookup("javaip.com", 25565);
+        Route other = table.lookup("other.example.com", 25565);
+
+        assertEquals("limited", matched(rules, mapped, Player.DEFAULT));
+        assertNull(matched(rules, other, Player.DEFAULT));
+        // Java transfers without a mapping only match rules without mappings
+        assertNull(matched(rules, Player.DEFAULT));
+        assertEquals(List.of("Routing rule limited refers to unknown transfer mapping unknown.example.com"), warnings);
+    }
+
+    @Test
+    void matchesInclusiveVersionRanges() throws Exception {
+        RoutingRules rules = compile("""
+                name: legacy
+                max-version: "1.20"
+                target: legacy.example.com
+                """, """
+                name: current
+                min-version: 1.21.0
+                max-version: 1.21.50
+                target: current.example.com
+                """, """
+                name: preview
+                min-version: "1.21.60"
+                target: preview.example.com
+                """);
+
+        assertEquals("legacy", matched(rules, Player.DEFAULT.version("1.19.83")));
+        // A max-version without a patch part includes all patch versions
+        assertEquals("legacy", matched(rules, Player.DEFAULT.version("1.20.81")));
+        assertEquals("current", matched(rules, Player.DEFAULT.version("1.21.0")));
+        assertEquals("current", matched(rules, Player.DEFAULT.version("1.21.50")));
+        assertNull(matched(rules, Player.DEFAULT.version("1.21.51")));
+        assertEquals("preview", matched(rules, Player.DEFAULT.version("1.21.60")));
+        assertEquals("preview", matched(rules, Player.DEFAULT.version("1.22.0")));
+        // Only rules without a version range match clients with an unknown version
+        assertNull(matched(rules, Player.DEFAULT.version("unknown")));
+        assertNull(matched(rules, Player.DEFAULT.version(null)));
+    }
+
+    @Test
+    void parsesVersions() {
+        assertEquals(1_021_050, RoutingRules.parseVersion("1.21.50"));
+        assertEquals(1_021_050, RoutingRules.parseVersion("1.21.50.02"));
+        assertEquals(1_021_000, RoutingRules.parseVersion("1.21"));
+        assertEquals(1_021_999, RoutingRules.parseVersion("1.21", 999));
+        assertEquals(1_999_999, RoutingRules.parseVersion("1", 999));
+        assertEquals(1_021_999, RoutingRules.parseVersion("1.21.", 999));
+        assertEquals(-1, RoutingRules.parseVersion("beta"));
+        assertEquals(-1, RoutingRules.parseVersion("1.1000.0"));
+    }
+
+    @Test
+    void ignoresInvalidVersionRanges() throws Exception {
+        RoutingRules rules = compile("""
+                name: broken
+                min-version: soon
+                target: broken.example.com
+                """);
+        assertEquals("broken", matched(rules, Player.DEFAULT.version("1.0.0")));
+        assertEquals("broken", matched(rules, Player.DEFAULT.version(null)));
+        assertEquals(List.of("Routing rule broken has an invalid version range; ignoring it."), warnings);
+    }
+
+    @Test
+    void fallsBackFromLocalesToLanguages() throws Exception {
+        RoutingRules rules = compile("""
+                name: austria
+                locales: [de-AT]
+                target: at.example.com
+                """, """
+                name: german
+                locales: [de]
+                target: de.example.com
+                """, """
+                name: french
+                locales: [fr_FR]
+                target: fr.example.com
+                """);
+
+        assertEquals("austria", matched(rules, Player.DEFAULT.locale("DE_at")));
+        assertEquals("german", matched(rules, Player.DEFAULT.locale("de_CH")));
+        assertEquals("german", matched(rules, Player.DEFAULT.locale("de")));
+        assertEquals("french", matched(rules, Player.DEFAULT.locale("fr_FR")));
+        // A locale does not fall back to other locales of its language
+        assertNull(matched(rules, Player.DEFAULT.locale("fr_CA")));
+        assertNull(matched(rules, Player.DEFAULT.locale(null)));
+    }
+
+    @Test
+    void sendsAStableShareOfPlayersByXuid() throws Exception {
+        RoutingRules rules = compile("""
+                name: canary
+                xuid-percent: 5
+                target: canary.example.com
+                """, """
+                name: beta
+                xuid-percent: 15
+                target: beta.example.com
+                """);
+
+        int canary = 0;
+        int beta = 0;
+        for (long xuid = 2535400000000000L; xuid < 2535400000020000L; xuid++) {
+            Player player = Player.DEFAULT.xuid(Long.toString(xuid));
+            String rule = matched(rules, player);
+            if ("canary".equals(rule)) {
+                canary++;
+            } else if ("beta".equals(rule)) {
+                beta++;
+            }
+            // The same player always gets the same answer
+            assertEquals(rule, matched(rules, player));
+        }
+        // 5% and the next 10% of 20000 players
+        assertTrue(canary > 800 && canary < 1200, "canary: " + canary);
+        assertTrue(beta > 1700 && beta < 2300, "beta: " + beta);
+
+        // Players without a XUID are never part of a share
+        assertNull(matched(rules, Player.DEFAULT.xuid(null)));
+    }
+
+    @Test
+    void ignoresRulesWithoutTargetsOrOverTheLimit() throws Exception {
+        String[] configured = new String[RoutingRules.MAX_RULES + 2];
+        configured[0] = "name: nowhere";
+        for (int i = 1; i < configured.length; i++) {
+            configured[i] = "name: rule" + i + "\ntarget: rule" + i + ".example.com";
+        }
+        RoutingRules rules = compile(configured);
+
+        assertEquals(RoutingRules.MAX_RULES, rules.size());
+        assertEquals("rule1", matched(rules, Player.DEFAULT));
+        assertEquals(List.of("Ignoring routing rule nowhere without a valid target.",
+                "Ignoring routing rule rule65: at most 64 rules are supported."), warnings.subList(warnings.size() - 2, warnings.size()));
+    }
+
+    /**
+     * The session properties rules look at. Each call of {@link #connection()} returns a new connection.
+     */
+    private record Player(DeviceOs device, InputMode input, String version, String locale, String xuid) {
+        static final Player DEFAULT = new Player(DeviceOs.WIN32, InputMode.KEYBOARD_MOUSE, "1.21.50", "en_US", "2535416409489371");
+
+        Player device(DeviceOs device) {
+            return new Player(device, input, version, locale, xuid);
+        }
+
+        Player input(InputMode input) {
+            return new Player(device, input, version, locale, xuid);
+        }
+
+        Player version(String version) {
+            return new Player(device, input, version, locale, xuid);
+        }
+
+        Player locale(String locale) {
+            return new Player(device, input, version, locale, xuid);
+        }
+
+        Player xuid(String xuid) {
+            return new Player(device, input, version, locale, xuid);
+        }
+
+        GeyserConnection connection() {
+            return (GeyserConnection) Proxy.newProxyInstance(RoutingRulesTest.class.getClassLoader(), new Class<?>[]{GeyserConnection.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "platform" -> device;
+                        case "inputMode" -> input;
+                        case "version" -> version;
+                        case "locale", "languageCode" -> locale;
+                        case "xuid" -> xuid;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> null;
+                    });
+        }
+    }
+}
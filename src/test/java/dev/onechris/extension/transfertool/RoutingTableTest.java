@@ -0,0 +1,107 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingTableTest {
+    private final List<String> warnings = new ArrayList<>();
+
+    private RoutingTable compile(String... entries) {
+        Map<String, String> mappings = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            mappings.put(entries[i], entries[i + 1]);
+        }
+        return RoutingTable.compile(mappings, destinations -> TargetPool.of(destinations, null, TargetPool.Selection.LEAST_LOADED),
+                warnings::add);
+    }
+
+    private static Destination target(RoutingTable table, String host, int port) {
+        Route route = table.lookup(host, port);
+        assertNotNull(route, host + ":" + port);
+        Destination selected = route.targets().members().get(0);
+        return Destination.of(selected.ip(), route.targetPort(selected, port));
+    }
+
+    @Test
+    void prefersExactHostsOverWildcardsOverAnyHost() {
+        RoutingTable table = compile(
+                "play.example.com", "exact.example.com",
+                "*.example.com", "wildcard.example.com",
+                "*", "fallback.example.com");
+
+        assertEquals(Destination.of("exact.example.com", 19132), target(table, "PLAY.example.com.", 25565));
+        assertEquals(Destination.of("wildcard.example.com", 19132), target(table, "lobby.example.com", 25565));
+        assertEquals(Destination.of("fallback.example.com", 19132), target(table, "other.org", 25565));
+    }
+
+    @Test
+    void matchesLongestCidrPrefix() {
+        RoutingTable table = compile(
+                "10.0.0.0/8", "wide.example.com",
+                "10.1.0.0/16", "narrow.example.com",
+                "[2001:db8::/32]", "v6.example.com");
+
+        assertEquals(Destination.of("narrow.example.com", 19132), target(table, "10.1.2.3", 25565));
+        assertEquals(Destination.of("wide.example.com", 19132), target(table, "10.2.0.1", 25565));
+        assertEquals(Destination.of("v6.example.com", 19132), target(table, "2001:db8::1", 25565));
+        assertNull(table.lookup("192.0.2.1", 25565));
+    }
+
+    @Test
+    void mapsPortRangesByOffset() {
+        RoutingTable table = compile("10.0.0.5:25565-25600", "bedrock.example.com:19132-19167");
+        assertEquals(Destination.of("bedrock.example.com", 19137), target(table, "10.0.0.5", 25570));
+        assertNull(table.lookup("10.0.0.5", 25601));
+    }
+
+    @Test
+    void parsesTargetsLikeDestinations() {
+        RoutingTable table = compile(
+                "a.example.com", "BEDROCK.Example.com.",
+                "b.example.com", "[2001:DB8::1]:19133",
+                "c.example.com", "2001:db8::2",
+                "d.example.com", "b\u00fccher.example");
+
+        assertEquals(Destination.of("bedrock.example.com", 19132), target(table, "a.example.com", 25565));
+        assertEquals(Destination.of("2001:db8::1", 19133), target(table, "b.example.com", 25565));
+        assertEquals(Destination.of("2001:db8::2", 19132), target(table, "c.example.com", 25565));
+        assertEquals(Destination.of("xn--bcher-kva.example", 19132), target(table, "d.example.com", 25565));
+        assertTrue(warnings.isEmpty(), warnings.toString());
+    }
+
+    @Test
+    void rejectsTargetsTheTransferCommandWouldReject() {
+        String[] invalid = {"bad host.example.com", "under_score.example.com", "-dash.example.com",
+                "bedrock.example.com:0", "bedrock.example.com:65536", "bedrock.example.com:*", "bedrock.example.com:19140-19132",
+                "[2001:db8::1", "300.1.2.3"};
+        for (String target : invalid) {
+            warnings.clear();
+            RoutingTable table = compile("java.example.com", target);
+            assertNull(table.lookup("java.example.com", 25565), target);
+            assertEquals(1, warnings.size(), target);
+        }
+    }
+
+    @Test
+    void rejectsPortZeroInKeys() {
+        RoutingTable table = compile("java.example.com:0", "bedrock.example.com", "java.example.com:0-10", "bedrock.example.com");
+        assertEquals(2, warnings.size(), warnings.toString());
+        assertTrue(table.routes().isEmpty());
+    }
+
+    @Test
+    void rejectsInvalidKeyHostnames() {
+        RoutingTable table = compile("under_score.example.com", "bedrock.example.com", "*.", "bedrock.example.com");
+        assertEquals(2, warnings.size(), warnings.toString());
+        assertTrue(table.routes().isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ShortcutTrieTest {
+    private static final String[] NAMES = {"lobby", "LOBBY", "lobby-eu", "survival", "skyblock", "hub", "creative"};
+    private static final IntPredicate ALL = index -> true;
+
+    private final ShortcutTrie trie = new ShortcutTrie(NAMES);
+
+    @Test
+    void findsExactNamesIgnoringCase() {
+        assertArrayEquals(new int[]{0, 1}, trie.exact("Lobby"));
+        assertArrayEquals(new int[]{5}, trie.exact("HUB"));
+        assertArrayEquals(new int[0], trie.exact("lob"));
+        assertArrayEquals(new int[0], trie.exact("hubs"));
+    }
+
+    @Test
+    void findsNamesByPrefix() {
+        assertEquals(List.of(0, 1, 2), trie.withPrefix("LOB", ALL, 10));
+        assertEquals(List.of(1, 2), trie.withPrefix("lob", index -> index != 0, 10));
+        assertEquals(List.of(0), trie.withPrefix("lob", ALL, 1));
+        // In name order, not config order
+        assertEquals(List.of(4, 3), trie.withPrefix("s", ALL, 10));
+        assertEquals(List.of(), trie.withPrefix("x", ALL, 10));
+    }
+
+    @Test
+    void findsSimilarNamesClosestFirst() {
+        assertEquals(List.of(new ShortcutTrie.Match(3, 1)), trie.similar("survial", 1, ALL, 10));
+        assertEquals(List.of(new ShortcutTrie.Match(0, 1), new ShortcutTrie.Match(1, 1)), trie.similar("lobbi", 1, ALL, 10));
+        assertEquals(List.of(new ShortcutTrie.Match(2, 1), new ShortcutTrie.Match(0, 2), new ShortcutTrie.Match(1, 2)),
+                trie.similar("lobby-e", 2, ALL, 10));
+
+        // A swap of two letters is two edits
+        assertEquals(List.of(), trie.similar("hbu", 1, ALL, 10));
+        assertEquals(List.of(new ShortcutTrie.Match(5, 2)), trie.similar("hbu", 2, ALL, 10));
+
+        assertEquals(List.of(), trie.similar("skyblok", 1, index -> index != 4, 10));
+        assertEquals(List.of(new ShortcutTrie.Match(0, 1)), trie.similar("lobbi", 1, ALL, 1));
+    }
+
+    @Test
+    void onlyOffersAllowedShortcuts() {
+        Map<String, TargetPool> pools = new LinkedHashMap<>();
+        for (String name : NAMES) {
+            pools.put(name, TargetPool.of(Destination.of(name + ".example.com", 19132)));
+        }
+        Shortcuts shortcuts = new Shortcuts(pools, Map.of());
+        Shortcuts.PermissionSnapshot all = permissions(0b1111111);
+        Shortcuts.PermissionSnapshot some = permissions(0b0100010);
+
+        assertEquals(2, shortcuts.indexOfIgnoreCase("LOBBY-EU", all));
+        // Two allowed names only differ in case
+        assertEquals(-1, shortcuts.indexOfIgnoreCase("lobby", all));
+        assertEquals(1, shortcuts.indexOfIgnoreCase("lobby", some));
+        assertEquals(-1, shortcuts.indexOfIgnoreCase("survival", some));
+
+        // Names starting with the input first, then names within one (short inputs) or two edits
+        assertEquals(List.of("survival"), shortcuts.suggestions("sur", all, 5));
+        assertEquals(List.of("creative"), shortcuts.suggestions("crativ", all, 5));
+        assertEquals(List.of("lobby", "LOBBY", "lobby-eu"), shortcuts.suggestions("lobb", all, 5));
+        assertEquals(List.of(), shortcuts.suggestions("hbu", all, 5));
+        assertEquals(List.of("LOBBY"), shortcuts.suggestions("lobb", some, 5));
+        assertEquals(List.of(), shortcuts.suggestions("crativ", some, 5));
+    }
+
+    private static Shortcuts.PermissionSnapshot permissions(long mask) {
+        int[] visible = new int[Long.bitCount(mask)];
+        int count = 0;
+        for (int i = 0; i < 64; i++) {
+            if ((mask & (1L << i)) != 0) {
+                visible[count++] = i;
+            }
+        }
+        return new Shortcuts.PermissionSnapshot(new long[]{mask}, visible, false);
+    }
+}
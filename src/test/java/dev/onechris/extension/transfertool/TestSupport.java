@@ -0,0 +1,63 @@
+package dev.onechris.extension.transfertool;
+
+import org.geysermc.geyser.api.connection.GeyserConnection;
+import org.geysermc.geyser.api.extension.ExtensionLogger;
+import org.spongepowered.configurate.ConfigurateException;
+import org.spongepowered.configurate.yaml.YamlConfigurationLoader;
+
+import java.lang.reflect.Proxy;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Helpers shared by tests, which run without a Geyser server.
+ */
+final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    /**
+     * A logger that discards everything.
+     */
+    static ExtensionLogger logger() {
+        return (ExtensionLogger) Proxy.newProxyInstance(TestSupport.class.getClassLoader(), new Class<?>[]{ExtensionLogger.class},
+                (proxy, method, args) -> method.getReturnType() == boolean.class ? false : null);
+    }
+
+    /**
+     * A Bedrock connection with the given locale that has all permissions and ignores everything sent to it.
+     */
+    static GeyserConnection connection(String name, String locale) {
+        return (GeyserConnection) Proxy.newProxyInstance(TestSupport.class.getClassLoader(), new Class<?>[]{GeyserConnection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "name", "bedrockUsername", "javaUsername" -> name;
+                    case "locale", "languageCode" -> locale;
+                    case "hasPermission", "transfer", "sendForm" -> true;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "TestConnection(" + name + ")";
+                    default -> method.getReturnType() == boolean.class ? false
+                            : method.getReturnType() == int.class ? 0 : null;
+                });
+    }
+
+    /**
+     * Loads a config section from YAML the same way config.yml is loaded, e.g. {@code config(Config.Dns.class, "enabled: true")}.
+     */
+    static <T> T config(Class<T> type, String yaml) throws ConfigurateException {
+        return YamlConfigurationLoader.builder().buildAndLoadString(yaml).get(type);
+    }
+
+    /**
+     * Waits until the condition holds, and fails if it does not within the timeout.
+     */
+    static void await(String description, long timeoutMillis, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new AssertionError("Timed out waiting for " + description);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
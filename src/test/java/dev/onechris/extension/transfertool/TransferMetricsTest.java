@@ -0,0 +1,50 @@
+package dev.onechris.extension.transfertool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransferMetricsTest {
+    private static final Shortcuts NO_SHORTCUTS = new Shortcuts(Map.of(), Map.of());
+
+    private final RoutingTable table = RoutingTable.compile(Map.of("play.example.com", "bedrock.example.com"),
+            destinations -> TargetPool.of(destinations, null, TargetPool.Selection.LEAST_LOADED), message -> {});
+
+    private RoutingRules rules(String... names) throws Exception {
+        List<Config.RoutingRule> configured = new ArrayList<>();
+        for (String name : names) {
+            configured.add(TestSupport.config(Config.RoutingRule.class, "name: " + name + "\ntarget: " + name + ".example.com"));
+        }
+        return RoutingRules.compile(configured, table,
+                target -> TargetPool.parse(target, RoutingTable.DEFAULT_BEDROCK_PORT, null, TargetPool.Selection.LEAST_LOADED, message -> {}),
+                message -> {});
+    }
+
+    @Test
+    void countsRuleTransfersAcrossReloads() throws Exception {
+        TransferMetrics metrics = new TransferMetrics();
+        RoutingRules rules = rules("vip", "beta");
+        TransferMetrics.Counters counters = metrics.bind(table, NO_SHORTCUTS, rules);
+        counters.hit(rules.rules().get(1));
+        counters.hit(rules.rules().get(1));
+        counters.hit(rules.rules().get(0));
+
+        // After a reload, rules are matched by name; removed rules are dropped
+        RoutingRules reloaded = rules("beta");
+        metrics.bind(table, NO_SHORTCUTS, reloaded).hit(reloaded.rules().get(0));
+        assertEquals(3, metrics.ruleHits().get("beta").sum());
+        assertEquals(Set.of("beta"), metrics.ruleHits().keySet());
+    }
+
+    @Test
+    void precomputesAuditReasons() throws Exception {
+        RoutingRules.Rule rule = rules("vip").rules().get(0);
+        assertEquals("vip (admission)", rule.admissionReason());
+        assertEquals("vip (overflow)", rule.overflowReason());
+    }
+}